@@ -0,0 +1,198 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * This class measures the bytes allocated by the data path of a slave node: reading the fields of a sensor and a
+ * relay through uController.getField (GET), and publishing every packet read to the master node, which receives it
+ * over the BLE link, updates its registry and buffers it (publish). The master node's buffer is then drained and its
+ * packets released, as the master zone does once a packet is stored.
+ * Every cycle is measured on two setups: one without object logs, which measures the data path itself, and one with
+ * the default logging, which adds the records of the objects. The logged runs are kept short, since they write their
+ * records to logs/benchmark/
+ * The GET cycle is run twice: once releasing every packet after use, which is the steady state of the simulation,
+ * and once keeping the packets, so that every GET needs a new packet. It is measured with the allocation counter of
+ * the calling thread. The GET and publish cycle is measured with the allocation counters of all threads, since the
+ * BLE link, the clock and the log writer do part of the work on their own threads. Threads ending while a cycle is
+ * measured are not counted
+ */
+public class AllocationBenchmark {
+
+    // Number of GET cycles run before measuring, so that the JIT compiler has compiled the cycle, and measured
+    private static final int WARMUP_CYCLES = 50_000;
+    private static final int MEASURED_CYCLES = 200_000;
+
+    // Number of GET and publish cycles run before measuring, and measured
+    private static final int PUBLISH_WARMUP_CYCLES = 10_000;
+    private static final int PUBLISH_MEASURED_CYCLES = 40_000;
+
+    // Number of cycles of the logged runs, which write about 10 MB of records each
+    private static final int LOGGED_WARMUP_CYCLES = 5_000;
+    private static final int LOGGED_MEASURED_CYCLES = 20_000;
+    private static final int LOGGED_PUBLISH_WARMUP_CYCLES = 1_000;
+    private static final int LOGGED_PUBLISH_MEASURED_CYCLES = 4_000;
+
+    // Sensor read by the benchmark, whose fields come from its input file
+    private static final String SENSOR_NAME = "RoofZone_WindNode_WindSensor";
+
+    // Objects and fields read in one cycle
+    private static final String[][] READS = {
+        {SENSOR_NAME, "Wind Speed"},
+        {"Benchmark_relay", "Switch 0 Status"},
+        {"Benchmark_relay", "Switch 1 Status"},
+        {"Benchmark_relay", "Switch 2 Status"},
+        {"Benchmark_relay", "Switch 3 Status"},
+    };
+
+    public static void main(String[] args) {
+
+        // Publishing waits for the acknowledgement of the master node, in virtual time so that it takes no wall-clock time
+        SimulationClock clock = SimulationClock.getInstance();
+        clock.setMode(SimulationClock.Mode.VIRTUAL_TIME);
+
+        // The objects of the logged setup log with the default log policy, to their own directory
+        SimulationObject.setOutputDirectory("logs/benchmark/");
+        Setup logged = new Setup();
+        SimulationObject.setPerObjectLogs(false);
+        Setup unlogged = new Setup();
+        SimulationObject.setPerObjectLogs(true);
+
+        // Steady state: every packet goes back to its pool once used
+        runGetCycles(unlogged.controller, WARMUP_CYCLES, true);
+        double pooled = runGetCycles(unlogged.controller, MEASURED_CYCLES, true);
+        runGetCycles(logged.controller, LOGGED_WARMUP_CYCLES, true);
+        double pooledLogged = runGetCycles(logged.controller, LOGGED_MEASURED_CYCLES, true);
+
+        // Packets kept by their owner: the pools are empty, so every GET creates a packet and its result
+        runGetCycles(unlogged.controller, WARMUP_CYCLES, false);
+        double kept = runGetCycles(unlogged.controller, MEASURED_CYCLES, false);
+
+        // Every packet is published to the master node, which buffers it until it is drained and released
+        clock.reset();
+        clock.attachCurrentThread();
+        runPublishCycles(unlogged, PUBLISH_WARMUP_CYCLES);
+        double published = runPublishCycles(unlogged, PUBLISH_MEASURED_CYCLES);
+        runPublishCycles(logged, LOGGED_PUBLISH_WARMUP_CYCLES);
+        double publishedLogged = runPublishCycles(logged, LOGGED_PUBLISH_MEASURED_CYCLES);
+        clock.detachCurrentThread();
+        clock.awaitIdle();
+        AsyncLogWriter.getInstance().drain();
+
+        System.out.println(String.format("[Allocation] GET with packets released:  %.1f bytes per GET without logs, %.1f with logs (calling thread)", pooled, pooledLogged));
+        System.out.println(String.format("[Allocation] GET with packets kept:      %.1f bytes per GET without logs (calling thread)", kept));
+        System.out.println(String.format("[Allocation] GET and publish, released:  %.1f bytes per packet without logs, %.1f with logs (all threads)", published, publishedLogged));
+        System.out.println(String.format("[Allocation] Sensor pools: %d packets created, %d reused",
+            logged.sensor.packetPool.getCreatedCount() + unlogged.sensor.packetPool.getCreatedCount(),
+            logged.sensor.packetPool.getReusedCount() + unlogged.sensor.packetPool.getReusedCount()));
+        System.out.println(String.format("[Allocation] Relay pools: %d packets created, %d reused",
+            logged.relay.packetPool.getCreatedCount() + unlogged.relay.packetPool.getCreatedCount(),
+            logged.relay.packetPool.getReusedCount() + unlogged.relay.packetPool.getReusedCount()));
+        AsyncLogWriter.getInstance().printReport();
+        LogPolicy.getInstance().printReport();
+    }
+
+    /**
+     * This class holds the objects of one benchmark setup: a sensor and a relay with 4 switches connected to the
+     * uController of a slave node, subscribed to by a master node. Whether the objects log depends on the per-object
+     * logs setting when the setup is created
+     */
+    private static class Setup {
+        private final LowPowerDevice sensor;
+        private final Relay relay;
+        private final uController controller;
+        private final MasterNode masterNode;
+
+        private Setup() {
+            sensor = new LowPowerDevice(SENSOR_NAME, 4);
+            sensor.initFields();
+            sensor.execute("SET", "Wind Speed", "12.5");
+
+            relay = new Relay("Benchmark_relay", 4);
+
+            controller = new uController("Benchmark_controller", 20, (uController cont)->{});
+            controller.connectTo(sensor);
+            controller.connectTo(relay);
+            SlaveNode slaveNode = new SlaveNode("Benchmark_SlaveNode", 20, 100, controller);
+
+            masterNode = new MasterNode("Benchmark_MasterNode", 100,
+                new uController("Benchmark_MasterNode_controller", 20, (uController cont)->{}));
+            masterNode.subscribeTo(slaveNode);
+            masterNode.initFields();
+        }
+    }
+
+    /**
+     * Function to run GET cycles and measure the bytes they allocate on the calling thread
+     * @param controller uController the devices are connected to
+     * @param cycles Number of cycles
+     * @param release true to release every packet after use, false to keep it
+     * @return bytes allocated per GET
+     */
+    private static double runGetCycles(uController controller, int cycles, boolean release) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        // Use the packets, so that reading them is not optimized away
+        long checksum = 0;
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for(int cycle = 0; cycle < cycles; cycle++){
+            for(String[] read : READS){
+                ExecutionResult result = controller.getField(read[0], read[1]);
+                if(!result.isSuccess()) continue;
+
+                DataPacket packet = result.getReturnedPacket();
+                checksum += packet.getFieldHandle() + packet.getSize();
+                if(release) packet.release();
+            }
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        if(checksum == 0) System.out.println("[Allocation] No packet was read");
+        return (double) allocated / ((long) cycles * READS.length);
+    }
+
+    /**
+     * Function to run GET and publish cycles, as a slave node does on every tick, and measure the bytes they allocate
+     * on all threads. After every cycle, the packets buffered by the master node are drained and released
+     * @param setup Slave node's uController and the master node it publishes to
+     * @param cycles Number of cycles
+     * @return bytes allocated per packet published
+     */
+    private static double runPublishCycles(Setup setup, int cycles) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ArrayList<DataPacket> drained = new ArrayList<>();
+        long packets = 0;
+
+        // Measure from a point where the records of earlier cycles are written
+        AsyncLogWriter.getInstance().drain();
+        long before = allocatedBytes(threads);
+        for(int cycle = 0; cycle < cycles; cycle++){
+            for(String[] read : READS){
+                ExecutionResult result = setup.controller.getField(read[0], read[1]);
+                if(result.isSuccess()) setup.controller.publishPacket(result.getReturnedPacket());
+            }
+
+            drained.clear();
+            packets += setup.masterNode.drainBufferedDataPackets(drained);
+            for(DataPacket packet : drained) packet.release();
+        }
+
+        // Include the formatting and writing of the records logged by the cycles
+        AsyncLogWriter.getInstance().drain();
+        long allocated = allocatedBytes(threads) - before;
+
+        if(packets == 0) System.out.println("[Allocation] No packet was published");
+        return (double) allocated / Math.max(packets, 1);
+    }
+
+    /**
+     * Function to return the bytes allocated so far by all live threads
+     * @param threads Thread management bean
+     * @return bytes allocated
+     */
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threads) {
+        long total = 0;
+        for(long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+            if(bytes > 0) total += bytes;
+        return total;
+    }
+}
@@ -0,0 +1,553 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class moves the writing of log records off the simulation threads. Every thread logging records
+ * gets its own single-producer ring buffer, so logging a record is an enqueue without locks. Rings start small
+ * and grow on demand up to the ring capacity, so that thousands of logging threads (e.g. virtual threads) cost
+ * little memory. A dedicated writer thread drains the rings that have records, found from a queue of ready
+ * rings rather than by visiting every ring, orders each batch by simulation time, and writes the records to
+ * their sinks. Every record gets a submission number, and every batch holds exactly the records numbered
+ * below some bound, ordered by time and then number. Records of the same time are thus written in the order
+ * they were logged, whichever ring and batch they came through, so runs in virtual time write identical logs.
+ * When a ring is full, the logging thread either waits for the writer (backpressure) or drops
+ * the record, depending on the overflow policy. Both are counted and reported, as are the exceptions thrown
+ * by sinks, which the writer thread survives
+ */
+public class AsyncLogWriter {
+
+    // What a logging thread does when its ring buffer is full
+    public enum OverflowPolicy {
+        // Wait until the writer thread has made room. No record is lost
+        BLOCK,
+        // Drop the record and count it
+        DROP
+    }
+
+    // Singleton instance of the writer
+    private static final AsyncLogWriter instance = new AsyncLogWriter();
+
+    // Time in nanoseconds the writer thread sleeps when all rings are empty
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    // Time given to the records that only mark a sink to be closed, so that they sort after every record of their batch
+    private static final long CLOSE_MARKER = Long.MAX_VALUE;
+
+    // Number of records of a new ring. The ring doubles when full, up to the ring capacity
+    private static final int INITIAL_RING_CAPACITY = 64;
+
+    // Number of idle passes of the writer thread between two sweeps for the rings of threads that have ended
+    private static final int SWEEP_INTERVAL = 1000;
+
+    /**
+     * Segment of a ring: a fixed-size single-producer single-consumer ring buffer of log records
+     */
+    private static final class RingSegment {
+        private final LogSink[] sinks;
+        private final long[] times;
+        private final long[] numbers;
+        private final CharSequence[] rows;
+        private final int mask;
+
+        // Number of records enqueued by the owner and number of records drained by the writer thread
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong head = new AtomicLong();
+
+        // Larger segment the owner moved on to once this one was full. The owner no longer writes to this one
+        private volatile RingSegment next;
+
+        private RingSegment(int capacity) {
+            this.sinks = new LogSink[capacity];
+            this.times = new long[capacity];
+            this.numbers = new long[capacity];
+            this.rows = new CharSequence[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private boolean isFull() {
+            return tail.get() - head.get() > mask;
+        }
+
+        // Called by the writer thread only. Moves the published records numbered below the bound to the batch.
+        // Returns the number of records moved
+        private int drainTo(ArrayList<PendingRecord> batch, ArrayList<PendingRecord> spare, long bound) {
+            long h = head.get();
+            long t = tail.get();
+            long i = h;
+            for(; i < t; i++){
+                int index = (int) i & mask;
+                if(numbers[index] >= bound) break;
+                PendingRecord record = spare.isEmpty() ? new PendingRecord() : spare.remove(spare.size() - 1);
+                record.sink = sinks[index];
+                record.time = times[index];
+                record.number = numbers[index];
+                record.row = rows[index];
+                batch.add(record);
+                sinks[index] = null;
+                rows[index] = null;
+            }
+
+            // Hand the slots back to the owner
+            head.lazySet(i);
+            return (int) (i - h);
+        }
+
+        private boolean isEmpty() {
+            return head.get() == tail.get();
+        }
+    }
+
+    /**
+     * Ring buffer of log records owned by one logging thread. The owner writes to the newest segment, and the writer
+     * thread drains the segments in order, moving on to the next one once the owner has left a segment and it is empty
+     */
+    private static final class LogRing {
+        private final Thread owner;
+
+        // Counter numbering the records of all rings
+        private final AtomicLong submissions;
+
+        // Largest segment the ring grows to
+        private final int maxCapacity;
+
+        // Segment written by the owner. Used by the owner only
+        private RingSegment writeSegment;
+
+        // Segment drained by the writer thread. Used by the writer thread only
+        private RingSegment readSegment;
+
+        // Flag indicating whether the ring is in the queue of ready rings or about to be drained
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private LogRing(Thread owner, int maxCapacity, AtomicLong submissions) {
+            this.owner = owner;
+            this.submissions = submissions;
+            this.maxCapacity = maxCapacity;
+            this.writeSegment = new RingSegment(Math.min(INITIAL_RING_CAPACITY, maxCapacity));
+            this.readSegment = writeSegment;
+        }
+
+        // Called by the owner only. Returns false if the ring is full and cannot grow
+        private boolean offer(LogSink sink, long time, CharSequence row) {
+            RingSegment segment = writeSegment;
+            if(segment.isFull()){
+                if(segment.mask + 1 >= maxCapacity) return false;
+
+                // Move on to a segment twice as large. The writer thread drains this one first
+                RingSegment larger = new RingSegment((segment.mask + 1) * 2);
+                segment.next = larger;
+                writeSegment = segment = larger;
+            }
+
+            long t = segment.tail.get();
+            int index = (int) t & segment.mask;
+            segment.sinks[index] = sink;
+            segment.times[index] = time;
+            segment.rows[index] = row;
+
+            // Number the record last, so that the record is published right after its number is taken
+            segment.numbers[index] = submissions.getAndIncrement();
+
+            // Publish the record to the writer thread. A volatile write, so that either the writer thread sees the
+            // record after clearing the scheduled flag, or the owner sees the cleared flag below
+            segment.tail.set(t + 1);
+            return true;
+        }
+
+        // Called by the writer thread only. Moves the published records numbered below the bound to the batch.
+        // Returns the number of records moved
+        private int drainTo(ArrayList<PendingRecord> batch, ArrayList<PendingRecord> spare, long bound) {
+            RingSegment segment = readSegment;
+            int moved = 0;
+            while(true){
+                moved += segment.drainTo(batch, spare, bound);
+                RingSegment next = segment.next;
+                if(next == null) break;
+
+                // The owner has left this segment, so after one more drain it stays empty, unless it holds records
+                // numbered above the bound
+                moved += segment.drainTo(batch, spare, bound);
+                if(!segment.isEmpty()) break;
+                readSegment = segment = next;
+            }
+            return moved;
+        }
+
+        // Called by the writer thread only
+        private boolean isEmpty() {
+            RingSegment segment = readSegment;
+            return segment.isEmpty() && segment.next == null;
+        }
+    }
+
+    /**
+     * Record drained from a ring and waiting to be written
+     */
+    private static final class PendingRecord {
+        private LogSink sink;
+        private long time;
+        private long number;
+        private CharSequence row;
+    }
+
+    // Order in which the records of a batch are written: by simulation time, then in the order they were logged
+    private static final Comparator<PendingRecord> RECORD_ORDER =
+        Comparator.<PendingRecord>comparingLong(record -> record.time).thenComparingLong(record -> record.number);
+
+    // Largest capacity of every ring buffer. Must be a power of 2. Must be set before the first record is logged
+    private int ringCapacity = 4096;
+
+    // What logging threads do when their ring is full
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    // Number given to the next record logged
+    private final AtomicLong submissions = new AtomicLong();
+
+    // Rings of all threads that have logged records
+    private final Set<LogRing> rings = ConcurrentHashMap.newKeySet();
+
+    // Rings holding records the writer thread has not drained yet. A ring is added by its owner when it publishes
+    // a record while not scheduled, so the writer thread only visits the rings that have records
+    private final ConcurrentLinkedQueue<LogRing> readyRings = new ConcurrentLinkedQueue<>();
+
+    // Merged logs ordering records across batches. They take a watermark before every batch is collected
+    private final CopyOnWriteArrayList<MergedLogSink> mergedSinks = new CopyOnWriteArrayList<>();
+
+    // Ring of the current thread. Created and registered on first use
+    private final ThreadLocal<LogRing> ringOfThread = ThreadLocal.withInitial(this::createRing);
+
+    // Writer thread. Started when the first ring is created
+    private Thread writerThread;
+
+    // Number of drain requests made so far, and the last request served by the writer thread. A request is served
+    // once the writer has found every ring empty after the request was made and has flushed all sinks
+    private final AtomicLong drainRequests = new AtomicLong();
+    private volatile long drainedRequest;
+
+    // Statistics reported at the end of the simulation
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder backpressureWaits = new LongAdder();
+    private final LongAdder sinkErrors = new LongAdder();
+    private final LongAdder afterClose = new LongAdder();
+    private long written;
+    private long batches;
+    private long largestBatch;
+
+    // Private constructor
+    private AsyncLogWriter() {
+    }
+
+    /**
+     * Function to get the singleton instance of the writer
+     * @return writer instance
+     */
+    public static AsyncLogWriter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Function to set the capacity the ring buffer of every logging thread grows to. Must be called before the first
+     * record is logged
+     * @param ringCapacity Largest number of records per ring. Rounded up to a power of 2
+     */
+    public void setRingCapacity(int ringCapacity) {
+        this.ringCapacity = Integer.highestOneBit(Math.max(ringCapacity - 1, 1)) << 1;
+    }
+
+    /**
+     * Function to set what logging threads do when their ring buffer is full
+     * @param overflowPolicy New overflow policy
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Function to log a record. Only enqueues the record; the writer thread writes it later
+     * @param sink Sink the record is written to
+     * @param time Simulation time in nanoseconds of the record
+     * @param row Rest of the record after the timestamp. Must not be modified afterwards
+     */
+    public void submit(LogSink sink, long time, CharSequence row) {
+        LogRing ring = ringOfThread.get();
+        if(ring.offer(sink, time, row)){
+            schedule(ring);
+            return;
+        }
+
+        // A dead writer thread would never make room
+        if(overflowPolicy == OverflowPolicy.DROP || !writerThread.isAlive()){
+            dropped.increment();
+            return;
+        }
+
+        // Wait for the writer thread to make room
+        backpressureWaits.increment();
+        if(!offerWhenRoom(ring, sink, time, row)) dropped.increment();
+    }
+
+    /**
+     * Function to close a sink once the records logged before this call by the calling thread have been written
+     * @param sink Sink to be closed
+     */
+    public void close(LogSink sink) {
+        LogRing ring = ringOfThread.get();
+        if(ring.offer(sink, CLOSE_MARKER, null)) schedule(ring);
+        else offerWhenRoom(ring, sink, CLOSE_MARKER, null);
+    }
+
+    /**
+     * Function to wait until the writer thread has made room in a full ring and enqueue a record
+     * @param ring Ring of the calling thread
+     * @param sink Sink the record is written to
+     * @param time Simulation time in nanoseconds of the record
+     * @param row Rest of the record after the timestamp
+     * @return true if the record was enqueued, false if the writer thread stopped
+     */
+    private boolean offerWhenRoom(LogRing ring, LogSink sink, long time, CharSequence row) {
+        do {
+            if(!writerThread.isAlive()) return false;
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(this, 50_000);
+        } while(!ring.offer(sink, time, row));
+
+        schedule(ring);
+        return true;
+    }
+
+    /**
+     * Function to add a ring that has just published a record to the ready rings, unless it is already there
+     * @param ring Ring of the calling thread
+     */
+    private void schedule(LogRing ring) {
+        if(!ring.scheduled.get() && ring.scheduled.compareAndSet(false, true)) readyRings.add(ring);
+    }
+
+    /**
+     * Function to register a merged log, so that it is told how far it can write its records in time order
+     * @param sink Merged log
+     */
+    public void register(MergedLogSink sink) {
+        mergedSinks.add(sink);
+    }
+
+    /**
+     * Function to unregister a merged log once it has been closed
+     * @param sink Merged log
+     */
+    void unregister(MergedLogSink sink) {
+        mergedSinks.remove(sink);
+    }
+
+    /**
+     * Function to block until every record logged so far has been written and flushed. Merged logs may hold back
+     * records that could still be followed by older ones until they are closed
+     */
+    public void drain() {
+        Thread writer;
+        synchronized(this){
+            writer = writerThread;
+        }
+        if(writer == null) return;
+
+        long request = drainRequests.incrementAndGet();
+        while(drainedRequest < request){
+            // The records still queued will never be written
+            if(!writer.isAlive()) throw new IllegalStateException("The log writer thread has stopped; queued log records were not written");
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Function to print the number of records written, the batches, and the records dropped or delayed by full rings
+     */
+    public void printReport() {
+        long records, batchCount, largest;
+        synchronized(this){
+            records = written;
+            batchCount = batches;
+            largest = largestBatch;
+        }
+        if(records == 0) return;
+
+        System.out.println(String.format("[Async Log] %d records in %d batches (largest %d), %d rings, %d dropped, %d backpressure waits, %d sink errors, %d logged after their sink was closed",
+            records, batchCount, largest, rings.size(), dropped.sum(), backpressureWaits.sum(), sinkErrors.sum(), afterClose.sum()));
+    }
+
+    /**
+     * Function to create the ring of the current thread and start the writer thread if needed
+     * @return new ring
+     */
+    private LogRing createRing() {
+        LogRing ring = new LogRing(Thread.currentThread(), ringCapacity, submissions);
+        rings.add(ring);
+
+        synchronized(this){
+            if(writerThread == null){
+                writerThread = new Thread(this::runWriter, "AsyncLogWriter");
+                writerThread.setDaemon(true);
+                writerThread.start();
+            }
+        }
+        return ring;
+    }
+
+    /**
+     * Function run by the writer thread. Drains the ready rings, writes every batch in simulation time order,
+     * and flushes the sinks whenever there is nothing left to write. An exception thrown by a sink is counted
+     * and the writer moves on to the next record, so that one failing sink does not stop all logging
+     */
+    private void runWriter() {
+        ArrayList<PendingRecord> batch = new ArrayList<>();
+        // Records of earlier batches, reused for the next ones
+        ArrayList<PendingRecord> spare = new ArrayList<>();
+        ArrayList<LogRing> ready = new ArrayList<>();
+        HashSet<LogSink> dirtySinks = new HashSet<>();
+        HashMap<LogSink, Long> closeNumbers = new HashMap<>();
+        // Sinks closed by earlier batches. Weak, so that the sinks of ended objects are not kept
+        Set<LogSink> closedSinks = Collections.newSetFromMap(new WeakHashMap<>());
+        int idlePasses = 0;
+
+        // Number of records collected so far. Every record numbered below it has been collected
+        long collected = 0;
+
+        while(true){
+            // Drain requests made before this pass are served if the pass finds nothing to write
+            long request = drainRequests.get();
+
+            // Merged logs can write the records older than what can still be logged once this batch is collected
+            for(MergedLogSink sink : mergedSinks){
+                try {
+                    sink.takeWatermark();
+                } catch (RuntimeException e) {
+                    reportSinkError(e);
+                }
+            }
+
+            // Collect every record numbered below the bound, and none above it. A ring is unscheduled before it is
+            // drained, so a record published meanwhile schedules it again
+            long bound = submissions.get();
+            for(PendingRecord record : batch){
+                record.sink = null;
+                record.row = null;
+            }
+            spare.addAll(batch);
+            batch.clear();
+            ready.clear();
+            while(true){
+                for(LogRing ring = readyRings.poll(); ring != null; ring = readyRings.poll()){
+                    ring.scheduled.set(false);
+                    collected += ring.drainTo(batch, spare, bound);
+                    ready.add(ring);
+                }
+                if(collected >= bound) break;
+
+                // A record below the bound has been numbered but not published yet. It is published right away
+                Thread.onSpinWait();
+            }
+
+            // Rings still holding records numbered above the bound are drained by the next pass
+            for(LogRing ring : ready) if(!ring.isEmpty()) schedule(ring);
+
+            if(batch.isEmpty()){
+                // Nothing to write. Flush what was written so that the log files are up to date, then sleep
+                for(LogSink sink : dirtySinks){
+                    try {
+                        sink.flush();
+                    } catch (RuntimeException e) {
+                        reportSinkError(e);
+                    }
+                }
+                for(MergedLogSink sink : mergedSinks){
+                    try {
+                        sink.flush();
+                    } catch (RuntimeException e) {
+                        reportSinkError(e);
+                    }
+                }
+                dirtySinks.clear();
+                drainedRequest = request;
+
+                // Forget the rings of threads that have ended, now and then
+                if(++idlePasses % SWEEP_INTERVAL == 0) rings.removeIf(ring -> !ring.owner.isAlive() && !ring.scheduled.get() && ring.isEmpty());
+
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+
+            // Records of different threads are ordered by simulation time, then in the order they were logged
+            batch.sort(RECORD_ORDER);
+
+            // A sink is closed at the position of its close request among the records. Records logged to it after the
+            // request are not written, whichever batch they arrive in: a batch holds every record numbered below its
+            // last one, so the records of a sink closed by an earlier batch were all logged after the close
+            for(PendingRecord record : batch) if(record.time == CLOSE_MARKER) closeNumbers.merge(record.sink, record.number, Math::min);
+
+            for(PendingRecord record : batch){
+                if(record.time == CLOSE_MARKER) continue;
+
+                Long closeNumber = closeNumbers.get(record.sink);
+                if(closedSinks.contains(record.sink) || (closeNumber != null && record.number > closeNumber)) afterClose.increment();
+                else{
+                    try {
+                        record.sink.write(record.time, record.row);
+                    } catch (RuntimeException e) {
+                        reportSinkError(e);
+                    }
+                    dirtySinks.add(record.sink);
+                }
+            }
+
+            for(MergedLogSink sink : mergedSinks){
+                try {
+                    sink.release();
+                } catch (RuntimeException e) {
+                    reportSinkError(e);
+                }
+            }
+
+            // Close sinks only after the records logged before the close have been written
+            for(LogSink sink : closeNumbers.keySet()){
+                if(!closedSinks.add(sink)) continue;
+                try {
+                    sink.close();
+                } catch (RuntimeException e) {
+                    reportSinkError(e);
+                }
+                dirtySinks.remove(sink);
+            }
+            closeNumbers.clear();
+
+            synchronized(this){
+                written += batch.size();
+                batches++;
+                largestBatch = Math.max(largestBatch, batch.size());
+            }
+        }
+    }
+
+    /**
+     * Function to count an exception thrown by a sink. The first one is printed, since the rest are most likely the same
+     * @param e Exception thrown by the sink
+     */
+    private void reportSinkError(RuntimeException e) {
+        sinkErrors.increment();
+        if(sinkErrors.sum() == 1){
+            System.out.println("An error occurred while writing log records");
+            e.printStackTrace();
+        }
+    }
+}
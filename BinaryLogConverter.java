@@ -0,0 +1,185 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class converts log files written by BinaryLogSink back to the CSV layout written by FileLogSink.
+ * Every "name_output.bin" file is converted to "name_output.csv" next to it
+ *
+ * Usage: java BinaryLogConverter [file or directory ...]   (default: logs/)
+ */
+public class BinaryLogConverter {
+
+    public static void main(String[] args) {
+        if(args.length == 0) args = new String[]{"logs/"};
+
+        int converted = 0;
+        for(String arg : args){
+            File file = new File(arg);
+            File[] files = file.isDirectory() ? file.listFiles((dir, name) -> name.endsWith(".bin")) : new File[]{file};
+            if(files == null) continue;
+
+            Arrays.sort(files);
+            for(File binaryFile : files){
+                String csvFileName = binaryFile.getPath().replaceFirst("\\.bin$", "") + ".csv";
+                try {
+                    convert(binaryFile.getPath(), csvFileName);
+                    converted++;
+                } catch (IOException e) {
+                    System.out.println("An error occurred while converting " + binaryFile.getPath());
+                    e.printStackTrace();
+                }
+            }
+        }
+        System.out.println(String.format("[Converted] %d binary log files", converted));
+    }
+
+    /**
+     * Function to convert one binary log file to CSV
+     * @param binaryFileName Name of the binary log file
+     * @param csvFileName Name of the CSV file to write. Replaced if it already exists
+     */
+    public static void convert(String binaryFileName, String csvFileName) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(binaryFileName), 64 * 1024));
+            BufferedWriter writer = new BufferedWriter(new FileWriter(csvFileName), 64 * 1024)){
+
+            byte[] magic = new byte[BinaryLogSink.MAGIC.length];
+            in.readFully(magic);
+            if(!Arrays.equals(magic, BinaryLogSink.MAGIC)) throw new IOException(binaryFileName + " is not a binary log file");
+
+            ArrayList<String> strings = new ArrayList<>();
+            StringBuilder record = new StringBuilder(256);
+            long time = 0;
+
+            int tag;
+            while((tag = in.read()) != -1){
+                switch(tag){
+                    case BinaryLogSink.TAG_STRING: {
+                        int id = (int) readVarLong(in);
+                        byte[] bytes = new byte[(int) readVarLong(in)];
+                        in.readFully(bytes);
+
+                        // IDs are defined in increasing order
+                        if(id != strings.size()) throw new IOException("Unexpected string ID " + id + " in " + binaryFileName);
+                        strings.add(new String(bytes, StandardCharsets.UTF_8));
+                        break;
+                    }
+                    case BinaryLogSink.TAG_HEADER:
+                        writer.write(strings.get((int) readVarLong(in)));
+                        writer.newLine();
+                        break;
+                    case BinaryLogSink.TAG_ROW: {
+                        time += unzigzag(readVarLong(in));
+                        int columns = (int) readVarLong(in);
+
+                        record.setLength(0);
+                        TimeFormat.appendSeconds(record, time);
+                        for(int column = 0; column < columns; column++){
+                            record.append(',');
+                            appendValue(in, strings, record);
+                        }
+                        writer.append(record);
+                        writer.newLine();
+                        break;
+                    }
+                    case BinaryLogSink.TAG_EVENT: {
+                        time += unzigzag(readVarLong(in));
+                        String objectName = strings.get((int) readVarLong(in));
+                        String template = strings.get((int) readVarLong(in));
+                        Object[] args = new Object[(int) readVarLong(in)];
+                        for(int i = 0; i < args.length; i++) args[i] = readArgument(in, strings);
+
+                        record.setLength(0);
+                        TimeFormat.appendSeconds(record, time).append(',').append(objectName).append(',');
+                        LogTemplate.appendFormatted(record, template, args);
+
+                        // Columns after the event
+                        int columns = (int) readVarLong(in);
+                        for(int column = 0; column < columns; column++){
+                            record.append(',');
+                            appendValue(in, strings, record);
+                        }
+                        writer.append(record);
+                        writer.newLine();
+                        break;
+                    }
+                    case BinaryLogSink.TAG_RESET:
+                        strings.clear();
+                        break;
+                    default:
+                        throw new IOException("Unknown record tag " + tag + " in " + binaryFileName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Function to read one typed column value and append its text
+     * @param in Input stream positioned at the type byte of the value
+     * @param strings Strings defined so far
+     * @param record StringBuilder to append to
+     */
+    private static void appendValue(InputStream in, ArrayList<String> strings, StringBuilder record) throws IOException {
+        int type = in.read();
+        switch(type){
+            case BinaryLogSink.TYPE_STRING: record.append(strings.get((int) readVarLong(in))); break;
+            case BinaryLogSink.TYPE_LONG: record.append(unzigzag(readVarLong(in))); break;
+            case BinaryLogSink.TYPE_DECIMAL: {
+                int scale = (int) readVarLong(in);
+                BinaryLogSink.appendDecimal(record, unzigzag(readVarLong(in)), scale);
+                break;
+            }
+            case BinaryLogSink.TYPE_TRUE: record.append("true"); break;
+            case BinaryLogSink.TYPE_FALSE: record.append("false"); break;
+            case BinaryLogSink.TYPE_EMPTY: break;
+            default: throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Function to read one typed argument of an event
+     * @param in Input stream positioned at the type byte of the argument
+     * @param strings Strings defined so far
+     * @return argument as a String, Long or Boolean
+     */
+    private static Object readArgument(InputStream in, ArrayList<String> strings) throws IOException {
+        int type = in.read();
+        switch(type){
+            case BinaryLogSink.TYPE_STRING: return strings.get((int) readVarLong(in));
+            case BinaryLogSink.TYPE_LONG: return unzigzag(readVarLong(in));
+            case BinaryLogSink.TYPE_TRUE: return Boolean.TRUE;
+            case BinaryLogSink.TYPE_FALSE: return Boolean.FALSE;
+            default: throw new IOException("Unknown argument type " + type);
+        }
+    }
+
+    /**
+     * Function to read an unsigned LEB128 varint
+     */
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            int b = in.read();
+            if(b == -1) throw new EOFException();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Function to undo the zigzag encoding of a signed value
+     */
+    private static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
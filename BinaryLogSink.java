@@ -0,0 +1,470 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class is a LogSink writing records in a compact binary format instead of CSV. Every distinct text
+ * (object names, event messages, column values) is written once and then referred to by an integer ID.
+ * Timestamps are written as the difference in nanoseconds from the previous record, and numeric and boolean
+ * columns are written as typed values rather than text. Events logged as a LogEvent are written as their
+ * template and typed arguments, without ever being formatted. BinaryLogConverter turns a binary log back into
+ * the CSV layout written by FileLogSink.
+ *
+ * File layout: the 8 byte magic "SIMLOG01" followed by records, each starting with a tag byte:
+ *   STRING  id, length, UTF-8 bytes       defines the text of a string ID
+ *   HEADER  string id                     header line of the CSV file
+ *   ROW     time delta, column count, then a type byte and a value per column
+ *   RESET                                 forgets all string IDs (keeps the table bounded in long runs)
+ *   EVENT   time delta, object name id, template id, argument count, then a type byte and a value per
+ *           argument, then the trailing columns like a ROW (count, type and value per column)
+ * Integers are unsigned LEB128 varints; signed values are zigzag encoded first
+ */
+public class BinaryLogSink implements LogSink {
+
+    // Magic bytes at the start of every binary log file
+    static final byte[] MAGIC = "SIMLOG01".getBytes(StandardCharsets.US_ASCII);
+
+    // Record tags
+    static final int TAG_STRING = 1;
+    static final int TAG_HEADER = 2;
+    static final int TAG_ROW = 3;
+    static final int TAG_RESET = 4;
+    static final int TAG_EVENT = 5;
+
+    // Column value types
+    static final int TYPE_STRING = 0;
+    static final int TYPE_LONG = 1;
+    static final int TYPE_DECIMAL = 2;
+    static final int TYPE_TRUE = 3;
+    static final int TYPE_FALSE = 4;
+    static final int TYPE_EMPTY = 5;
+
+    // Number of interned strings after which the string table is reset
+    private static final int MAX_STRINGS = 1 << 16;
+
+    // Size in bytes of the output buffer. Written to the file when it is full
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Name of the output file
+    private String fileName;
+
+    // Stream to the output file. null if the file could not be opened or the sink is closed
+    private FileOutputStream out;
+
+    // Encoded bytes not written to the file yet
+    private byte[] buffer;
+    private int position;
+
+    // Header written before the first record. Set by the logging object, read by the writer thread
+    private volatile String header;
+
+    // Flag indicating whether the header has been written or not
+    private boolean hasWrittenHeader;
+
+    // IDs of the strings defined so far in the file
+    private HashMap<String, Integer> stringIds;
+
+    // Time in nanoseconds of the previous record
+    private long previousTime;
+
+    // Builder reused to check that a numeric column is rendered back to exactly the same text
+    private StringBuilder rendered;
+
+    // Text, type and string ID of every column of the previous row. Most columns of wide rows repeat from one
+    // row to the next, so their type and ID are reused without parsing or hashing the text again
+    private String[] columnTexts;
+    private int[] columnTypes;
+    private int[] columnIds;
+
+    // Type and string ID of every argument of the event being written. Reused across events
+    private int[] argumentTypes;
+    private int[] argumentIds;
+
+    /**
+     * Constructor. Replaces the file if it already exists
+     * @param fileName Name of the output file
+     */
+    public BinaryLogSink(String fileName) {
+        this.fileName = fileName;
+        this.hasWrittenHeader = false;
+        this.stringIds = new HashMap<>();
+        this.previousTime = 0;
+        this.rendered = new StringBuilder(32);
+        this.buffer = new byte[BUFFER_SIZE];
+        this.position = 0;
+        this.columnTexts = new String[32];
+        this.columnTypes = new int[32];
+        this.columnIds = new int[32];
+        this.argumentTypes = new int[8];
+        this.argumentIds = new int[8];
+
+        try {
+            File file = new File(fileName);
+
+            // Delete the file if it already exists
+            if (file.exists()) file.delete();
+
+            out = new FileOutputStream(fileName);
+            put(MAGIC);
+        } catch (IOException e) {
+            System.out.println("An error occurred while opening " + fileName);
+            e.printStackTrace();
+            out = null;
+        }
+    }
+
+    @Override
+    public void setHeader(String header) {
+        if(this.header == null) this.header = header;
+    }
+
+    @Override
+    public void write(long time, CharSequence row) {
+        if(out == null) return;
+
+        try {
+            writeHeaderIfNeeded();
+
+            if(row instanceof LogEvent) writeEvent(time, (LogEvent) row);
+            else writeRow(time, row.toString());
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing to " + fileName);
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if(out == null) return;
+
+        try {
+            writeBuffer();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        if(out == null) return;
+
+        try {
+            writeHeaderIfNeeded();
+            writeBuffer();
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        out = null;
+    }
+
+    /**
+     * Function to write a record given as text as a ROW record
+     * @param time Simulation time in nanoseconds of the record
+     * @param text Record after the timestamp. A String so that searching and comparing columns use the JDK's intrinsics
+     */
+    private void writeRow(long time, String text) throws IOException {
+        int columns = countColumns(text);
+
+        // Make sure the string table is not reset in the middle of the record
+        if(stringIds.size() + columns > MAX_STRINGS) resetStrings();
+        typeColumns(text, columns);
+
+        put(TAG_ROW);
+        putVarLong(zigzag(time - previousTime));
+        previousTime = time;
+        putColumns(text, columns);
+    }
+
+    /**
+     * Function to write an event as an EVENT record, with its template and arguments instead of its formatted text
+     * @param time Simulation time in nanoseconds of the record
+     * @param event Event to write
+     */
+    private void writeEvent(long time, LogEvent event) throws IOException {
+        int argCount = event.getArgCount();
+        String trailingColumns = event.getTrailingColumns();
+        int columns = trailingColumns == null ? 0 : countColumns(trailingColumns);
+        if(argCount > argumentTypes.length){
+            argumentTypes = new int[argCount];
+            argumentIds = new int[argCount];
+        }
+
+        // Make sure the string table is not reset in the middle of the record
+        if(stringIds.size() + 2 + argCount + columns > MAX_STRINGS) resetStrings();
+
+        // Intern every text first, since their definitions must come before the record
+        int objectId = intern(event.getObjectName());
+        int templateId = intern(event.getTemplate().getText());
+        for(int i = 0; i < argCount; i++){
+            Object arg = event.getArg(i);
+            if(arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte) argumentTypes[i] = TYPE_LONG;
+            else if(arg instanceof Boolean) argumentTypes[i] = (Boolean) arg ? TYPE_TRUE : TYPE_FALSE;
+            else{
+                argumentTypes[i] = TYPE_STRING;
+                argumentIds[i] = intern(String.valueOf(arg));
+            }
+        }
+        if(columns > 0) typeColumns(trailingColumns, columns);
+
+        put(TAG_EVENT);
+        putVarLong(zigzag(time - previousTime));
+        previousTime = time;
+        putVarLong(objectId);
+        putVarLong(templateId);
+        putVarLong(argCount);
+        for(int i = 0; i < argCount; i++){
+            put(argumentTypes[i]);
+            if(argumentTypes[i] == TYPE_LONG) putVarLong(zigzag(((Number) event.getArg(i)).longValue()));
+            else if(argumentTypes[i] == TYPE_STRING) putVarLong(argumentIds[i]);
+        }
+
+        if(columns > 0) putColumns(trailingColumns, columns);
+        else putVarLong(0);
+    }
+
+    /**
+     * Function to count the columns of a record and make room for them in the column arrays
+     * @param text Record
+     * @return number of columns
+     */
+    private int countColumns(String text){
+        int columns = 1;
+        for(int i = text.indexOf(','); i >= 0; i = text.indexOf(',', i + 1)) columns++;
+        if(columns > columnTypes.length){
+            columnTexts = Arrays.copyOf(columnTexts, columns);
+            columnTypes = Arrays.copyOf(columnTypes, columns);
+            columnIds = Arrays.copyOf(columnIds, columns);
+        }
+        return columns;
+    }
+
+    /**
+     * Function to type every column of a record and intern its text columns. A column equal to the same column
+     * of the previous record keeps its type and ID
+     * @param text Record
+     * @param columns Number of columns
+     */
+    private void typeColumns(String text, int columns) throws IOException {
+        int start = 0;
+        for(int column = 0; column < columns; column++){
+            int end = indexOfComma(text, start);
+            String previous = columnTexts[column];
+            if(previous == null || previous.length() != end - start || !text.regionMatches(start, previous, 0, end - start)){
+                columnTexts[column] = text.substring(start, end);
+                columnTypes[column] = typeOf(text, start, end);
+                if(columnTypes[column] == TYPE_STRING) columnIds[column] = intern(columnTexts[column]);
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Function to write the column count and every typed column of a record
+     * @param text Record
+     * @param columns Number of columns
+     */
+    private void putColumns(String text, int columns) throws IOException {
+        putVarLong(columns);
+
+        int start = 0;
+        for(int column = 0; column < columns; column++){
+            int end = indexOfComma(text, start);
+            putValue(text, start, end, columnTypes[column], columnIds[column]);
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Function to write the header record before the first row
+     */
+    private void writeHeaderIfNeeded() throws IOException {
+        if(hasWrittenHeader || header == null) return;
+
+        if(stringIds.size() == MAX_STRINGS) resetStrings();
+        int id = intern(header);
+        put(TAG_HEADER);
+        putVarLong(id);
+        hasWrittenHeader = true;
+    }
+
+    /**
+     * Function to return the ID of a string, defining it in the file if it is new. The caller makes sure the
+     * string table has room for it
+     * @param text String to intern
+     * @return ID of the string
+     */
+    private int intern(String text) throws IOException {
+        Integer id = stringIds.get(text);
+        if(id != null) return id;
+
+        id = stringIds.size();
+        stringIds.put(text, id);
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        put(TAG_STRING);
+        putVarLong(id);
+        putVarLong(bytes.length);
+        put(bytes);
+        return id;
+    }
+
+    /**
+     * Function to forget all string IDs once the table has grown too large, so that long runs use bounded memory
+     */
+    private void resetStrings() throws IOException {
+        stringIds.clear();
+        Arrays.fill(columnTexts, null);
+        put(TAG_RESET);
+    }
+
+    /**
+     * Function to write one column value with its type
+     * @param row Row containing the value
+     * @param start Index of the first character of the value
+     * @param end Index after the last character of the value
+     * @param type Type of the value, as returned by typeOf
+     * @param stringId ID of the value if it is written as a string
+     */
+    private void putValue(String row, int start, int end, int type, int stringId) throws IOException {
+        put(type);
+
+        if(type == TYPE_STRING) putVarLong(stringId);
+        else if(type == TYPE_LONG) putVarLong(zigzag(unscaledValue(row, start, end)));
+        else if(type == TYPE_DECIMAL){
+            int dot = start;
+            while(row.charAt(dot) != '.') dot++;
+            putVarLong(end - dot - 1);
+            putVarLong(zigzag(unscaledValue(row, start, end)));
+        }
+    }
+
+    /**
+     * Function to decide how a column value is written. Numbers are only written as numbers if they render
+     * back to exactly the same text, so the conversion to CSV is lossless
+     * @param row Row containing the value
+     * @param start Index of the first character of the value
+     * @param end Index after the last character of the value
+     * @return one of the TYPE_ constants
+     */
+    private int typeOf(String row, int start, int end){
+        int length = end - start;
+        if(length == 0) return TYPE_EMPTY;
+        if(regionEquals(row, start, end, "true")) return TYPE_TRUE;
+        if(regionEquals(row, start, end, "false")) return TYPE_FALSE;
+
+        // At most 18 digits, so that the value fits in a long
+        if(length > 19) return TYPE_STRING;
+
+        int digits = 0, dots = 0, dot = -1;
+        for(int i = start; i < end; i++){
+            char c = row.charAt(i);
+            if(c >= '0' && c <= '9') digits++;
+            else if(c == '.'){ dots++; dot = i; }
+            else if(!(c == '-' && i == start)) return TYPE_STRING;
+        }
+        if(digits == 0 || digits > 18 || dots > 1 || dot == end - 1) return TYPE_STRING;
+
+        // Check that the value renders back to the same text (no leading zeros, "-0", etc.)
+        rendered.setLength(0);
+        if(dots == 0) rendered.append(unscaledValue(row, start, end));
+        else appendDecimal(rendered, unscaledValue(row, start, end), end - dot - 1);
+        if(!regionEquals(row, start, end, rendered)) return TYPE_STRING;
+
+        return dots == 0 ? TYPE_LONG : TYPE_DECIMAL;
+    }
+
+    /**
+     * Function to compute the value of a number without its decimal point, e.g. 1250 for "12.50"
+     */
+    private static long unscaledValue(String row, int start, int end){
+        boolean negative = row.charAt(start) == '-';
+        long value = 0;
+        for(int i = negative ? start + 1 : start; i < end; i++){
+            char c = row.charAt(i);
+            if(c != '.') value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Function to render a decimal number from its unscaled value and number of decimal places
+     * @param builder StringBuilder to append to
+     * @param unscaled Value without its decimal point
+     * @param scale Number of decimal places
+     * @return the same StringBuilder
+     */
+    static StringBuilder appendDecimal(StringBuilder builder, long unscaled, int scale){
+        if(unscaled < 0) builder.append('-');
+        String digits = Long.toString(Math.abs(unscaled));
+
+        // Pad with zeros so that there is at least one digit before the decimal point
+        for(int i = digits.length(); i <= scale; i++) builder.append('0');
+        int integerDigits = Math.max(digits.length() - scale, 0);
+        builder.append(digits, 0, integerDigits);
+        builder.append('.');
+        for(int i = digits.length(); i < scale; i++) builder.append('0');
+        return builder.append(digits, integerDigits, digits.length());
+    }
+
+    /**
+     * Function to find the end of the column starting at start
+     */
+    private static int indexOfComma(String row, int start){
+        int i = row.indexOf(',', start);
+        return i < 0 ? row.length() : i;
+    }
+
+    /**
+     * Function to compare a region of a row with a text
+     */
+    private static boolean regionEquals(String row, int start, int end, CharSequence text){
+        if(end - start != text.length()) return false;
+        for(int i = 0; i < text.length(); i++) if(row.charAt(start + i) != text.charAt(i)) return false;
+        return true;
+    }
+
+    /**
+     * Function to map a signed value to an unsigned one so that small negative values stay small
+     */
+    static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Function to write the output buffer to the file and empty it
+     */
+    private void writeBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Function to append one byte to the output buffer
+     */
+    private void put(int b) throws IOException {
+        if(position == buffer.length) writeBuffer();
+        buffer[position++] = (byte) b;
+    }
+
+    /**
+     * Function to append bytes to the output buffer
+     */
+    private void put(byte[] bytes) throws IOException {
+        for(byte b : bytes) put(b);
+    }
+
+    /**
+     * Function to append an unsigned LEB128 varint to the output buffer
+     */
+    private void putVarLong(long value) throws IOException {
+        while((value & ~0x7FL) != 0){
+            put((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        put((int) value);
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * This class models the asynchronous BLE link between the master node and the slave nodes of a zone.
+ * Instead of blocking the caller for the propagation and transmission delays, a request is scheduled
+ * for delivery on the SimulationClock, handled at the remote end when it arrives, and its reply is
+ * scheduled back the same way. The caller receives a CompletableFuture that completes when the reply
+ * arrives, so a master node can have many requests in flight to its slave nodes at once
+ */
+public class BleLink {
+
+    // Workers running the handlers of delivered messages. Created on first use
+    private static ExecutorService deliveryWorkers;
+
+    // Synchronous call of every thread, reused for all its calls since a thread waits for each reply before it
+    // sends its next request
+    private static final ThreadLocal<Call> callOfThread = ThreadLocal.withInitial(Call::new);
+
+    /**
+     * This class is a request sent with call and its reply. The request is an action event running the handler at
+     * the remote end, and the reply is a wait event waking up the caller, so a call creates no future and no event
+     */
+    private static final class Call implements Runnable {
+
+        // Request event, running this call's handler on the delivery workers, and reply event, waking up the caller
+        private final SimulationEvent request = new SimulationEvent(0, 0, this, getDeliveryWorkers());
+        private final SimulationEvent reply = new SimulationEvent(0, 0, Thread.currentThread());
+
+        // Clock of the caller, handler of the request and delay in ms of the reply. Set for every call
+        private SimulationClock clock;
+        private Supplier<?> handler;
+        private int replyDelay;
+
+        // Reply, or the exception thrown by the handler
+        private Object result;
+        private RuntimeException error;
+
+        /**
+         * Function to send the request and wait for its reply
+         * @param requestDelay Delay in ms for the request to reach the remote end
+         * @param handler Handler executed at the remote end once the request arrives
+         * @param replyDelay Delay in ms for the reply to travel back to the caller
+         * @return reply
+         */
+        private Object send(int requestDelay, Supplier<?> handler, int replyDelay){
+            this.clock = SimulationClock.getInstance();
+            this.handler = handler;
+            this.replyDelay = replyDelay;
+            request.rearm();
+            reply.rearm();
+
+            clock.schedule(request, clock.getCurrentTimeNanos() + requestDelay * 1_000_000L);
+            clock.awaitEvent(reply);
+
+            Object reply = result;
+            RuntimeException failure = error;
+            this.handler = null;
+            this.result = null;
+            this.error = null;
+            if(failure != null) throw new CompletionException(failure);
+            return reply;
+        }
+
+        /**
+         * Function run at the remote end once the request arrives. Handles the request, then sends the reply back
+         */
+        @Override
+        public void run(){
+            long delay = replyDelay * 1_000_000L;
+            try {
+                result = handler.get();
+            } catch (RuntimeException e) {
+                // The failure travels back at once, as with request
+                error = e;
+                delay = 0;
+            }
+            clock.schedule(reply, clock.getCurrentTimeNanos() + delay);
+        }
+    }
+
+    /**
+     * Function to send a request over the link
+     * @param <T> Type of the reply
+     * @param requestDelay Delay in ms for the request to reach the remote end (propagation + transmission)
+     * @param handler Handler executed at the remote end once the request arrives. Its result is the reply
+     * @param replyDelay Function computing the delay in ms for the reply to travel back to the caller
+     * @return future that completes with the reply once it arrives back at the caller
+     */
+    public static <T> CompletableFuture<T> request(int requestDelay, Supplier<T> handler, ToIntFunction<T> replyDelay){
+        SimulationClock clock = SimulationClock.getInstance();
+        CompletableFuture<T> reply = new CompletableFuture<>();
+
+        // Deliver the request after the request delay
+        clock.schedule(clock.getCurrentTimeNanos() + requestDelay * 1_000_000L, () -> {
+            T result;
+            try {
+                // Handle the request at the remote end
+                result = handler.get();
+            } catch (RuntimeException e) {
+                reply.completeExceptionally(e);
+                return;
+            }
+
+            // Deliver the reply after the reply delay
+            clock.schedule(clock.getCurrentTimeNanos() + replyDelay.applyAsInt(result) * 1_000_000L,
+                () -> reply.complete(result), getDeliveryWorkers());
+        }, getDeliveryWorkers());
+
+        return reply;
+    }
+
+    /**
+     * Function to send a request over the link and wait for its reply. Unlike request, it creates no future and no
+     * events, since every thread reuses one request and one reply for all its calls
+     * @param <T> Type of the reply
+     * @param requestDelay Delay in ms for the request to reach the remote end (propagation + transmission)
+     * @param handler Handler executed at the remote end once the request arrives. Its result is the reply
+     * @param replyDelay Delay in ms for the reply to travel back to the caller
+     * @return reply
+     * @throws CompletionException if the handler threw an exception
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T call(int requestDelay, Supplier<T> handler, int replyDelay){
+        return (T) callOfThread.get().send(requestDelay, handler, replyDelay);
+    }
+
+    /**
+     * Function to return the delivery workers, creating them on first use. Handlers do not block,
+     * so the pool only grows with the number of messages delivered at the same instant
+     * @return delivery workers
+     */
+    private static synchronized ExecutorService getDeliveryWorkers(){
+        if(deliveryWorkers == null){
+            AtomicInteger workerCount = new AtomicInteger();
+            deliveryWorkers = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "BleLink-worker-" + workerCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return deliveryWorkers;
+    }
+}
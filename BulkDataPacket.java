@@ -1,29 +1,104 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 
 /**
- * This class is a container for a list of DataPacket objects
+ * This class is a container for a list of DataPacket objects. To travel between gateways, it is encoded into a
+ * compact binary form (see encode), so that the transmission delay of every hop is computed from the bytes
+ * actually sent, including names and timestamps, and decoded back into packets at the end of the route.
+ *
+ * Wire format (big-endian):
+ *   byte   format version
+ *   name   source node name
+ *   long   time of creation in nanoseconds
+ *   int    number of packets, then for every packet:
+ *     long   time of creation in nanoseconds
+ *     name   source object name
+ *     name   field name
+ *     byte   value type: TEXT, DOUBLE, LONG or BOOLEAN
+ *     value  TEXT: a name; DOUBLE, LONG: 8 bytes; BOOLEAN: 1 byte
+ *     int    size in bytes of the value
+ * where a name is an unsigned short holding the length of its UTF-8 bytes (0xFFFF for null) followed by the bytes.
+ * A name or text value longer than 65534 UTF-8 bytes cannot be sent in this format, and encoding rejects it.
+ *
+ * The compressed format (see encode(boolean)) codes the same content with a dictionary and deltas, since the
+ * packets of a zone repeat a few source and field names and their values change slowly:
+ *   byte   compressed format version
+ *   name   source node name
+ *   varint time of creation in nanoseconds
+ *   varint number of dictionary strings, then for every string: varint length, UTF-8 bytes
+ *   varint number of series (source and field pairs), then for every series: varint source, varint field string
+ *   varint number of packets, then for every packet:
+ *     varint series
+ *     varint time of creation, as the difference from the previous packet (the bulk packet for the first one)
+ *     byte   value tag, with SIZE_CHANGED set if the size differs from the previous size of the series
+ *     value  LONG: varint difference from the previous value of the series; DOUBLE: 8 bytes; TEXT: varint string;
+ *            TRUE, FALSE, NULL: nothing
+ *     varint size in bytes of the value, only if SIZE_CHANGED is set
+ * Varints are unsigned LEB128. Differences are zigzag encoded first. The deltas restart with every bulk packet,
+ * so every bulk packet is decoded on its own
  */
 public class BulkDataPacket {
 
-    //Name of the node that created the BulkDataPacket object 
+    // Version of the wire format
+    private static final byte FORMAT_VERSION = 1;
+
+    // Value types on the wire. Values created from text are sent as their text, so that the receiver gets
+    // exactly the same text back. Booleans are always sent as 1 byte, since their text is always "true" or "false"
+    private static final byte WIRE_TEXT = 0;
+    private static final byte WIRE_DOUBLE = 1;
+    private static final byte WIRE_LONG = 2;
+    private static final byte WIRE_BOOLEAN = 3;
+
+    // Version of the compressed wire format
+    private static final byte COMPRESSED_FORMAT_VERSION = 2;
+
+    // Value tags of the compressed format. Values whose text is not the canonical text of their number are sent as text
+    private static final int TAG_LONG = 0;
+    private static final int TAG_DOUBLE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_FALSE = 3;
+    private static final int TAG_TEXT = 4;
+    private static final int TAG_NULL = 5;
+    private static final int TAG_MASK = 0x07;
+
+    // Flag of a value tag indicating that the size of the packet follows the value
+    private static final int SIZE_CHANGED = 0x08;
+
+    // Length written for a null name, and the longest name that can be written, in UTF-8 bytes
+    private static final int NULL_NAME = 0xFFFF;
+    private static final int MAX_NAME_LENGTH = NULL_NAME - 1;
+
+    // Largest number of bytes a packet takes in the compressed format
+    private static final int MAX_COMPRESSED_PACKET_LENGTH = 5 + 10 + 1 + 10 + 5;
+
+    //Name of the node that created the BulkDataPacket object
     private String sourceNodeName;
 
-    // Time at which the BulkDataPacket object was created
-    private String time_of_creation;
-    
+    // Time in nanoseconds of simulation time at which the BulkDataPacket object was created
+    private long time_of_creation;
+
     //List of packets aggregated in the BulkDataPacket
     ArrayList<DataPacket> packets;
 
     //Sum of the sizes in Bytes of the DataPacket objects in 'packets'
-    private int totalSize; 
+    private int totalSize;
+
+    // Encoded form of the bulk packet. null until encode is called
+    private ByteBuffer encoded;
 
     /**
      * Constructor
      * @param sourceNodeName
-     * @param time_of_creation
+     * @param time_of_creation simulation time in nanoseconds
      */
-    public BulkDataPacket(String sourceNodeName, String time_of_creation) {
+    public BulkDataPacket(String sourceNodeName, long time_of_creation) {
         this.sourceNodeName = sourceNodeName;
         this.time_of_creation = time_of_creation;
         packets = new ArrayList<>();
@@ -47,6 +122,533 @@ public class BulkDataPacket {
         for(DataPacket packet : packetsToAdd) totalSize += packet.getSize();
     }
 
+    /**
+     * Function to encode the bulk packet for transmission, without compression. See encode(boolean)
+     * @return read-only buffer holding the encoded bulk packet, from its position to its limit
+     */
+    public ByteBuffer encode() {
+        return encode(false);
+    }
+
+    /**
+     * Function to encode the bulk packet for transmission. The packets are given back to their pools once encoded,
+     * since the bytes carry them from then on, so the bulk packet holds no packets afterwards. Encoding again
+     * returns the same bytes, in the format of the first encoding
+     * @param compressed true to code the packets with a dictionary and deltas, false for the plain format
+     * @return read-only buffer holding the encoded bulk packet, from its position to its limit
+     * @throws IllegalArgumentException if a name or text value is longer than the format can hold. The bulk packet
+     * keeps its packets in that case
+     */
+    public ByteBuffer encode(boolean compressed) {
+        if(encoded != null) return encoded.duplicate();
+
+        ByteBuffer buffer = compressed ? encodeCompressed() : encodePlain();
+
+        // The bytes now carry the packets
+        for(DataPacket packet : packets) packet.release();
+        packets.clear();
+
+        encoded = buffer.asReadOnlyBuffer();
+        return encoded.duplicate();
+    }
+
+    /**
+     * Function to encode the packets in the plain format
+     * @return buffer holding the encoded bulk packet, ready to be read
+     */
+    private ByteBuffer encodePlain() {
+        // Find the exact size first, so that the bytes are written once into a buffer of the right size
+        int length = 1 + nameLength(sourceNodeName) + 8 + 4;
+        for(DataPacket packet : packets){
+            length += 8 + nameLength(NameTable.bytesOf(packet.getSourceHandle())) + nameLength(NameTable.bytesOf(packet.getFieldHandle())) + 1 + 4;
+            String text = packet.getText();
+            if(packet.getValueType() == DataPacket.ValueType.BOOLEAN) length += 1;
+            else if(text != null || packet.getValueType() == DataPacket.ValueType.STRING) length += nameLength(text);
+            else length += 8;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(FORMAT_VERSION);
+        putName(buffer, sourceNodeName);
+        buffer.putLong(time_of_creation);
+        buffer.putInt(packets.size());
+
+        for(DataPacket packet : packets){
+            buffer.putLong(packet.getTime_of_creation());
+            putName(buffer, NameTable.bytesOf(packet.getSourceHandle()));
+            putName(buffer, NameTable.bytesOf(packet.getFieldHandle()));
+
+            String text = packet.getText();
+            if(packet.getValueType() == DataPacket.ValueType.BOOLEAN){
+                buffer.put(WIRE_BOOLEAN);
+                buffer.put((byte) (packet.getBoolean() ? 1 : 0));
+            }
+            else if(text != null || packet.getValueType() == DataPacket.ValueType.STRING){
+                buffer.put(WIRE_TEXT);
+                putName(buffer, text);
+            }
+            else if(packet.getValueType() == DataPacket.ValueType.DOUBLE){
+                buffer.put(WIRE_DOUBLE);
+                buffer.putDouble(packet.getDouble());
+            }
+            else{
+                buffer.put(WIRE_LONG);
+                buffer.putLong(packet.getLong());
+            }
+            buffer.putInt(packet.getSize());
+        }
+
+        return buffer.flip();
+    }
+
+    /**
+     * Function to encode the packets in the compressed format
+     * @return buffer holding the encoded bulk packet, ready to be read
+     */
+    private ByteBuffer encodeCompressed() {
+        // Dictionary of the names and text values, and series of the packets, in the order they are first used
+        HashMap<String, Integer> stringIndexes = new HashMap<>();
+        ArrayList<byte[]> strings = new ArrayList<>();
+        HashMap<Long, Integer> seriesIndexes = new HashMap<>();
+        ArrayList<int[]> series = new ArrayList<>();
+
+        // Series and value tag of every packet
+        int[] packetSeries = new int[packets.size()];
+        int[] packetTags = new int[packets.size()];
+
+        for(int i = 0; i < packets.size(); i++){
+            DataPacket packet = packets.get(i);
+
+            long key = ((long) packet.getSourceHandle() << 32) | (packet.getFieldHandle() & 0xFFFFFFFFL);
+            Integer index = seriesIndexes.get(key);
+            if(index == null){
+                index = series.size();
+                seriesIndexes.put(key, index);
+                series.add(new int[]{
+                    stringIndexOf(packet.getSourceObjectName(), stringIndexes, strings),
+                    stringIndexOf(packet.getFieldName(), stringIndexes, strings)});
+            }
+            packetSeries[i] = index;
+
+            packetTags[i] = tagOf(packet);
+            if(packetTags[i] == TAG_TEXT) stringIndexOf(packet.getText(), stringIndexes, strings);
+        }
+
+        // Allocate a buffer large enough for any value, then keep only the bytes written
+        int length = 1 + nameLength(sourceNodeName) + 10 + 5 + 5 + 5 + series.size() * 10 + packets.size() * MAX_COMPRESSED_PACKET_LENGTH;
+        for(byte[] string : strings) length += 5 + string.length;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        buffer.put(COMPRESSED_FORMAT_VERSION);
+        putName(buffer, sourceNodeName);
+        putVarlong(buffer, time_of_creation);
+
+        putVarint(buffer, strings.size());
+        for(byte[] string : strings){
+            putVarint(buffer, string.length);
+            buffer.put(string);
+        }
+
+        putVarint(buffer, series.size());
+        for(int[] pair : series){
+            putVarint(buffer, pair[0]);
+            putVarint(buffer, pair[1]);
+        }
+
+        // Previous value and size of every series, and time of the previous packet
+        long[] previousValues = new long[series.size()];
+        int[] previousSizes = new int[series.size()];
+        long previousTime = time_of_creation;
+
+        putVarint(buffer, packets.size());
+        for(int i = 0; i < packets.size(); i++){
+            DataPacket packet = packets.get(i);
+            int seriesIndex = packetSeries[i];
+            int tag = packetTags[i];
+            int size = packet.getSize();
+            boolean sizeChanged = size != previousSizes[seriesIndex];
+
+            putVarint(buffer, seriesIndex);
+            putVarlong(buffer, zigzag(packet.getTime_of_creation() - previousTime));
+            previousTime = packet.getTime_of_creation();
+            buffer.put((byte) (sizeChanged ? tag | SIZE_CHANGED : tag));
+
+            if(tag == TAG_LONG){
+                putVarlong(buffer, zigzag(packet.getLong() - previousValues[seriesIndex]));
+                previousValues[seriesIndex] = packet.getLong();
+            }
+            else if(tag == TAG_DOUBLE) buffer.putDouble(packet.getDouble());
+            else if(tag == TAG_TEXT) putVarint(buffer, stringIndexes.get(packet.getText()));
+
+            if(sizeChanged){
+                putVarint(buffer, size);
+                previousSizes[seriesIndex] = size;
+            }
+        }
+
+        buffer.flip();
+        return ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.limit()));
+    }
+
+    /**
+     * Function to find the value tag of a packet in the compressed format
+     * @param packet Packet to encode
+     * @return tag of the packet's value
+     */
+    private static int tagOf(DataPacket packet) {
+        String text = packet.getText();
+        switch(packet.getValueType()){
+            case BOOLEAN: return packet.getBoolean() ? TAG_TRUE : TAG_FALSE;
+            case LONG: return text == null || isCanonicalLong(text) ? TAG_LONG : TAG_TEXT;
+            case DOUBLE: return text == null || Double.toString(packet.getDouble()).equals(text) ? TAG_DOUBLE : TAG_TEXT;
+            default: return text == null ? TAG_NULL : TAG_TEXT;
+        }
+    }
+
+    /**
+     * Function to check whether the text of an integer is the text its number is written as, e.g. "20" but not "020"
+     * @param text Text of a LONG value
+     * @return true if the number is written back as the same text
+     */
+    private static boolean isCanonicalLong(String text) {
+        if(text.charAt(0) == '+') return false;
+        int start = text.charAt(0) == '-' ? 1 : 0;
+        return text.charAt(start) != '0' || text.length() == 1;
+    }
+
+    /**
+     * Function to find the index of a string in the dictionary of a compressed bulk packet, adding it if needed
+     * @param string String to find
+     * @param stringIndexes Index of every string in the dictionary
+     * @param strings UTF-8 bytes of the strings in the dictionary
+     * @return index of the string
+     */
+    private static int stringIndexOf(String string, HashMap<String, Integer> stringIndexes, ArrayList<byte[]> strings) {
+        Integer index = stringIndexes.get(string);
+        if(index == null){
+            index = strings.size();
+            stringIndexes.put(string, index);
+            strings.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+        return index;
+    }
+
+    /**
+     * Function to write the bulk packet to a stream, e.g. a master node's spill file, in its encoded form. A bulk
+     * packet that was not encoded yet is encoded in the plain format, so it holds no packets afterwards
+     * @param out Stream the bulk packet is written to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        ByteBuffer buffer = encode();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Function to read a bulk packet written by writeTo
+     * @param in Stream the bulk packet is read from
+     * @return bulk packet read
+     * @throws IOException if the stream cannot be read
+     */
+    public static BulkDataPacket readFrom(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Function to decode a bulk packet received from another gateway. The buffer is not changed, so the same bytes
+     * can be decoded again
+     * @param buffer Buffer returned by encode
+     * @return decoded bulk packet
+     */
+    public static BulkDataPacket decode(ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate();
+
+        byte version = in.get();
+        BulkDataPacket bulkPacket;
+        if(version == FORMAT_VERSION) bulkPacket = decodePlain(in);
+        else if(version == COMPRESSED_FORMAT_VERSION) bulkPacket = decodeCompressed(in);
+        else throw new IllegalArgumentException("Unknown bulk data packet format version " + version);
+
+        // The received bytes are the encoded form of the decoded packet
+        bulkPacket.encoded = buffer.asReadOnlyBuffer();
+        return bulkPacket;
+    }
+
+    /**
+     * Function to decode the packets of the plain format
+     * @param in Buffer positioned after the format version
+     * @return decoded bulk packet
+     */
+    private static BulkDataPacket decodePlain(ByteBuffer in) {
+        BulkDataPacket bulkPacket = new BulkDataPacket(getName(in), in.getLong());
+        int count = in.getInt();
+        bulkPacket.packets.ensureCapacity(count);
+
+        for(int i = 0; i < count; i++){
+            long time = in.getLong();
+            int sourceHandle = NameTable.handleOf(getName(in));
+            int fieldHandle = NameTable.handleOf(getName(in));
+            byte type = in.get();
+
+            // Read the value, then the size following it
+            DataPacket packet;
+            switch(type){
+                case WIRE_BOOLEAN: {
+                    boolean value = in.get() != 0;
+                    packet = new DataPacket(sourceHandle, fieldHandle, value, in.getInt(), time);
+                    break;
+                }
+                case WIRE_DOUBLE: {
+                    double value = in.getDouble();
+                    packet = new DataPacket(sourceHandle, fieldHandle, value, in.getInt(), time);
+                    break;
+                }
+                case WIRE_LONG: {
+                    long value = in.getLong();
+                    packet = new DataPacket(sourceHandle, fieldHandle, value, in.getInt(), time);
+                    break;
+                }
+                case WIRE_TEXT: {
+                    String value = getName(in);
+                    packet = new DataPacket(sourceHandle, fieldHandle, value, in.getInt(), time);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown value type " + type + " in bulk data packet");
+            }
+            bulkPacket.addPacket(packet);
+        }
+        return bulkPacket;
+    }
+
+    /**
+     * Function to decode the packets of the compressed format
+     * @param in Buffer positioned after the format version
+     * @return decoded bulk packet
+     */
+    private static BulkDataPacket decodeCompressed(ByteBuffer in) {
+        BulkDataPacket bulkPacket = new BulkDataPacket(getName(in), getVarlong(in));
+
+        // Read the dictionary, and resolve the names of every series once
+        String[] strings = new String[getVarint(in)];
+        for(int i = 0; i < strings.length; i++){
+            byte[] bytes = new byte[getVarint(in)];
+            in.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int seriesCount = getVarint(in);
+        int[] sourceHandles = new int[seriesCount];
+        int[] fieldHandles = new int[seriesCount];
+        for(int i = 0; i < seriesCount; i++){
+            sourceHandles[i] = NameTable.handleOf(strings[getVarint(in)]);
+            fieldHandles[i] = NameTable.handleOf(strings[getVarint(in)]);
+        }
+
+        // Previous value and size of every series, and time of the previous packet
+        long[] previousValues = new long[seriesCount];
+        int[] previousSizes = new int[seriesCount];
+        long previousTime = bulkPacket.time_of_creation;
+
+        int count = getVarint(in);
+        bulkPacket.packets.ensureCapacity(count);
+        for(int i = 0; i < count; i++){
+            int seriesIndex = getVarint(in);
+            long time = previousTime + unzigzag(getVarlong(in));
+            previousTime = time;
+            int tag = in.get();
+
+            // Read the value, then the size following it
+            long longValue = 0;
+            double doubleValue = 0;
+            String text = null;
+            switch(tag & TAG_MASK){
+                case TAG_LONG:
+                    longValue = previousValues[seriesIndex] + unzigzag(getVarlong(in));
+                    previousValues[seriesIndex] = longValue;
+                    break;
+                case TAG_DOUBLE: doubleValue = in.getDouble(); break;
+                case TAG_TEXT: text = strings[getVarint(in)]; break;
+                case TAG_TRUE: case TAG_FALSE: case TAG_NULL: break;
+                default: throw new IllegalArgumentException("Unknown value tag " + tag + " in bulk data packet");
+            }
+            if((tag & SIZE_CHANGED) != 0) previousSizes[seriesIndex] = getVarint(in);
+            int size = previousSizes[seriesIndex];
+
+            int sourceHandle = sourceHandles[seriesIndex];
+            int fieldHandle = fieldHandles[seriesIndex];
+            DataPacket packet;
+            switch(tag & TAG_MASK){
+                case TAG_LONG: packet = new DataPacket(sourceHandle, fieldHandle, longValue, size, time); break;
+                case TAG_DOUBLE: packet = new DataPacket(sourceHandle, fieldHandle, doubleValue, size, time); break;
+                case TAG_TRUE: packet = new DataPacket(sourceHandle, fieldHandle, true, size, time); break;
+                case TAG_FALSE: packet = new DataPacket(sourceHandle, fieldHandle, false, size, time); break;
+                default: packet = new DataPacket(sourceHandle, fieldHandle, text, size, time); break;
+            }
+            bulkPacket.addPacket(packet);
+        }
+        return bulkPacket;
+    }
+
+    /**
+     * Function to write an unsigned varint
+     * @param buffer Buffer to write to
+     * @param value Non-negative value
+     */
+    private static void putVarint(ByteBuffer buffer, int value) {
+        putVarlong(buffer, value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Function to write an unsigned varlong
+     * @param buffer Buffer to write to
+     * @param value Value, read as unsigned
+     */
+    private static void putVarlong(ByteBuffer buffer, long value) {
+        while((value & ~0x7FL) != 0){
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Function to read an unsigned varint
+     * @param buffer Buffer to read from
+     * @return value
+     */
+    private static int getVarint(ByteBuffer buffer) {
+        return (int) getVarlong(buffer);
+    }
+
+    /**
+     * Function to read an unsigned varlong
+     * @param buffer Buffer to read from
+     * @return value
+     */
+    private static long getVarlong(ByteBuffer buffer) {
+        long value = 0;
+        for(int shift = 0; ; shift += 7){
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0) return value;
+        }
+    }
+
+    /**
+     * Function to map a signed value to an unsigned one, small differences of either sign giving small values
+     * @param value Signed value
+     * @return zigzag encoded value
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Function to map a zigzag encoded value back to the signed value
+     * @param value Zigzag encoded value
+     * @return signed value
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Function to find the number of bytes a name takes on the wire
+     * @param name Name, or null
+     * @return number of bytes
+     */
+    private static int nameLength(String name) {
+        if(name == null) return 2;
+
+        // Count the UTF-8 bytes without encoding the name
+        int length = 0;
+        for(int i = 0; i < name.length(); i++){
+            char c = name.charAt(i);
+            if(c < 0x80) length += 1;
+            else if(c < 0x800) length += 2;
+            else if(Character.isHighSurrogate(c)){ length += 4; i++; }
+            else length += 3;
+        }
+        return 2 + checkNameLength(length);
+    }
+
+    /**
+     * Function to find the number of bytes an encoded name takes on the wire
+     * @param bytes UTF-8 bytes of the name
+     * @return number of bytes
+     */
+    private static int nameLength(byte[] bytes) {
+        return 2 + checkNameLength(bytes.length);
+    }
+
+    /**
+     * Function to check that a name fits in the unsigned short holding its length. Encoding finds the length of every
+     * name before writing anything, so an encoding is rejected before any packet is released
+     * @param length Number of UTF-8 bytes of the name
+     * @return length
+     */
+    private static int checkNameLength(int length) {
+        if(length > MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("Name or text value of " + length + " UTF-8 bytes is longer than the " + MAX_NAME_LENGTH + " bytes a bulk data packet can hold");
+        return length;
+    }
+
+    /**
+     * Function to write a name
+     * @param buffer Buffer to write to
+     * @param name Name, or null
+     */
+    private static void putName(ByteBuffer buffer, String name) {
+        if(name == null){
+            buffer.putShort((short) NULL_NAME);
+            return;
+        }
+
+        // ASCII names are written without encoding them into a new array
+        int start = buffer.position();
+        buffer.putShort((short) 0);
+        for(int i = 0; i < name.length(); i++){
+            char c = name.charAt(i);
+            if(c >= 0x80){
+                buffer.position(start);
+                putName(buffer, name.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer.put((byte) c);
+        }
+        buffer.putShort(start, (short) checkNameLength(name.length()));
+    }
+
+    /**
+     * Function to write an encoded name
+     * @param buffer Buffer to write to
+     * @param bytes UTF-8 bytes of the name
+     */
+    private static void putName(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) checkNameLength(bytes.length));
+        buffer.put(bytes);
+    }
+
+    /**
+     * Function to read a name
+     * @param buffer Buffer to read from
+     * @return name, or null
+     */
+    private static String getName(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if(length == NULL_NAME) return null;
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     /**
      * Getter
      * @return sourceNodeName
@@ -54,7 +656,7 @@ public class BulkDataPacket {
     public String getSourceNodeName() {
         return sourceNodeName;
     }
-    
+
     /**
      * Getter
      * @return packets
@@ -62,10 +664,10 @@ public class BulkDataPacket {
     public ArrayList<DataPacket> getPackets() {
         return packets;
     }
-    
+
     /**
      * Getter
-     * @return totalSize
+     * @return totalSize, the sum of the nominal sizes of the packets' values
      */
     public int getSize() {
         return totalSize;
@@ -73,9 +675,9 @@ public class BulkDataPacket {
 
     /**
      * Getter
-     * @return time_of_creation
+     * @return time_of_creation in nanoseconds of simulation time
      */
-    public String getTime_of_creation() {
+    public long getTime_of_creation() {
         return time_of_creation;
     }
 
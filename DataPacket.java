@@ -1,38 +1,266 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
- * This class encapsulates a data value generated by a sensor and other metadata
+ * This class encapsulates a data value generated by a sensor and other metadata. The value is kept in a primitive
+ * slot according to its type (double, long, boolean or string), and the source object and field as int handles
+ * (see NameTable), so consumers read numbers without parsing text. A packet created from text keeps the text,
+ * and toString writes exactly that text. Packets created by devices come from a DataPacketPool and are recycled
+ * once their last owner releases them (see DataPacketPool for the ownership rules)
  */
 public class DataPacket {
 
-    //Time at which the data value was created/read
-    private String time_of_creation;
+    // Types of the value of a data packet
+    public enum ValueType {
+        // Decimal number, e.g. "20.5"
+        DOUBLE,
+        // Integer, e.g. "20"
+        LONG,
+        // "true" or "false"
+        BOOLEAN,
+        // Any other text, e.g. "Uninitialized"
+        STRING
+    }
+
+    // Powers of 10 up to the number of digits of a short decimal, all exact doubles
+    private static final double[] POWERS_OF_10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    //Time in nanoseconds of simulation time at which the data value was created/read
+    private long time_of_creation;
+
+    //Handle of the object that produced the data value (most likely a sensor)
+    private int sourceHandle;
 
-    //Object that produced the data value (most likely a sensor)
-    private String sourceObjectName;
+    //Handle of the field in the sensor whose value is encapsulated in the DataPacket. For example, "Motor Speed"
+    private int fieldHandle;
 
-    //Field in the sensor whose value is encapsulated in the DataPacket. For example, "Motor Speed" 
-    private String fieldName ;
+    //Type of the value, telling which of the slots below holds it
+    private ValueType valueType;
 
-    //Value of a specific field in the sensor. For example, "59 RPM"
+    //Value slots. Only the slot of the value's type is set
+    private double doubleValue;
+    private long longValue;
+    private boolean booleanValue;
+
+    //Text of the value. For example, "59 RPM". Created on first use for packets created from a primitive value
     private String value;
 
     //Size in bytes of the returned value
     private int size;
-    
+
+    //Pool the packet is given back to when released. null if the packet is not pooled
+    private DataPacketPool pool;
+
+    //Successful ExecutionResult returning this packet. Created once and reused with the packet
+    private ExecutionResult result;
+
+    //Flag indicating whether the packet is free in its pool. Guarded by the pool
+    boolean inPool;
+
     /**
-     * Constructor
+     * Constructor. The type of the value is found from its text
      * @param sourceObjectName
      * @param fieldName
      * @param value
      * @param size
-     * @param time_of_creation
+     * @param time_of_creation simulation time in nanoseconds
      */
-    public DataPacket(String sourceObjectName, String fieldName, String value, int size, String time_of_creation) {
-        this.sourceObjectName = sourceObjectName;
-        this.fieldName = fieldName;
+    public DataPacket(String sourceObjectName, String fieldName, String value, int size, long time_of_creation) {
+        this(NameTable.handleOf(sourceObjectName), NameTable.handleOf(fieldName), value, size, time_of_creation);
+    }
+
+    /**
+     * Constructor. The type of the value is found from its text
+     * @param sourceHandle Handle of the source object's name
+     * @param fieldHandle Handle of the field name
+     * @param value Text of the value
+     * @param size Size in bytes of the value
+     * @param time_of_creation simulation time in nanoseconds
+     */
+    public DataPacket(int sourceHandle, int fieldHandle, String value, int size, long time_of_creation) {
+        this.sourceHandle = sourceHandle;
+        this.fieldHandle = fieldHandle;
         this.value = value;
         this.size = size;
         this.time_of_creation = time_of_creation;
+        parseValue(value);
+    }
+
+    /**
+     * Constructor of an empty pooled packet. Filled in by reset
+     * @param pool Pool the packet is given back to when released
+     */
+    DataPacket(DataPacketPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Function to fill in a pooled packet for its next use. The type of the value is found from its text
+     * @param sourceHandle Handle of the source object's name
+     * @param fieldHandle Handle of the field name
+     * @param value Text of the value
+     * @param size Size in bytes of the value
+     * @param time_of_creation simulation time in nanoseconds
+     * @return this packet
+     */
+    DataPacket reset(int sourceHandle, int fieldHandle, String value, int size, long time_of_creation) {
+        this.sourceHandle = sourceHandle;
+        this.fieldHandle = fieldHandle;
+        this.value = value;
+        this.size = size;
+        this.time_of_creation = time_of_creation;
+        this.doubleValue = 0;
+        this.longValue = 0;
+        this.booleanValue = false;
+        parseValue(value);
+        return this;
+    }
+
+    /**
+     * Function to return a successful ExecutionResult holding this packet. The result is reused with the packet,
+     * so it belongs to the owner of the packet
+     * @return result of a successful command returning this packet
+     */
+    public ExecutionResult asResult() {
+        if(result == null) result = new ExecutionResult(true, this);
+        return result;
+    }
+
+    /**
+     * Function to return a copy of the packet that is not pooled, so that it stays valid after this packet is
+     * released and reused
+     * @return new packet with the same source, field, value, size and creation time
+     */
+    public DataPacket copy() {
+        DataPacket copy = new DataPacket(null);
+        copy.sourceHandle = sourceHandle;
+        copy.fieldHandle = fieldHandle;
+        copy.valueType = valueType;
+        copy.doubleValue = doubleValue;
+        copy.longValue = longValue;
+        copy.booleanValue = booleanValue;
+        copy.value = value;
+        copy.size = size;
+        copy.time_of_creation = time_of_creation;
+        return copy;
+    }
+
+    /**
+     * Function to give the packet back to its pool once its last owner no longer uses it. Has no effect on packets
+     * that are not pooled
+     */
+    public void release() {
+        if(pool != null) pool.release(this);
+    }
+
+    /**
+     * Constructor for a decimal value
+     * @param sourceHandle Handle of the source object's name
+     * @param fieldHandle Handle of the field name
+     * @param value Value
+     * @param size Size in bytes of the value
+     * @param time_of_creation simulation time in nanoseconds
+     */
+    public DataPacket(int sourceHandle, int fieldHandle, double value, int size, long time_of_creation) {
+        this.sourceHandle = sourceHandle;
+        this.fieldHandle = fieldHandle;
+        this.valueType = ValueType.DOUBLE;
+        this.doubleValue = value;
+        this.size = size;
+        this.time_of_creation = time_of_creation;
+    }
+
+    /**
+     * Constructor for an integer value
+     * @param sourceHandle Handle of the source object's name
+     * @param fieldHandle Handle of the field name
+     * @param value Value
+     * @param size Size in bytes of the value
+     * @param time_of_creation simulation time in nanoseconds
+     */
+    public DataPacket(int sourceHandle, int fieldHandle, long value, int size, long time_of_creation) {
+        this.sourceHandle = sourceHandle;
+        this.fieldHandle = fieldHandle;
+        this.valueType = ValueType.LONG;
+        this.longValue = value;
+        this.size = size;
+        this.time_of_creation = time_of_creation;
+    }
+
+    /**
+     * Constructor for a boolean value
+     * @param sourceHandle Handle of the source object's name
+     * @param fieldHandle Handle of the field name
+     * @param value Value
+     * @param size Size in bytes of the value
+     * @param time_of_creation simulation time in nanoseconds
+     */
+    public DataPacket(int sourceHandle, int fieldHandle, boolean value, int size, long time_of_creation) {
+        this.sourceHandle = sourceHandle;
+        this.fieldHandle = fieldHandle;
+        this.valueType = ValueType.BOOLEAN;
+        this.booleanValue = value;
+        this.size = size;
+        this.time_of_creation = time_of_creation;
+    }
+
+    /**
+     * Function to find the type of a value from its text and fill in its slot. Runs once, when the packet is created
+     * @param text Text of the value
+     */
+    private void parseValue(String text) {
+        valueType = ValueType.STRING;
+        if(text == null || text.isEmpty()) return;
+
+        if(text.equals("true") || text.equals("false")){
+            valueType = ValueType.BOOLEAN;
+            booleanValue = text.equals("true");
+            return;
+        }
+
+        // Check the characters before parsing, so that text values cost no exception
+        int start = text.charAt(0) == '-' || text.charAt(0) == '+' ? 1 : 0;
+        int digits = 0;
+        boolean decimal = false;
+        for(int i = start; i < text.length(); i++){
+            char c = text.charAt(i);
+            if(c >= '0' && c <= '9') digits++;
+            else if(c == '.' && !decimal) decimal = true;
+            else return;
+        }
+        if(digits == 0) return;
+
+        if(!decimal && digits <= 18){
+            long number = 0;
+            for(int i = start; i < text.length(); i++) number = number * 10 + (text.charAt(i) - '0');
+            valueType = ValueType.LONG;
+            longValue = text.charAt(0) == '-' ? -number : number;
+        }
+        else if(digits <= 15){
+            // Short decimals are parsed without Double.parseDouble, which allocates on every call. The digits and the
+            // power of 10 are exact doubles, so their quotient is rounded exactly as Double.parseDouble rounds it
+            long number = 0;
+            int fractionDigits = 0;
+            boolean fraction = false;
+            for(int i = start; i < text.length(); i++){
+                char c = text.charAt(i);
+                if(c == '.') fraction = true;
+                else{
+                    number = number * 10 + (c - '0');
+                    if(fraction) fractionDigits++;
+                }
+            }
+            valueType = ValueType.DOUBLE;
+            doubleValue = number / POWERS_OF_10[fractionDigits];
+            if(text.charAt(0) == '-') doubleValue = -doubleValue;
+        }
+        else{
+            valueType = ValueType.DOUBLE;
+            doubleValue = Double.parseDouble(text);
+        }
     }
 
     /**
@@ -40,7 +268,7 @@ public class DataPacket {
      * @return sourceObjectName
      */
     public String getSourceObjectName() {
-        return sourceObjectName;
+        return NameTable.nameOf(sourceHandle);
     }
 
     /**
@@ -48,17 +276,111 @@ public class DataPacket {
      * @return fieldName
      */
     public String getFieldName() {
-        return fieldName;
+        return NameTable.nameOf(fieldHandle);
     }
 
     /**
      * Getter
-     * @return value
+     * @return handle of the source object's name
+     */
+    public int getSourceHandle() {
+        return sourceHandle;
+    }
+
+    /**
+     * Getter
+     * @return handle of the field name
+     */
+    public int getFieldHandle() {
+        return fieldHandle;
+    }
+
+    /**
+     * Getter
+     * @return type of the value
+     */
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    /**
+     * Getter
+     * @return text of the value
      */
     public String getValue() {
+        if(value == null){
+            switch(valueType){
+                case DOUBLE: value = Double.toString(doubleValue); break;
+                case LONG: value = Long.toString(longValue); break;
+                case BOOLEAN: value = Boolean.toString(booleanValue); break;
+                default: break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Function to return the value as a log argument without creating its text: the text if it exists, or else the
+     * number or boolean, which the log writer appends as the same text getValue would return
+     * @return immutable value to log
+     */
+    Object getLogValue() {
+        if(value != null) return value;
+        switch(valueType){
+            case DOUBLE: return doubleValue;
+            case LONG: return longValue;
+            case BOOLEAN: return booleanValue;
+            default: return null;
+        }
+    }
+
+    /**
+     * Function to return the text of the value without creating it
+     * @return text of the value, or null if the packet was created from a primitive value whose text was never needed
+     */
+    String getText() {
         return value;
     }
 
+    /**
+     * Function to read the value as a decimal number
+     * @return value, 1 or 0 for a boolean, or NaN if the value is not a number
+     */
+    public double getDouble() {
+        switch(valueType){
+            case DOUBLE: return doubleValue;
+            case LONG: return longValue;
+            case BOOLEAN: return booleanValue ? 1 : 0;
+            default: return Double.NaN;
+        }
+    }
+
+    /**
+     * Function to read the value as an integer
+     * @return value, truncated if decimal, 1 or 0 for a boolean, or 0 if the value is not a number
+     */
+    public long getLong() {
+        switch(valueType){
+            case DOUBLE: return (long) doubleValue;
+            case LONG: return longValue;
+            case BOOLEAN: return booleanValue ? 1 : 0;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Function to read the value as a boolean
+     * @return value, true for a non-zero number, or false if the value is text
+     */
+    public boolean getBoolean() {
+        switch(valueType){
+            case DOUBLE: return doubleValue != 0;
+            case LONG: return longValue != 0;
+            case BOOLEAN: return booleanValue;
+            default: return false;
+        }
+    }
+
     /**
      * Getter
      * @return size
@@ -69,12 +391,39 @@ public class DataPacket {
 
     /**
      * Getter
-     * @return time_of_creation
+     * @return time_of_creation in nanoseconds of simulation time
      */
-    public String getTime_of_creation() {
+    public long getTime_of_creation() {
         return time_of_creation;
     }
 
+    /**
+     * Function to write the packet to a stream, e.g. a master node's spill file. See readFrom
+     * @param out Stream the packet is written to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(time_of_creation);
+        out.writeUTF(getSourceObjectName());
+        out.writeUTF(getFieldName());
+        out.writeUTF(getValue());
+        out.writeInt(size);
+    }
+
+    /**
+     * Function to read a packet written by writeTo. The packet is not pooled
+     * @param in Stream the packet is read from
+     * @return packet read
+     * @throws IOException if the stream cannot be read
+     */
+    public static DataPacket readFrom(DataInputStream in) throws IOException {
+        long time = in.readLong();
+        String sourceObjectName = in.readUTF();
+        String fieldName = in.readUTF();
+        String value = in.readUTF();
+        return new DataPacket(sourceObjectName, fieldName, value, in.readInt(), time);
+    }
+
     /**
      * Function to generate a header for a CSV file to store DataPacket objects.
      * This header represents the member variables of the DataPacket class
@@ -91,10 +440,19 @@ public class DataPacket {
      */
     @Override
     public String toString() {
-        return String.format("%s,%s,%s,%s,%d",
-        time_of_creation, sourceObjectName, fieldName, value, size);
-    }
-    
+        // The creation time is only formatted here, at the output edge
+        StringBuilder builder = new StringBuilder(64);
+        TimeFormat.appendSeconds(builder, time_of_creation);
+        builder.append(',').append(getSourceObjectName())
+            .append(',').append(getFieldName())
+            .append(',');
+
+        // Packets created from a primitive value write it without creating its text
+        if(value != null || valueType == ValueType.STRING) builder.append(value);
+        else if(valueType == ValueType.DOUBLE) builder.append(doubleValue);
+        else if(valueType == ValueType.LONG) builder.append(longValue);
+        else builder.append(booleanValue);
 
-    
+        return builder.append(',').append(size).toString();
+    }
 }
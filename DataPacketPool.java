@@ -0,0 +1,100 @@
+
+/**
+ * This class recycles the DataPackets created by one device, so that the GET/publish cycle of the nodes does not
+ * allocate a new packet (and ExecutionResult) on every read. Ownership of a pooled packet follows these rules:
+ * - A packet returned by a device command is owned by the caller, e.g. the uController loop that called getField
+ * - Publishing the packet (uController.publishPacket, MasterNode.update) hands it to the master node's buffer
+ *   once the master node has read it. Adding it to the buffer is the master node's last use of the packet
+ * - Taking the buffered packets (MasterNode.takeBufferedDataPackets) hands them to the taker, e.g. a BulkDataPacket
+ * - Reading the buffered packets without taking them (MasterNode.getBufferedDataPackets) returns copies that are not
+ *   pooled (DataPacket.copy), which belong to the caller. The buffered packets themselves are never handed out
+ * - A full buffer that drops a packet, or writes it to its spill file, releases it (see PacketBuffer)
+ * - The last owner calls release() once it no longer uses the packet, e.g. the master zone after storing it in the
+ *   database. The packet must not be used afterwards. A packet that is never released is simply garbage collected
+ * - Releasing a packet twice is ignored only while it is still free in its pool (inPool). Once it is acquired again,
+ *   a late release by its former owner gives the new owner's packet back to the pool, and the next acquire reuses
+ *   it under the new owner: the pool cannot tell the two apart, so a released packet must not be kept anywhere
+ * Packets may be released by another thread than the one that acquired them
+ */
+public class DataPacketPool {
+
+    // Number of free packets kept by default
+    private static final int DEFAULT_CAPACITY = 256;
+
+    // Free packets. Guarded by this
+    private final DataPacket[] free;
+    private int freeCount;
+
+    // Statistics: packets created because the pool was empty, and packets reused
+    private long created;
+    private long reused;
+
+    /**
+     * Constructor
+     */
+    public DataPacketPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param capacity Largest number of free packets kept. Packets released beyond it are garbage collected
+     */
+    public DataPacketPool(int capacity) {
+        this.free = new DataPacket[capacity];
+        this.freeCount = 0;
+    }
+
+    /**
+     * Function to take a free packet, or create one if there is none, and fill it in. The type of the value is
+     * found from its text
+     * @param sourceHandle Handle of the source object's name
+     * @param fieldHandle Handle of the field name
+     * @param value Text of the value
+     * @param size Size in bytes of the value
+     * @param time_of_creation simulation time in nanoseconds
+     * @return packet owned by the caller
+     */
+    public DataPacket acquire(int sourceHandle, int fieldHandle, String value, int size, long time_of_creation) {
+        DataPacket packet = null;
+        synchronized(this){
+            if(freeCount > 0){
+                packet = free[--freeCount];
+                free[freeCount] = null;
+                packet.inPool = false;
+                reused++;
+            }
+            else created++;
+        }
+
+        if(packet == null) packet = new DataPacket(this);
+        return packet.reset(sourceHandle, fieldHandle, value, size, time_of_creation);
+    }
+
+    /**
+     * Function to give a packet back. Called by DataPacket.release
+     * @param packet Packet created by this pool
+     */
+    synchronized void release(DataPacket packet) {
+        // Ignore packets released twice, and packets beyond the capacity
+        if(packet.inPool || freeCount == free.length) return;
+        packet.inPool = true;
+        free[freeCount++] = packet;
+    }
+
+    /**
+     * Getter
+     * @return number of packets created because the pool was empty
+     */
+    public synchronized long getCreatedCount() {
+        return created;
+    }
+
+    /**
+     * Getter
+     * @return number of packets reused
+     */
+    public synchronized long getReusedCount() {
+        return reused;
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * This class reconstructs the full rows of a MasterNode log written with delta rows. Such a log has the columns
+ * "Timestamp,Object Name,Event,Frame,Frame Type" followed by the names of the fields. Keyframe rows ("K") hold
+ * every field; delta rows ("D") only hold the fields changed since the previous frame, as "column:value".
+ * Rows logged at the same time by different threads may be written out of frame order, so the rows are applied
+ * in frame order. The output has the layout of a log written without delta rows:
+ * "Timestamp,Object Name,Event" followed by every field. Logs without delta rows are copied unchanged
+ *
+ * Usage: java DeltaLogReader [file or directory ...]   (default: logs/)
+ * Every "name_output.csv" file with delta rows is reconstructed to "name_output_full.csv"
+ */
+public class DeltaLogReader {
+
+    // Number of columns before the fields in a delta-encoded log
+    private static final int FIELD_COLUMN = 5;
+
+    public static void main(String[] args) {
+        if(args.length == 0) args = new String[]{"logs/"};
+
+        int reconstructed = 0;
+        for(String arg : args){
+            File file = new File(arg);
+            File[] files = file.isDirectory() ? file.listFiles((dir, name) -> name.endsWith("_output.csv")) : new File[]{file};
+            if(files == null) continue;
+
+            Arrays.sort(files);
+            for(File logFile : files){
+                try {
+                    if(!hasDeltaRows(logFile.getPath())) continue;
+                    reconstruct(logFile.getPath(), logFile.getPath().replaceFirst("\\.csv$", "") + "_full.csv");
+                    reconstructed++;
+                } catch (IOException e) {
+                    System.out.println("An error occurred while reading " + logFile.getPath());
+                    e.printStackTrace();
+                }
+            }
+        }
+        System.out.println(String.format("[Reconstructed] %d delta-encoded log files", reconstructed));
+    }
+
+    /**
+     * Function to check whether a log file was written with delta rows
+     * @param fileName Name of the log file
+     * @return true if the header has the Frame and Frame Type columns
+     */
+    public static boolean hasDeltaRows(String fileName) throws IOException {
+        try(BufferedReader reader = new BufferedReader(new FileReader(fileName))){
+            String header = reader.readLine();
+            return header != null && header.startsWith("Timestamp,Object Name,Event,Frame,Frame Type");
+        }
+    }
+
+    /**
+     * Function to reconstruct the full rows of a delta-encoded log
+     * @param inputFileName Name of the delta-encoded log
+     * @param outputFileName Name of the file to write the full rows to. Replaced if it already exists
+     */
+    public static void reconstruct(String inputFileName, String outputFileName) throws IOException {
+        try(BufferedReader reader = new BufferedReader(new FileReader(inputFileName));
+            BufferedWriter writer = new BufferedWriter(new FileWriter(outputFileName), 64 * 1024)){
+
+            String header = reader.readLine();
+            if(header == null) return;
+
+            String[] columns = header.split(",", -1);
+            if(!header.startsWith("Timestamp,Object Name,Event,Frame,Frame Type")){
+                // Not delta-encoded. Copy the log as is
+                writer.write(header);
+                writer.newLine();
+                for(String line = reader.readLine(); line != null; line = reader.readLine()){
+                    writer.write(line);
+                    writer.newLine();
+                }
+                return;
+            }
+
+            // Header without the Frame and Frame Type columns
+            writer.write(String.join(",", columns[0], columns[1], columns[2]));
+            for(int i = FIELD_COLUMN; i < columns.length; i++) writer.write("," + columns[i]);
+            writer.newLine();
+
+            // Read all rows and put them in frame order
+            ArrayList<String[]> rows = new ArrayList<>();
+            for(String line = reader.readLine(); line != null; line = reader.readLine()) rows.add(line.split(",", -1));
+            rows.sort(Comparator.comparingLong(row -> Long.parseLong(row[3])));
+
+            // Apply every row to the current field values and write the result
+            String[] fields = new String[columns.length - FIELD_COLUMN];
+            StringBuilder record = new StringBuilder(512);
+            for(String[] row : rows){
+                if(row[4].equals("K")){
+                    fields = Arrays.copyOfRange(row, FIELD_COLUMN, row.length);
+                }
+                else{
+                    for(int i = FIELD_COLUMN; i < row.length; i++){
+                        int separator = row[i].indexOf(':');
+                        int column = Integer.parseInt(row[i].substring(0, separator));
+                        if(column >= fields.length) fields = Arrays.copyOf(fields, column + 1);
+                        fields[column] = row[i].substring(separator + 1);
+                    }
+                }
+
+                record.setLength(0);
+                record.append(row[0]).append(',').append(row[1]).append(',').append(row[2]);
+                for(String field : fields) record.append(',').append(field);
+                writer.append(record);
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -4,6 +4,12 @@ import java.util.ArrayList;
  * Abstract Base class for Devices
  */
 public abstract class Device extends SimulationObject{
+
+    // Handle of the device's name, stored in the packets it creates
+    protected final int objectHandle;
+
+    // Pool recycling the packets created by the device
+    protected final DataPacketPool packetPool;
     
     /**
      * Constructor
@@ -11,6 +17,8 @@ public abstract class Device extends SimulationObject{
      */
     public Device(String name){
         super(name);
+        this.objectHandle = NameTable.handleOf(name);
+        this.packetPool = new DataPacketPool();
     }
 
     /**
@@ -42,6 +50,16 @@ public abstract class Device extends SimulationObject{
      */
     public abstract ExecutionResult execute(String command, String... arguments);
 
+    /**
+     * Function to read a field of the device. Same as execute("GET", field). Devices on the telemetry path override it
+     * to read without building the command's arguments
+     * @param field Name of the field
+     * @return result holding a packet owned by the caller (see DataPacketPool)
+     */
+    public ExecutionResult get(String field){
+        return execute("GET", field);
+    }
+
     /**
      * Function to return the field names in the device. These fields can represent
      * named registers in the device. For example, an IMU may have a separate register
@@ -4,6 +4,9 @@
  */
 public class ExecutionResult {
 
+    // Result of every failed command that returns no packet. Shared, since it holds nothing
+    public static final ExecutionResult FAILED = new ExecutionResult(false, null);
+
     // Success status of the executed command
     private boolean success;
 
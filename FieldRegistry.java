@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class holds the current value of every field known to a master node, e.g. the distance measured by each
+ * ultrasonic sensor of the zone. Every field gets an int handle, its index in a flat array of values, the first time
+ * it is registered or looked up. Fields are named [object name]_[field name], as in the master node's log columns,
+ * and can also be looked up by the NameTable handles of the object and field names, so that data packets and loop
+ * algorithms find their field without building its name. Values received in data packets are also kept as numbers,
+ * taken from the packet's typed value once when it arrives, so loop algorithms read numbers and booleans without
+ * parsing text. Reading a value takes no lock. Writes and registrations are synchronized on the registry
+ */
+public class FieldRegistry {
+
+    // Handle of every registered field, by name. Guarded by this
+    private final HashMap<String, Integer> handles;
+
+    // Name of every registered field, indexed by handle. Guarded by this
+    private final ArrayList<String> names;
+
+    // Bits of a number slot holding no number. A NaN whose bits no stored value has
+    private static final long NO_NUMBER = 0x7ff8deaddeaddeadL;
+
+    // Current value of every field, indexed by handle. Replaced by a larger copy when full
+    private volatile AtomicReferenceArray<String> values;
+
+    // Bits of the current value of every field as a double (1 or 0 for booleans), or NO_NUMBER if the field holds
+    // text or has not received a value yet. Indexed by handle. Replaced by a larger copy together with values
+    private volatile AtomicLongArray numbers;
+
+    // Handle + 1 of every field looked up by NameTable handles, indexed by object handle then field handle. 0 if
+    // the pair has not been looked up yet. Replaced by an updated copy on every change, so it is read without a lock
+    private volatile int[][] handlesByNameHandles;
+
+    // Number of registered fields
+    private volatile int count;
+
+    /**
+     * Constructor
+     */
+    public FieldRegistry() {
+        this.handles = new HashMap<>();
+        this.names = new ArrayList<>();
+        this.values = new AtomicReferenceArray<>(64);
+        this.numbers = newNumbers(64);
+        this.handlesByNameHandles = new int[0][];
+        this.count = 0;
+    }
+
+    /**
+     * Function to return the handle of a field, registering the field if it is not registered yet
+     * @param name Field name in the form [object name]_[field name]
+     * @return handle of the field
+     */
+    public synchronized int register(String name) {
+        Integer handle = handles.get(name);
+        if(handle != null) return handle;
+
+        // Make room for the value before publishing the new count
+        if(count == values.length()){
+            AtomicReferenceArray<String> larger = new AtomicReferenceArray<>(values.length() * 2);
+            AtomicLongArray largerNumbers = newNumbers(values.length() * 2);
+            for(int i = 0; i < count; i++){
+                larger.set(i, values.get(i));
+                largerNumbers.set(i, numbers.get(i));
+            }
+            numbers = largerNumbers;
+            values = larger;
+        }
+
+        handles.put(name, count);
+        names.add(name);
+        return count++;
+    }
+
+    /**
+     * Function to register a field, if needed, and set its value. The value is kept as text only, e.g. an ID or
+     * "Uninitialized", so the field has no number afterwards
+     * @param name Field name in the form [object name]_[field name]
+     * @param value New value of the field
+     * @return handle of the field
+     */
+    public synchronized int put(String name, String value) {
+        int handle = register(name);
+        values.set(handle, value);
+        numbers.set(handle, NO_NUMBER);
+        return handle;
+    }
+
+    /**
+     * Function to return the handle of a field from the NameTable handles of its object and field names,
+     * registering the field if it is not registered yet. The field name is only built the first time
+     * @param objectHandle NameTable handle of the object name
+     * @param fieldHandle NameTable handle of the field name
+     * @return handle of the field
+     */
+    public int handleOf(int objectHandle, int fieldHandle) {
+        int[][] table = handlesByNameHandles;
+        if(objectHandle < table.length){
+            int[] row = table[objectHandle];
+            if(row != null && fieldHandle < row.length && row[fieldHandle] != 0) return row[fieldHandle] - 1;
+        }
+        return resolve(objectHandle, fieldHandle);
+    }
+
+    /**
+     * Function to return the handle of a field from its object and field names, registering the field if it is not
+     * registered yet. Takes no lock once the field has been looked up before
+     * @param objectName Name of the object holding the field
+     * @param fieldName Name of the field in the object
+     * @return handle of the field
+     */
+    public int handleOf(String objectName, String fieldName) {
+        return handleOf(NameTable.handleOf(objectName), NameTable.handleOf(fieldName));
+    }
+
+    /**
+     * Function to find the handle of a field looked up by NameTable handles for the first time, and remember it
+     * @param objectHandle NameTable handle of the object name
+     * @param fieldHandle NameTable handle of the field name
+     * @return handle of the field
+     */
+    private synchronized int resolve(int objectHandle, int fieldHandle) {
+        int handle = register(NameTable.nameOf(objectHandle) + "_" + NameTable.nameOf(fieldHandle));
+
+        // Publish an updated copy of the table, so that readers never see a table being changed
+        int[][] table = handlesByNameHandles;
+        int[][] updated = Arrays.copyOf(table, Math.max(table.length, objectHandle + 1));
+        int[] row = updated[objectHandle];
+        int[] updatedRow = row == null ? new int[fieldHandle + 1] : Arrays.copyOf(row, Math.max(row.length, fieldHandle + 1));
+        updatedRow[fieldHandle] = handle + 1;
+        updated[objectHandle] = updatedRow;
+        handlesByNameHandles = updated;
+
+        return handle;
+    }
+
+    /**
+     * Function to return the current value of a field. Takes no lock
+     * @param handle Handle of the field
+     * @return current value of the field, or null if it has none or the handle is not a registered field
+     */
+    public String get(int handle) {
+        if(handle < 0 || handle >= count) return null;
+        return values.get(handle);
+    }
+
+    /**
+     * Function to set the current value of a field to the value of a data packet. The packet's typed value is kept
+     * as a number, unless it is text
+     * @param handle Handle of the field
+     * @param packet Packet holding the new value of the field
+     */
+    public synchronized void set(int handle, DataPacket packet) {
+        values.set(handle, packet.getValue());
+        numbers.set(handle, packet.getValueType() == DataPacket.ValueType.STRING ? NO_NUMBER : Double.doubleToRawLongBits(packet.getDouble()));
+    }
+
+    /**
+     * Function to check whether a field holds a number or boolean. Takes no lock
+     * @param handle Handle of the field
+     * @return true if the last value received for the field is a number or a boolean, false if it is text
+     * (e.g. "Uninitialized") or the field has no value yet
+     */
+    public boolean hasNumber(int handle) {
+        if(handle < 0 || handle >= count) return false;
+        return numbers.get(handle) != NO_NUMBER;
+    }
+
+    /**
+     * Function to return the current value of a field as a number. Takes no lock
+     * @param handle Handle of the field
+     * @return current value of the field, 1 or 0 for a boolean, or NaN if the field holds no number
+     */
+    public double getDouble(int handle) {
+        if(handle < 0 || handle >= count) return Double.NaN;
+        long bits = numbers.get(handle);
+        return bits == NO_NUMBER ? Double.NaN : Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Function to return the current value of a field as a boolean. Takes no lock
+     * @param handle Handle of the field
+     * @return true if the field holds true or a non-zero number, false otherwise
+     */
+    public boolean getBoolean(int handle) {
+        if(handle < 0 || handle >= count) return false;
+        long bits = numbers.get(handle);
+        return bits != NO_NUMBER && Double.longBitsToDouble(bits) != 0;
+    }
+
+    /**
+     * Function to create an array of number slots holding no number
+     * @param length Number of slots
+     * @return new array
+     */
+    private static AtomicLongArray newNumbers(int length) {
+        AtomicLongArray array = new AtomicLongArray(length);
+        for(int i = 0; i < length; i++) array.set(i, NO_NUMBER);
+        return array;
+    }
+
+    /**
+     * Getter
+     * @param handle Handle of the field
+     * @return name of the field in the form [object name]_[field name]
+     */
+    public synchronized String getName(int handle) {
+        return names.get(handle);
+    }
+
+    /**
+     * Getter
+     * @return names of all registered fields, in the order of their handles
+     */
+    public synchronized ArrayList<String> getNames() {
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Getter
+     * @return number of registered fields
+     */
+    public int size() {
+        return count;
+    }
+}
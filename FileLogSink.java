@@ -0,0 +1,117 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * This class is a LogSink writing CSV records to a file. The timestamp of every record is formatted
+ * here, on the writer thread, rather than by the simulation thread that logged it
+ */
+public class FileLogSink implements LogSink {
+
+    // Size in characters of the output buffer
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Name of the output file
+    private String fileName;
+
+    // Writer to the output file. null if the file could not be opened or the sink is closed
+    private BufferedWriter writer;
+
+    // Header written before the first record. Set by the logging object, read by the writer thread
+    private volatile String header;
+
+    // Flag indicating whether the header has been written or not
+    private boolean hasWrittenHeader;
+
+    // Builder reused to assemble every record, and characters the record is copied to for the writer, since
+    // appending a StringBuilder to a Writer creates a String
+    private StringBuilder record;
+    private char[] chars;
+
+    /**
+     * Constructor. Replaces the file if it already exists
+     * @param fileName Name of the output file
+     */
+    public FileLogSink(String fileName) {
+        this.fileName = fileName;
+        this.hasWrittenHeader = false;
+        this.record = new StringBuilder(256);
+        this.chars = new char[256];
+
+        try {
+            File file = new File(fileName);
+
+            // Delete the file if it already exists
+            if (file.exists()) file.delete();
+
+            writer = new BufferedWriter(new FileWriter(fileName, true), BUFFER_SIZE);
+        } catch (IOException e) {
+            System.out.println("An error occurred while opening " + fileName);
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void setHeader(String header) {
+        if(this.header == null) this.header = header;
+    }
+
+    @Override
+    public void write(long time, CharSequence row) {
+        if(writer == null) return;
+
+        try {
+            // Write the header before the first record
+            if(!hasWrittenHeader && header != null){
+                writer.write(header);
+                writer.newLine();
+                hasWrittenHeader = true;
+            }
+
+            record.setLength(0);
+            TimeFormat.appendSeconds(record, time).append(',');
+
+            // Events are formatted here, straight into the record buffer
+            if(row instanceof LogEvent) ((LogEvent) row).appendTo(record);
+            else record.append(row);
+            int length = record.length();
+            if(length > chars.length) chars = new char[Math.max(length, chars.length * 2)];
+            record.getChars(0, length, chars, 0);
+            writer.write(chars, 0, length);
+            writer.newLine();
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing to " + fileName);
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if(writer == null) return;
+
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        if(writer == null) return;
+
+        try {
+            // Write the header even if no record was logged
+            if(!hasWrittenHeader && header != null){
+                writer.write(header);
+                writer.newLine();
+                hasWrittenHeader = true;
+            }
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+    }
+}
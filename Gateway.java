@@ -1,3 +1,4 @@
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map.Entry;
 
@@ -21,6 +22,9 @@ public class Gateway extends SimulationObject{
     // the connected gateway 
     HashMap<Gateway,Integer> connectedGateways;
 
+    // Clock of the gateway's zone when zones run as separate logical processes. null if the shared clock is used
+    private SimulationClock clock;
+
     /**
      * Constructor
      * @param object_name Name of the gateway object
@@ -61,16 +65,48 @@ public class Gateway extends SimulationObject{
     }
     
     /**
-     * Function to forward a BulkDataPacket to the next gateway along a predefined route
+     * Function to set the clock of the gateway's zone when zones run as separate logical processes
+     * @param clock Clock of the zone
+     */
+    public void setClock(SimulationClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Function to forward an encoded BulkDataPacket to the next gateway along a predefined route. Every gateway passes
+     * the same buffer on without copying it, and the transmission delay of every hop is computed from its length.
+     * When zones run as separate logical processes, the packet is handed to the next gateway as a message
+     * arriving in the next zone after the hop delay, and this function returns once the whole route would have been
+     * travelled, with its outcome. Both are known in advance from the RTTs of the links along the route
      * @param source first gateway in the route
      * @param previous previous gateway in the route that forwarded the packet to the current gateway
-     * @param packet BulkDataPacket being forwarded
+     * @param packet Encoded BulkDataPacket being forwarded (see BulkDataPacket.encode). Its position is not changed
      * @param route Route along which the packet is forwaded. Must be a comma separated list of gateway names
      * @param position Current position of the packet along the route. Initially 0, incremented each time packet is forwarded along route
      * @return true if the packet has arrived at its last desination, false otherwise
      * 
      */
-    public boolean forward(Gateway source, Gateway previous, BulkDataPacket packet, String route, int position){
+    public boolean forward(Gateway source, Gateway previous, ByteBuffer packet, String route, int position){
+        if(clock != null){
+            // Send the packet on its way, then wait for the time it takes to travel the rest of the route
+            hop(source, previous, packet, route, position);
+            SimulationClock.getInstance().waitFor(getRouteDelay(packet, route, position));
+            return reachesEndOfRoute(route, position);
+        }
+        return hop(source, previous, packet, route, position);
+    }
+
+    /**
+     * Function to process a BulkDataPacket arriving at this gateway: deliver it if this gateway is the last in the route,
+     * or pass it on to the next gateway otherwise
+     * @param source first gateway in the route
+     * @param previous previous gateway in the route that forwarded the packet to the current gateway
+     * @param packet Encoded BulkDataPacket being forwarded
+     * @param route Route along which the packet is forwaded. Must be a comma separated list of gateway names
+     * @param position Current position of the packet along the route
+     * @return true if the packet has arrived at its last desination (or has been handed to the next zone), false otherwise
+     */
+    private boolean hop(Gateway source, Gateway previous, ByteBuffer packet, String route, int position){
         String[] routeComponents = route.split(",");
         
         // If current position is the last in the route 
@@ -103,11 +139,20 @@ public class Gateway extends SimulationObject{
                 
                 // Wait for a delay simulating the transmission of the packet.
                 // Delay = RTT/2 + packet size/transmission rate
-                int time_delay= nextGateway.getValue()/2 + packet.getSize() / (WIFI_Transmission_Rate);
+                int time_delay= nextGateway.getValue()/2 + getTransmissionDelay(packet);
+
+                // When zones run as separate logical processes, the packet arrives in the next zone as a message
+                Gateway next = nextGateway.getKey();
+                if(clock != null){
+                    clock.getCoordinator().send(next.clock, clock.getCurrentTimeNanos() + time_delay * 1_000_000L,
+                        () -> next.hop(source, this, packet, route, position+1));
+                    return true;
+                }
+
                 SimulationClock.getInstance().waitFor(time_delay);
                 
                 // Forward the packet to the next gateway
-                return nextGateway.getKey().forward(source, this, packet, route, position+1);
+                return next.forward(source, this, packet, route, position+1);
             }
         }
         // If the next gateway was not found in the current gateway's list of connected gateways, add a log message
@@ -115,6 +160,63 @@ public class Gateway extends SimulationObject{
         return false;
     }
 
+    /**
+     * Function to compute the time a packet takes to travel a route from this gateway. The walk stops
+     * where the route is broken
+     * @param packet Encoded BulkDataPacket being forwarded
+     * @param route Route along which the packet is forwaded. Must be a comma separated list of gateway names
+     * @param position Position of this gateway along the route
+     * @return total delay in ms of the hops along the route
+     */
+    private int getRouteDelay(ByteBuffer packet, String route, int position){
+        String[] routeComponents = route.split(",");
+        int delay = 0;
+
+        Gateway current = this;
+        for(int i = position; i < routeComponents.length-1 && current != null; i++){
+            Gateway next = current.getConnectedGateway(routeComponents[i+1]);
+            if(next != null) delay += current.connectedGateways.get(next)/2 + current.getTransmissionDelay(packet);
+            current = next;
+        }
+        return delay;
+    }
+
+    /**
+     * Function to compute the time this gateway takes to transmit a packet over WiFi
+     * @param packet Encoded BulkDataPacket
+     * @return transmission delay in ms: bytes sent * 8 / rate in kbps
+     */
+    private int getTransmissionDelay(ByteBuffer packet){
+        return packet.remaining() * 8 / WIFI_Transmission_Rate;
+    }
+
+    /**
+     * Function to check whether a packet forwarded from this gateway reaches the last gateway of a route
+     * @param route Route along which the packet is forwaded. Must be a comma separated list of gateway names
+     * @param position Position of this gateway along the route
+     * @return true if every hop of the route is a connected gateway, false otherwise
+     */
+    private boolean reachesEndOfRoute(String route, int position){
+        String[] routeComponents = route.split(",");
+
+        Gateway current = this;
+        for(int i = position; i < routeComponents.length-1 && current != null; i++)
+            current = current.getConnectedGateway(routeComponents[i+1]);
+
+        return current != null && routeComponents[routeComponents.length-1].equalsIgnoreCase(current.object_name);
+    }
+
+    /**
+     * Function to find a connected gateway by name
+     * @param name Name of the gateway
+     * @return connected gateway, or null if no connected gateway has this name
+     */
+    private Gateway getConnectedGateway(String name){
+        for(Gateway gateway : connectedGateways.keySet())
+            if(gateway.getObject_name().equalsIgnoreCase(name)) return gateway;
+        return null;
+    }
+
     /**
      * Get the node that contains this gateway
      * Most likely a master node in some zone
@@ -51,15 +51,11 @@ public class HighPowerDevice extends Device {
     @Override
     public void exportState(String... args) {
 
-        synchronized(writer){
-            // Add a header to the output CSV log file if it hasn't been added
-            if(!hasAddedHeader){
-                writer.println("Timestamp, Device Name, Is Powered");
-                hasAddedHeader = true;
-            }
-            // Add the current power status of the device to the log file
-            writer.println(getCurrentTimestamp()+"," + object_name + "," + isPowered());
-        }
+        // Add a header to the output CSV log file if it hasn't been added
+        if(!hasAddedHeader) setLogHeader("Timestamp, Device Name, Is Powered");
+
+        // Add the current power status of the device to the log file if the log policy lets it through
+        writeStateRecord(object_name + "," + isPowered());
     }
 
     /**
@@ -0,0 +1,148 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records latencies in a histogram with a fixed relative precision, in the manner of an HDR histogram.
+ * Values below 128 ns have their own bucket. Above that, every power of 2 is split into 128 buckets, so a recorded
+ * value is known to within 1/128 (< 1%) whatever its magnitude, from nanoseconds to hours, in a fixed array of counts.
+ * Recording takes no lock, so the threads of many nodes can record into the same histogram
+ */
+public class LatencyHistogram {
+
+    // Number of bits of a value kept exactly. Every power of 2 is split into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Number of buckets covering every non-negative long
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    // Name of the latency, e.g. "Sensor to master node"
+    private final String name;
+
+    // Number of values recorded in every bucket
+    private final AtomicLongArray counts;
+
+    // Statistics of all recorded values
+    private final AtomicLong count;
+    private final AtomicLong total;
+    private final AtomicLong max;
+
+    /**
+     * Constructor
+     * @param name Name of the latency, used in the report
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.total = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Function to record a latency
+     * @param nanos Latency in nanoseconds. Negative latencies are recorded as 0
+     */
+    public void record(long nanos) {
+        if(nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Function to add the values recorded by another histogram to this one
+     * @param other Histogram whose values are added
+     */
+    public void add(LatencyHistogram other) {
+        for(int bucket = 0; bucket < BUCKET_COUNT; bucket++){
+            long bucketCount = other.counts.get(bucket);
+            if(bucketCount != 0) counts.addAndGet(bucket, bucketCount);
+        }
+        count.addAndGet(other.count.get());
+        total.addAndGet(other.total.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * Getter
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Getter
+     * @return mean of the recorded values in nanoseconds, or 0 if there are none
+     */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * Getter
+     * @return largest recorded value in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Function to find the value below or at which a percentage of the recorded values lie
+     * @param percentile Percentage, e.g. 99.9
+     * @return highest value of the bucket holding the percentile, in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if(n == 0) return 0;
+
+        // Rank of the value at the percentile, counting from 1
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKET_COUNT; bucket++){
+            seen += counts.get(bucket);
+            if(seen >= rank) return Math.min(highestValueOf(bucket), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Function to print the number of values, mean, percentiles and maximum in ms
+     */
+    public void printReport() {
+        if(count.get() == 0) return;
+
+        System.out.println(String.format("[Latency] %s: %d samples, mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+            name, count.get(), getMean() / 1e6, getPercentile(50) / 1e6, getPercentile(90) / 1e6,
+            getPercentile(99) / 1e6, getPercentile(99.9) / 1e6, getMax() / 1e6));
+    }
+
+    /**
+     * Function to find the bucket of a value
+     * @param value Non-negative value
+     * @return index of the bucket
+     */
+    private static int bucketOf(long value) {
+        if(value < SUB_BUCKET_COUNT) return (int) value;
+
+        // Keep the SUB_BUCKET_BITS bits after the highest set bit
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * Function to find the highest value falling in a bucket
+     * @param bucket Index of the bucket
+     * @return highest value of the bucket
+     */
+    private static long highestValueOf(int bucket) {
+        if(bucket < SUB_BUCKET_COUNT) return bucket;
+
+        int shift = bucket / SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class compresses log files on a background thread. Sinks hand it chunks of a file's text as they fill
+ * them, and the compressor thread streams every chunk through the gzip stream of its file, so neither the
+ * simulation threads nor the AsyncLogWriter's writer thread spend time compressing. Chunks of the same file
+ * are compressed in the order they were submitted. If the compressor falls behind, submit blocks the writer
+ * thread until a chunk has been compressed, and the rings of the simulation threads absorb the delay
+ */
+public class LogCompressor {
+
+    // Singleton instance shared by all rotating sinks
+    private static final LogCompressor instance = new LogCompressor();
+
+    // Number of chunks that can wait to be compressed
+    private static final int QUEUE_CAPACITY = 64;
+
+    // Size in bytes of the buffer in front of every gzip stream
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Text of a compressed file to be appended to it
+     */
+    private static final class Chunk {
+        private final String fileName;
+        private final byte[] data;
+        private final boolean last;
+
+        private Chunk(String fileName, byte[] data, boolean last) {
+            this.fileName = fileName;
+            this.data = data;
+            this.last = last;
+        }
+    }
+
+    // Chunks waiting to be compressed
+    private final BlockingQueue<Chunk> chunks;
+
+    // Thread compressing the chunks. Started with the first chunk
+    private Thread compressorThread;
+
+    // Gzip streams of the files being written. Only used by the compressor thread
+    private final HashMap<String, OutputStream> openFiles;
+
+    // Number of chunks submitted and compressed. Guarded by this
+    private long submitted;
+    private long compressed;
+
+    // Statistics reported at the end of the simulation. Guarded by this
+    private long files;
+    private long bytesIn;
+    private long bytesOut;
+
+    /**
+     * Private constructor. Use getInstance()
+     */
+    private LogCompressor() {
+        this.chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.openFiles = new HashMap<>();
+    }
+
+    /**
+     * Getter
+     * @return the compressor shared by all rotating sinks
+     */
+    public static LogCompressor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Function to append a chunk of text to a compressed file. The file is created, replacing any existing file,
+     * with its first chunk
+     * @param fileName Name of the compressed file
+     * @param data Text of the chunk. Must not be modified afterwards
+     * @param last true if the chunk is the end of the file. The file is closed after it
+     */
+    public void submit(String fileName, byte[] data, boolean last) {
+        synchronized(this){
+            if(compressorThread == null){
+                compressorThread = new Thread(this::runCompressor, "LogCompressor");
+                compressorThread.setDaemon(true);
+                compressorThread.start();
+            }
+            submitted++;
+        }
+
+        // Wait for room in the queue if the compressor is behind
+        boolean queued = false;
+        while(!queued){
+            try {
+                chunks.put(new Chunk(fileName, data, last));
+                queued = true;
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Function to wait until every chunk submitted so far has been compressed and written
+     */
+    public synchronized void drain() {
+        long target = submitted;
+        while(compressed < target){
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Loop of the compressor thread
+     */
+    private void runCompressor() {
+        while(true){
+            Chunk chunk;
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                continue;
+            }
+
+            long size = compress(chunk);
+            synchronized(this){
+                bytesIn += chunk.data.length;
+                if(chunk.last){
+                    files++;
+                    bytesOut += size;
+                }
+                compressed++;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Function to append one chunk to its compressed file
+     * @param chunk Chunk to compress
+     * @return size in bytes of the compressed file if the chunk closed it, 0 otherwise
+     */
+    private long compress(Chunk chunk) {
+        try {
+            OutputStream out = openFiles.get(chunk.fileName);
+            if(out == null){
+                out = new GZIPOutputStream(new FileOutputStream(chunk.fileName), BUFFER_SIZE);
+                openFiles.put(chunk.fileName, out);
+            }
+            out.write(chunk.data);
+
+            if(!chunk.last) return 0;
+            openFiles.remove(chunk.fileName).close();
+            return new File(chunk.fileName).length();
+        } catch (IOException e) {
+            System.out.println("An error occurred while compressing " + chunk.fileName);
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Function to print the number of compressed files and the compression ratio
+     */
+    public void printReport() {
+        long fileCount, in, out;
+        synchronized(this){
+            fileCount = files;
+            in = bytesIn;
+            out = bytesOut;
+        }
+        if(fileCount == 0) return;
+
+        System.out.println(String.format("[Log Compressor] %d files, %.1f MB compressed to %.1f MB",
+            fileCount, in / 1e6, out / 1e6));
+    }
+}
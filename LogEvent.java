@@ -0,0 +1,170 @@
+
+/**
+ * This class is a log record holding an event as a template and its arguments instead of formatted text.
+ * It is created on the logging thread and only formatted when a sink writes it, on the AsyncLogWriter's
+ * writer thread. Sinks that know the class write it directly (FileLogSink formats it into its record
+ * buffer, BinaryLogSink writes the template and arguments as they are); to any other code it is the
+ * CharSequence "object name,event[,trailing columns]". Up to MAX_INLINE_ARGS arguments are held in fields, so that
+ * logging an event through the fixed-arity SimulationObject.exportEvent functions creates no argument array
+ */
+public final class LogEvent implements CharSequence {
+
+    // Name of the object that logged the event
+    private final String objectName;
+
+    // Template of the event message
+    private final LogTemplate template;
+
+    // Largest number of arguments held in fields
+    public static final int MAX_INLINE_ARGS = 5;
+
+    // Number of arguments of the template
+    private final int argCount;
+
+    // Arguments of the template, when there are at most MAX_INLINE_ARGS. Immutable values only (strings, numbers, booleans)
+    private final Object arg0, arg1, arg2, arg3, arg4;
+
+    // Arguments of the template, when the event was logged with an argument array. null otherwise
+    private final Object[] args;
+
+    // Columns after the event, e.g. the field values of a master node. null if there are none. Set before the
+    // event is logged
+    private String trailingColumns;
+
+    // Formatted record. Created on first use
+    private String text;
+
+    /**
+     * Constructor
+     * @param objectName Name of the object that logged the event
+     * @param template Template of the event message
+     * @param args Arguments of the template. Must not be modified afterwards
+     * @param trailingColumns Columns after the event, separated by commas. null if there are none
+     */
+    public LogEvent(String objectName, LogTemplate template, Object[] args, String trailingColumns) {
+        this(objectName, template, args.length, null, null, null, null, null, args, trailingColumns);
+    }
+
+    /**
+     * Constructor of an event with at most MAX_INLINE_ARGS arguments, held in fields
+     * @param objectName Name of the object that logged the event
+     * @param template Template of the event message
+     * @param argCount Number of arguments
+     * @param arg0 First argument, or null if there is none. The same for the other arguments
+     */
+    public LogEvent(String objectName, LogTemplate template, int argCount, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4) {
+        this(objectName, template, argCount, arg0, arg1, arg2, arg3, arg4, null, null);
+    }
+
+    private LogEvent(String objectName, LogTemplate template, int argCount, Object arg0, Object arg1, Object arg2, Object arg3,
+            Object arg4, Object[] args, String trailingColumns) {
+        this.objectName = objectName;
+        this.template = template;
+        this.argCount = argCount;
+        this.arg0 = arg0;
+        this.arg1 = arg1;
+        this.arg2 = arg2;
+        this.arg3 = arg3;
+        this.arg4 = arg4;
+        this.args = args;
+        this.trailingColumns = trailingColumns;
+    }
+
+    /**
+     * Getter
+     * @return name of the object that logged the event
+     */
+    public String getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Getter
+     * @return template of the event message
+     */
+    public LogTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Getter
+     * @return number of arguments of the template
+     */
+    public int getArgCount() {
+        return argCount;
+    }
+
+    /**
+     * Getter
+     * @param index Index of the argument, below getArgCount
+     * @return argument of the template
+     */
+    public Object getArg(int index) {
+        if(args != null) return args[index];
+        switch(index){
+            case 0: return arg0;
+            case 1: return arg1;
+            case 2: return arg2;
+            case 3: return arg3;
+            case 4: return arg4;
+            default: throw new IndexOutOfBoundsException("Argument " + index + " of " + argCount);
+        }
+    }
+
+    /**
+     * Getter
+     * @return columns after the event, or null if there are none
+     */
+    public String getTrailingColumns() {
+        return trailingColumns;
+    }
+
+    /**
+     * Function to set the columns after the event. Must be called before the event is logged
+     * @param trailingColumns Columns after the event, separated by commas. null if there are none
+     */
+    void setTrailingColumns(String trailingColumns) {
+        this.trailingColumns = trailingColumns;
+    }
+
+    /**
+     * Function to return the same event without the columns after it
+     * @return event with the object name and event columns only
+     */
+    public LogEvent withoutTrailingColumns() {
+        return trailingColumns == null ? this : new LogEvent(objectName, template, argCount, arg0, arg1, arg2, arg3, arg4, args, null);
+    }
+
+    /**
+     * Function to append the formatted record to a StringBuilder
+     * @param builder StringBuilder to append to
+     * @return the same StringBuilder
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        builder.append(objectName).append(',');
+        template.appendTo(builder, this);
+        if(trailingColumns != null) builder.append(',').append(trailingColumns);
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        if(text == null) text = appendTo(new StringBuilder(128)).toString();
+        return text;
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+}
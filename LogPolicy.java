@@ -0,0 +1,215 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class decides which log records of the simulation objects are written. Every record has a category
+ * (what it is about) and a level (how important it is), and is written only if its level is enabled by the
+ * threshold that applies to it: the threshold set for the class of the object logging it (or its closest
+ * superclass) if any, otherwise the threshold set for its category if any, otherwise the default level. A class or
+ * category threshold replaces the default, so it can make one class or category louder or quieter than the rest.
+ * When both are set, the class threshold wins, being the more specific of the two. On top of that, device state rows can be written
+ * only when they change, and the records of high-rate categories can be sampled, keeping 1 in N records of
+ * every object. The policy is consulted before a record is created, so suppressed records cost almost nothing.
+ * The default policy writes every record
+ */
+public class LogPolicy {
+
+    // Importance of a record, from most to least important. A threshold of OFF suppresses all records
+    public enum Level {
+        OFF,
+        // Failed operations
+        ERROR,
+        // Results of operations and state rows
+        INFO,
+        // Steps of operations and high-rate events
+        DEBUG
+    }
+
+    // What a record is about
+    public enum Category {
+        // Periodic state rows of devices and relays
+        STATE,
+        // Publishing, aggregating and forwarding of data packets
+        PACKET,
+        // Field and switch requests
+        COMMAND,
+        // Permission queries of gates
+        ACCESS,
+        // Any other message, e.g. "Started"
+        GENERAL
+    }
+
+    // Singleton instance shared by all simulation objects
+    private static final LogPolicy instance = new LogPolicy();
+
+    // Threshold of classes and categories without their own
+    private volatile Level defaultLevel;
+
+    // Thresholds set for classes. Also apply to their subclasses
+    private final Map<Class<?>, Level> classLevels;
+
+    // Threshold of every class that logged a record, looked up from classLevels. Empty if neither the class nor a
+    // superclass has one. Cleared when classLevels changes
+    private final Map<Class<?>, Optional<Level>> resolvedClassLevels;
+
+    // Thresholds of the categories, indexed by ordinal. null if the category uses the default level
+    private final Level[] categoryLevels;
+
+    // Sampling rates of the categories, indexed by ordinal. 1 keeps every record
+    private final int[] samplingRates;
+
+    // Flag indicating whether state rows equal to the previous row of the same object are suppressed
+    private volatile boolean changeOnlyState;
+
+    // Statistics reported at the end of the simulation
+    private final LongAdder suppressedByLevel;
+    private final LongAdder suppressedUnchanged;
+    private final LongAdder suppressedBySampling;
+
+    /**
+     * Private constructor. Use getInstance()
+     */
+    private LogPolicy() {
+        this.defaultLevel = Level.DEBUG;
+        this.classLevels = new ConcurrentHashMap<>();
+        this.resolvedClassLevels = new ConcurrentHashMap<>();
+        this.categoryLevels = new Level[Category.values().length];
+        this.samplingRates = new int[Category.values().length];
+        Arrays.fill(samplingRates, 1);
+        this.changeOnlyState = false;
+        this.suppressedByLevel = new LongAdder();
+        this.suppressedUnchanged = new LongAdder();
+        this.suppressedBySampling = new LongAdder();
+    }
+
+    /**
+     * Getter
+     * @return the log policy shared by all simulation objects
+     */
+    public static LogPolicy getInstance() {
+        return instance;
+    }
+
+    /**
+     * Function to set the threshold of the classes and categories without their own
+     * @param level Least important level written
+     */
+    public void setDefaultLevel(Level level) {
+        this.defaultLevel = level;
+    }
+
+    /**
+     * Function to set the threshold of a class of simulation objects and its subclasses, e.g. Relay.class. It replaces
+     * the category and default thresholds for the records of these objects
+     * @param objectClass Class of the objects
+     * @param level Least important level written. null to use the default level again
+     */
+    public void setLevel(Class<? extends SimulationObject> objectClass, Level level) {
+        if(level == null) classLevels.remove(objectClass);
+        else classLevels.put(objectClass, level);
+        resolvedClassLevels.clear();
+    }
+
+    /**
+     * Function to set the threshold of a category. It replaces the default threshold for the records of this
+     * category, except for objects whose class has its own threshold
+     * @param category Category of the records
+     * @param level Least important level written. null to use the default level again
+     */
+    public void setLevel(Category category, Level level) {
+        categoryLevels[category.ordinal()] = level;
+    }
+
+    /**
+     * Function to keep only 1 in N records of a category, counted per object. The first record of every object is kept
+     * @param category Category of the records
+     * @param oneIn N. 1 to keep every record
+     */
+    public void setSampling(Category category, int oneIn) {
+        samplingRates[category.ordinal()] = Math.max(1, oneIn);
+    }
+
+    /**
+     * Function to set whether device state rows are only written when they differ from the previous row of the same device
+     * @param enabled true to suppress unchanged state rows
+     */
+    public void setChangeOnlyState(boolean enabled) {
+        this.changeOnlyState = enabled;
+    }
+
+    /**
+     * Function to check whether an object writes a record. Counts the record if it is suppressed
+     * @param object Object logging the record
+     * @param category Category of the record
+     * @param level Level of the record
+     * @return true if the record is to be written
+     */
+    public boolean accepts(SimulationObject object, Category category, Level level) {
+        // Check the level against the threshold of the object's class, or else of the category, or else the default
+        Level threshold = getClassLevel(object.getClass());
+        if(threshold == null) threshold = categoryLevels[category.ordinal()];
+        if(threshold == null) threshold = defaultLevel;
+        if(level.compareTo(threshold) > 0){
+            suppressedByLevel.increment();
+            return false;
+        }
+
+        // Keep 1 in N records of the object in this category
+        int rate = samplingRates[category.ordinal()];
+        if(rate > 1 && object.nextRecordIndex(category) % rate != 0){
+            suppressedBySampling.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Function to check whether an object writes a state row
+     * @param object Object logging the row
+     * @param row State row, without the timestamp
+     * @return true if the row is to be written
+     */
+    public boolean acceptsState(SimulationObject object, String row) {
+        if(!accepts(object, Category.STATE, Level.INFO)) return false;
+
+        // Suppress the row if the object's state has not changed since its last written row
+        if(changeOnlyState && row.equals(object.replaceLastStateRow(row))){
+            suppressedUnchanged.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Function to find the threshold of a class: the one set for the class or its closest superclass
+     * @param objectClass Class of the object
+     * @return least important level written by objects of the class, or null if no threshold applies to the class
+     */
+    private Level getClassLevel(Class<?> objectClass) {
+        if(classLevels.isEmpty()) return null;
+
+        Optional<Level> resolved = resolvedClassLevels.get(objectClass);
+        if(resolved != null) return resolved.orElse(null);
+
+        Level level = null;
+        for(Class<?> c = objectClass; c != null && level == null; c = c.getSuperclass()) level = classLevels.get(c);
+        resolvedClassLevels.put(objectClass, Optional.ofNullable(level));
+        return level;
+    }
+
+    /**
+     * Function to print the number of records suppressed by the policy
+     */
+    public void printReport() {
+        long byLevel = suppressedByLevel.sum();
+        long unchanged = suppressedUnchanged.sum();
+        long bySampling = suppressedBySampling.sum();
+        if(byLevel + unchanged + bySampling == 0) return;
+
+        System.out.println(String.format("[Log Policy] Suppressed %d records by level, %d unchanged state rows, %d by sampling",
+            byLevel, unchanged, bySampling));
+    }
+}
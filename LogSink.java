@@ -0,0 +1,32 @@
+
+/**
+ * This interface represents the destination of the log records of a SimulationObject. Records are
+ * handed to the sink by the AsyncLogWriter's writer thread, so implementations are only ever called
+ * from one thread at a time, except for setHeader which is called by the object itself
+ */
+public interface LogSink {
+
+    /**
+     * Function to set the header written once before the first record. Ignored if a header has already been set
+     * @param header Header line, e.g. the CSV column names
+     */
+    void setHeader(String header);
+
+    /**
+     * Function to write one record
+     * @param time Simulation time in nanoseconds of the record. Written as seconds with 3 decimal places
+     * @param row Rest of the record after the timestamp, e.g. "object name,event". May be a LogEvent, which is
+     *            only formatted when its text is needed
+     */
+    void write(long time, CharSequence row);
+
+    /**
+     * Function to push any buffered records to the underlying output
+     */
+    void flush();
+
+    /**
+     * Function to flush and close the sink. Records written afterwards are ignored
+     */
+    void close();
+}
@@ -0,0 +1,156 @@
+
+/**
+ * This enum lists the event messages logged by the nodes and uControllers. An event is logged as its template
+ * and arguments (see LogEvent) and only formatted by the AsyncLogWriter's writer thread, so the request paths
+ * of the nodes do not pay for String.format. In a template, %s and %d are replaced by the text of the
+ * argument, and %t by a simulation time in nanoseconds written as seconds with 3 decimal places. Every template
+ * has a category and a level, which the LogPolicy checks before the event is logged
+ */
+public enum LogTemplate {
+
+    // Message given as a single argument
+    MESSAGE(LogPolicy.Category.GENERAL, LogPolicy.Level.INFO, "%s"),
+
+    // uController
+    CONTROLLER_SENT_PACKETS_TO_PARENT(LogPolicy.Category.PACKET, LogPolicy.Level.DEBUG, "Sent [%d] packets to parent node to publish them"),
+    CONTROLLER_RECEIVED_GATEWAY_PACKET(LogPolicy.Category.PACKET, LogPolicy.Level.DEBUG, "[SUCCESS] Received packet from Gateway [%s]. Last Forwarded By Gateway [%s]"),
+    CONTROLLER_STARTED_GATEWAY_SEND(LogPolicy.Category.PACKET, LogPolicy.Level.DEBUG, "[STARTED] Sent Packet Through Connected Gateway. Next Hop [%s]. Target Destination [%s]"),
+    CONTROLLER_GATEWAY_SEND_RESULT(LogPolicy.Category.PACKET, LogPolicy.Level.INFO, "[%s] Sent Packet Through Connected Gateway. Next Hop [%s]. Target Destination [%s]"),
+    CONTROLLER_PERMISSION_QUERY(LogPolicy.Category.ACCESS, LogPolicy.Level.INFO, "Parent Node [%s] asked if ID [%s] is permitted to enter zone. Permission [%s]"),
+    CONTROLLER_ASKED_PARENT_SET_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Asked parent node to set field [%s] in object [%s] in slave node [%s]"),
+    CONTROLLER_PARENT_SET_FIELD_RESULT(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Parent set field [%s] in object [%s] in slave node [%s]"),
+    CONTROLLER_ASKED_PARENT_SET_SWITCH(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Asked parent node to set switch position [%s] in object [%s] in slave node [%s]"),
+    CONTROLLER_PARENT_SET_SWITCH_RESULT(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Parent node set switch position [%s] in object [%s] in slave node [%s]"),
+    CONTROLLER_RECEIVED_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Received field [%s] from object [%s]. Value [%s]"),
+    CONTROLLER_RECEIVED_FIELD_FAILURE(LogPolicy.Category.COMMAND, LogPolicy.Level.ERROR, "[FAILURE] Received field [%s] from object [%s]. Value [Null]"),
+    CONTROLLER_SET_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Set field [%s] in object [%s]"),
+    CONTROLLER_SET_FIELD_FAILURE(LogPolicy.Category.COMMAND, LogPolicy.Level.ERROR, "[FAILURE] Set field [%s] in object [%s]"),
+    CONTROLLER_SWITCHED(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Switched object [%s] position [%s] to [%s]"),
+    CONTROLLER_SWITCHED_FAILURE(LogPolicy.Category.COMMAND, LogPolicy.Level.ERROR, "[FAILURE] Switched object [%s] position [%s] to [%s]"),
+
+    // SlaveNode
+    SLAVE_STARTED_PUBLISHING(LogPolicy.Category.PACKET, LogPolicy.Level.DEBUG, "Started Publishing (%d) packets to Control Node [%s]"),
+    SLAVE_DONE_PUBLISHING(LogPolicy.Category.PACKET, LogPolicy.Level.INFO, "Done Publishing (%d) packets to Control Node [%s]"),
+    SLAVE_FIELD_REQUESTED(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Node [%s] requested field [%s] in object [%s]"),
+    SLAVE_RETRIEVING_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Attempted Retrieving field [%s] in object [%s] from local controller"),
+    SLAVE_RETRIEVED_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Retrieved field [%s] in object [%s] from local controller. Returned Value [%s]"),
+    SLAVE_FIELD_REQUEST_RESULT(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Node [%s] requested field [%s] in object [%s]. Returned Value [%s]"),
+    SLAVE_FIELD_UPDATE_REQUESTED(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Node [%s] attempted updating field [%s] in object [%s]"),
+    SLAVE_SETTING_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Attempted setting field [%s] in object [%s] through local controller"),
+    SLAVE_SET_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Set field [%s] in object [%s] through local controller. New Value [%s]"),
+    SLAVE_FIELD_UPDATE_RESULT(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Node [%s] attempted updating field [%s] in object [%s]. New Value [%s]"),
+    SLAVE_SWITCH_UPDATE_REQUESTED(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Node [%s] attempted updating switch position [%s] in object [%s]"),
+    SLAVE_SWITCHING(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Attempted switching position [%s] in object [%s] through local controller."),
+    SLAVE_SWITCHED(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Switched position [%s] in object [%s] through local controller. New State [%s]"),
+    SLAVE_SWITCH_UPDATE_RESULT(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Node [%s] attempted updating switch position [%s] in object [%s]. New State [%s]"),
+    SLAVE_ASKED_PERMISSION(LogPolicy.Category.ACCESS, LogPolicy.Level.DEBUG, "Asked Control Node [%s] about ID [%s]'s permission"),
+    SLAVE_PERMISSION(LogPolicy.Category.ACCESS, LogPolicy.Level.INFO, "ID [%s]'s permission: [%s]"),
+
+    // MasterNode
+    MASTER_RECEIVED_PACKETS(LogPolicy.Category.PACKET, LogPolicy.Level.INFO, "Received (%d) new packets from slave node [%s] created @ [%t]"),
+    MASTER_RECEIVED_BULK_PACKET(LogPolicy.Category.PACKET, LogPolicy.Level.INFO, "Received new bulk packet from control node [%s]"),
+    MASTER_QUERIED_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Queried field [%s] from object [%s] in slave node [%s]"),
+    MASTER_RECEIVED_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Received field [%s] from object [%s] in slave node [%s]. Value [%s]"),
+    MASTER_RECEIVED_FIELD_FAILURE(LogPolicy.Category.COMMAND, LogPolicy.Level.ERROR, "[FAILURE] Received field [%s] from object [%s] in slave node [%s]. Value [Null]"),
+    MASTER_SETTING_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Attempted setting field [%s] in object [%s] in slave node [%s]"),
+    MASTER_SET_FIELD(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Set field [%s] in object [%s] in slave node [%s]. New Value [%s]"),
+    MASTER_SET_FIELD_FAILURE(LogPolicy.Category.COMMAND, LogPolicy.Level.ERROR, "[FAILURE] Set field [%s] in object [%s] in slave node [%s]. New Value [old value]"),
+    MASTER_SETTING_SWITCH(LogPolicy.Category.COMMAND, LogPolicy.Level.DEBUG, "Attempted setting switch position [%s] in object [%s] in slave node [%s]"),
+    MASTER_SET_SWITCH(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO, "[%s] Set switch position [%s] in object [%s] in slave node [%s]. New State [%s]"),
+    MASTER_SET_SWITCH_FAILURE(LogPolicy.Category.COMMAND, LogPolicy.Level.ERROR, "[FAILURE] Set switch position [%s] in object [%s] in slave node [%s]. New State [old state]"),
+    MASTER_GATE_QUERY(LogPolicy.Category.ACCESS, LogPolicy.Level.DEBUG, "Gate [%s] queried permission status for ID [%s]"),
+    MASTER_GATE_QUERY_RESULT(LogPolicy.Category.ACCESS, LogPolicy.Level.INFO, "Gate [%s] queried permission status for ID [%s]. Permission [%s]");
+
+    // Category and level of the event, checked against the LogPolicy before the event is logged
+    private final LogPolicy.Category category;
+    private final LogPolicy.Level level;
+
+    // Text of the template
+    private final String text;
+
+    LogTemplate(LogPolicy.Category category, LogPolicy.Level level, String text) {
+        this.category = category;
+        this.level = level;
+        this.text = text;
+    }
+
+    /**
+     * Getter
+     * @return category of the event
+     */
+    public LogPolicy.Category getCategory() {
+        return category;
+    }
+
+    /**
+     * Getter
+     * @return level of the event
+     */
+    public LogPolicy.Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Getter
+     * @return text of the template
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Function to append the template with its placeholders replaced by the arguments of an event
+     * @param builder StringBuilder to append to
+     * @param event Event holding the arguments, one per placeholder
+     * @return the same StringBuilder
+     */
+    public StringBuilder appendTo(StringBuilder builder, LogEvent event) {
+        return appendFormatted(builder, text, null, event);
+    }
+
+    /**
+     * Function to append a template text with its placeholders replaced by arguments. Used for templates read
+     * back from a log file as well
+     * @param builder StringBuilder to append to
+     * @param template Template text
+     * @param args Arguments, one per placeholder
+     * @return the same StringBuilder
+     */
+    public static StringBuilder appendFormatted(StringBuilder builder, String template, Object[] args) {
+        return appendFormatted(builder, template, args, null);
+    }
+
+    /**
+     * Function to append a template text with its placeholders replaced by the arguments of an array or of an event.
+     * Whole numbers and decimals are appended without creating their text
+     * @param builder StringBuilder to append to
+     * @param template Template text
+     * @param args Arguments, one per placeholder. null to take them from the event
+     * @param event Event holding the arguments when args is null
+     * @return the same StringBuilder
+     */
+    private static StringBuilder appendFormatted(StringBuilder builder, String template, Object[] args, LogEvent event) {
+        int argCount = args != null ? args.length : event.getArgCount();
+        int start = 0;
+        int argument = 0;
+        for(int i = template.indexOf('%'); i >= 0 && i + 1 < template.length(); i = template.indexOf('%', start)){
+            char kind = template.charAt(i + 1);
+            if(kind != 's' && kind != 'd' && kind != 't'){
+                // Not a placeholder. Keep the character
+                builder.append(template, start, i + 1);
+                start = i + 1;
+                continue;
+            }
+
+            builder.append(template, start, i);
+            Object arg = argument >= argCount ? null : args != null ? args[argument] : event.getArg(argument);
+            argument++;
+            if(kind == 't' && arg instanceof Number) TimeFormat.appendSeconds(builder, ((Number) arg).longValue());
+            else if(arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte) builder.append(((Number) arg).longValue());
+            else if(arg instanceof Double) builder.append(((Double) arg).doubleValue());
+            else builder.append(arg);
+            start = i + 2;
+        }
+        return builder.append(template, start, template.length());
+    }
+}
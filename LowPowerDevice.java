@@ -130,10 +130,7 @@ public class LowPowerDevice extends Device {
  
             String exported_header = String.join(",",exported_header_columns);
 
-            synchronized(writer){
-                writer.println(exported_header);
-            }
-            hasAddedHeader = true;
+            setLogHeader(exported_header);
         }
 
         // Array containing the current values to be exported to log file
@@ -153,10 +150,8 @@ public class LowPowerDevice extends Device {
         // Join the values using commas
         String joined_values = String.join(",", exported_values);
 
-        synchronized(writer){
-            // Write the values to the output file
-            writer.println(getCurrentTimestamp()+"," + object_name + "," + joined_values);
-        }
+        // Log the values if the log policy lets them through. The timestamp is only formatted by the writer thread
+        writeStateRecord(object_name + "," + joined_values);
     }
 
     /**
@@ -166,7 +161,7 @@ public class LowPowerDevice extends Device {
      */
     private DataPacket readField(String fieldName){
             String value = fieldValues.get(fieldName);
-            return new DataPacket(object_name,fieldName,value,fieldSize,getCurrentTimestamp());
+            return packetPool.acquire(objectHandle,NameTable.handleOf(fieldName),value,fieldSize,getCurrentTimeNanos());
     }
     
     /**
@@ -177,7 +172,7 @@ public class LowPowerDevice extends Device {
      */
     private DataPacket setField(String fieldName, String value){
             fieldValues.put(fieldName,value);
-            return new DataPacket(object_name,fieldName,value,fieldSize,getCurrentTimestamp());
+            return packetPool.acquire(objectHandle,NameTable.handleOf(fieldName),value,fieldSize,getCurrentTimeNanos());
     }
 
     /**
@@ -189,32 +184,37 @@ public class LowPowerDevice extends Device {
      */
     @Override
     public ExecutionResult execute(String command, String... arguments){
-        boolean success = false;
         DataPacket packet = null;
 
+        // If command is "GET"
+        if(command.equalsIgnoreCase("GET")) return get(arguments[0]);
+
         synchronized(fieldValues){
-            // If command is "GET"
-            if(command.equalsIgnoreCase("GET")){
-                // Check that the field to be retrieved exists
-                if(fieldValues.containsKey(arguments[0])) {
-                    // Retrieve its value if it exists
-                    packet = readField(arguments[0]);    
-                    success = true;    
-                }
-            }
-            
             // If command is "SET"
-            else if(command.equalsIgnoreCase("SET")){
+            if(command.equalsIgnoreCase("SET")){
                 // Check that the field to be retrieved exists
                 if(fieldValues.containsKey(arguments[0])) {
                     // Update its value if it exists
                     packet = setField(arguments[0], arguments[1]);
-                    success = true;        
                 }
             }
         }
-        // Return results of the command
-        return new ExecutionResult(success, packet);
+        // Return results of the command. The result is reused with its packet
+        return packet != null ? packet.asResult() : ExecutionResult.FAILED;
+    }
+
+    /**
+     * Function to read a field of the device without building a command
+     * @param field Name of the field
+     * @return result holding a packet owned by the caller, or a failed result if the field does not exist
+     */
+    @Override
+    public ExecutionResult get(String field){
+        synchronized(fieldValues){
+            // Check that the field to be retrieved exists, and retrieve its value if it does
+            if(!fieldValues.containsKey(field)) return ExecutionResult.FAILED;
+            return readField(field).asResult();
+        }
     }
 
     /**
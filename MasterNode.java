@@ -1,8 +1,11 @@
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class represents a master node that controls all other slave nodes within a zone 
@@ -20,26 +23,66 @@ public class MasterNode extends SimulationObject {
     // A master node typically subscribes to slave nodes such that the slave nodes
     // automatically send their newly created data packets to the master node.
     // These packets are buffered until the uController aggregates them into a bulk data packet
-    // to send to the master zone.
-    private Queue<DataPacket> bufferedDataPackets;
+    // to send to the master zone. Slave nodes add to it without taking a lock, and the uController drains it in one step.
+    // Bounded, since the master nodes of some zones never drain it
+    private PacketBuffer<DataPacket> bufferedDataPackets;
 
     // This is a FIFO queue that stores bulk data packets received by this node.
     // Most likely, the master node of a Master zone is the entity that receives 
     // bulk data packets from slave zones. These bulk data packets can then be 
-    // unpacked to read their constituent data packets
-    private Queue<BulkDataPacket> receivedBulkDataPackets;
+    // unpacked to read their constituent data packets. Bounded, like bufferedDataPackets
+    private PacketBuffer<BulkDataPacket> receivedBulkDataPackets;
+
+    // Statistics on the bulk data packets received from other zones: number of bulk packets, number of data packets
+    // they carried, and total time in nanoseconds between the creation of each data packet and its arrival here
+    private long receivedBulkPacketCount;
+    private long receivedDataPacketCount;
+    private long totalDataPacketLatency;
+
+    // Latency histograms, in simulation time: from the creation of a data packet to its arrival here from a slave node,
+    // from the creation of a data packet to its arrival here in a bulk packet from another zone, from the creation of
+    // a bulk packet by the master node of another zone to its arrival here, and from sending a field or switch command
+    // to a slave node to receiving its reply
+    private LatencyHistogram sensorLatency;
+    private LatencyHistogram zoneLatency;
+    private LatencyHistogram bulkLatency;
+    private LatencyHistogram commandLatency;
     
-    // Map storing entries for all field names and their current values. The fields represent all
+    // Registry storing entries for all field names and their current values. The fields represent all
     // data types (temp, distance, etc. ) generated within a zone by its devices. Whenever these devices 
     // create new data packets and share them from their respective slave nodes to this master node,
-    // the value in the map is updated.
-    // To distinguish between identical field names in different devices of the same type, the field name keys
-    // in the map are stored as [object name]_[field name]
-    private HashMap<String, String> fieldValues;
+    // the value in the registry is updated.
+    // To distinguish between identical field names in different devices of the same type, the field names
+    // in the registry are stored as [object name]_[field name]. Each field also has an int handle, so that
+    // packets and loop algorithms read and write its value without building its name
+    private FieldRegistry fieldValues;
 
     // uController for the node
     protected uController localController;
 
+    // Flag indicating whether exportState writes only the fields changed since the previous row (delta rows)
+    // instead of every field on every row. Delta logs are turned back into full rows by DeltaLogReader
+    private static volatile boolean deltaRows = true;
+
+    // Number of rows between two rows holding every field (keyframes)
+    private static volatile int keyframeInterval = 100;
+
+    // Field values written to the log so far, in column order. null before the first row
+    private String[] exportedValues;
+
+    // Number of rows logged so far. Numbers the rows so that their changes can be applied in the order they were made
+    private long exportedRows;
+
+    // Builder reused to assemble the field columns of every row. Guarded by fieldValues
+    private final StringBuilder rowColumns = new StringBuilder(256);
+
+    // Capacities of the buffered data packets and received bulk data packets of every master node, what happens to a
+    // packet added to a full buffer, and the maximum simulation time in ms a publisher waits with the BLOCK policy
+    private static volatile int dataPacketCapacity = 4096;
+    private static volatile int bulkPacketCapacity = 256;
+    private static volatile PacketBuffer.OverflowPolicy overflowPolicy = PacketBuffer.OverflowPolicy.DROP_OLDEST;
+    private static volatile int maxBlockMillis = 1000;
+
     /**
      * Constructor
      * @param object_name Name of the object
@@ -50,12 +93,19 @@ public class MasterNode extends SimulationObject {
         super(object_name);
         this.localController = localController;
         this.BLE_Transmission_Rate = BLE_Transmission_Rate;
+        this.sensorLatency = new LatencyHistogram("Sensor to master node");
+        this.zoneLatency = new LatencyHistogram("Sensor to master zone");
+        this.bulkLatency = new LatencyHistogram("Master node to master zone");
+        this.commandLatency = new LatencyHistogram("Command round trip");
         
         localController.setParentNode(this);
         connectedSlaveNodes = new HashMap<>();
-        fieldValues = new HashMap<>();
-        receivedBulkDataPackets = new LinkedList<>();
-        bufferedDataPackets = new LinkedList<>();
+        fieldValues = new FieldRegistry();
+        // Dropped data packets go back to their pool. Dropped bulk packets hold decoded packets, which are not pooled
+        receivedBulkDataPackets = new PacketBuffer<>(object_name + " bulk packets", bulkPacketCapacity, overflowPolicy, maxBlockMillis,
+            bulk -> {}, getOutputDirectory() + object_name + "_bulkPackets.spill", BulkDataPacket::writeTo, BulkDataPacket::readFrom);
+        bufferedDataPackets = new PacketBuffer<>(object_name + " data packets", dataPacketCapacity, overflowPolicy, maxBlockMillis,
+            DataPacket::release, getOutputDirectory() + object_name + "_dataPackets.spill", DataPacket::writeTo, DataPacket::readFrom);
     }
 
     /**
@@ -87,7 +137,7 @@ public class MasterNode extends SimulationObject {
 
             // For every field in the slave node's fields
             for (String field : fields){
-                // Create a new entry in the values map with the initial value set to "Unitialized"
+                // Create a new entry in the registry with the initial value set to "Unitialized"
                 fieldValues.put(field,"Uninitialized");
             }
         }   
@@ -95,12 +145,39 @@ public class MasterNode extends SimulationObject {
     }
     
     /**
-     * Function to share a new data packet with the master node. This function is typically called by slave nodes
+     * Function to share a new data packet with the master node. This function is typically called by slave nodes.
+     * The packets and their acknowledgement travel over the BLE link as a call, which reuses the request and reply
+     * of the calling thread
      * @param sender Slave node sending the new packets
-     * @param receivedDataPackets New data packets shared by the slave node
+     * @param receivedDataPackets New data packets shared by the slave node. The master node becomes their owner
      */
     public void update(SlaveNode sender, DataPacket... receivedDataPackets){
-        
+        // Wait for the acknowledgement, which only takes RTT/2 assuming the acknowledgment size is negligible
+        BleLink.call(updateDelay(sender, receivedDataPackets), () -> receivePackets(sender, receivedDataPackets),
+            sender.getRTT_to_Master_Node()/2);
+    }
+
+    /**
+     * Asynchronous version of update. The packets and their acknowledgement travel over the BLE link
+     * without blocking the sender
+     * @param sender Slave node sending the new packets
+     * @param receivedDataPackets New data packets shared by the slave node. The master node becomes their owner
+     * @return future completing once the acknowledgement arrives back at the slave node
+     */
+    public CompletableFuture<Void> updateAsync(SlaveNode sender, DataPacket... receivedDataPackets){
+        // The delay for the acknowledgement that has to travel back to the slave node that shared the packet
+        // is only RTT/2 assuming the acknowledgment size is negligible
+        return BleLink.<Void>request(updateDelay(sender, receivedDataPackets), () -> receivePackets(sender, receivedDataPackets),
+            ack -> sender.getRTT_to_Master_Node()/2);
+    }
+
+    /**
+     * Function to calculate the delay of the packets shared by a slave node
+     * @param sender Slave node sending the new packets
+     * @param receivedDataPackets New data packets shared by the slave node
+     * @return delay in ms for the packets to reach this master node
+     */
+    private int updateDelay(SlaveNode sender, DataPacket[] receivedDataPackets){
         int totalDataSize = 0;
         
         //Calculate total size of all the received packets' payloads
@@ -108,36 +185,38 @@ public class MasterNode extends SimulationObject {
         
         // Based on the total size of the payload being sent, calculate the propagation and transmission delay from the 
         // slave node to this master node: delay = RTT/2 + Size / Transmission Rate
-        int time_delay = sender.getRTT_to_Master_Node()/2 + totalDataSize / BLE_Transmission_Rate;
-        
-        // Simulate the delay introduced by the transmission of the data by BLE
-        SimulationClock.getInstance().waitFor(time_delay);
-        
+        return sender.getRTT_to_Master_Node()/2 + totalDataSize / BLE_Transmission_Rate;
+    }
+
+    /**
+     * Function to handle the packets shared by a slave node once they arrive over the BLE link
+     * @param sender Slave node that sent the packets
+     * @param receivedDataPackets New data packets shared by the slave node. The master node becomes their owner
+     * @return null, since the acknowledgement carries no data
+     */
+    private Void receivePackets(SlaveNode sender, DataPacket[] receivedDataPackets){
         // Add log message indicating that the data packets have been received
-        exportState(String.format("Received (%d) new packets from slave node [%s] created @ [%s]",receivedDataPackets.length, sender.getObject_name(),receivedDataPackets[0].getTime_of_creation())); 
-        
-        synchronized(bufferedDataPackets){
-            // Add the data packets to thebuffer
-            for(DataPacket packet : receivedDataPackets) bufferedDataPackets.add(packet);
-        }
+        exportEvent(LogTemplate.MASTER_RECEIVED_PACKETS, receivedDataPackets.length, sender.getObject_name(),receivedDataPackets[0].getTime_of_creation()); 
 
+        // Record the time each packet took from its creation to its arrival here
+        long now = getCurrentTimeNanos();
+        for(DataPacket packet : receivedDataPackets) sensorLatency.record(now - packet.getTime_of_creation());
+        
         synchronized(fieldValues){
             // For every packet in the received data packets
             for(DataPacket packet : receivedDataPackets)
-            // Update the corresponding field entry in the values map
-            fieldValues.put(
-                //Keys of the map are the object name_field name
-                packet.getSourceObjectName()+"_"+packet.getFieldName(),
-                packet.getValue());
+            // Update the corresponding field entry in the registry, found by the handles of the packet's
+            // object and field names
+            fieldValues.set(
+                fieldValues.handleOf(packet.getSourceHandle(), packet.getFieldHandle()),
+                packet);
                 
         }
-        // Calculate the delay for the acknowledgement that has to travel back to the slave node that shared the packet
-        // The delay is only RTT/2 assuming the acknowledgment size is negligible
-        time_delay = sender.getRTT_to_Master_Node()/2;
-
-        // Simulate the acknowledgement delay before returing back to the slave node that called this function
-        SimulationClock.getInstance().waitFor(time_delay);
 
+        // Add the data packets to the buffer last. The buffer owns them from then on: it may release a packet it
+        // drops or spills, and the uController may drain and release it at any time (see DataPacketPool)
+        for(DataPacket packet : receivedDataPackets) bufferedDataPackets.add(packet);
+        return null;
     }
 
     /**
@@ -148,12 +227,23 @@ public class MasterNode extends SimulationObject {
      */
     public void receiveForwardedPacket(MasterNode sender, BulkDataPacket receivedBulkDataPacket){
         synchronized(receivedBulkDataPackets){
-            // Add the received bulk data packets to the buffer
-            receivedBulkDataPackets.add(receivedBulkDataPacket);
+            // Update the delivery statistics
+            long now = getCurrentTimeNanos();
+            receivedBulkPacketCount++;
+            bulkLatency.record(now - receivedBulkDataPacket.getTime_of_creation());
+            for(DataPacket packet : receivedBulkDataPacket.getPackets()){
+                receivedDataPacketCount++;
+                totalDataPacketLatency += now - packet.getTime_of_creation();
+                zoneLatency.record(now - packet.getTime_of_creation());
+            }
             
             // Add a log message indicating the receival of the bulk data packet.
-            exportState(String.format("Received new bulk packet from control node [%s]", sender.getObject_name()));
+            exportEvent(LogTemplate.MASTER_RECEIVED_BULK_PACKET, sender.getObject_name());
         }
+
+        // Add the received bulk data packet to the buffer, once its packets are counted. Outside the lock, since a
+        // full buffer may make the caller wait
+        receivedBulkDataPackets.add(receivedBulkDataPacket);
     }
 
     /**
@@ -164,7 +254,18 @@ public class MasterNode extends SimulationObject {
      * @return Execution result encapsulating the success of the query and the returned data packet
      */
     public ExecutionResult getFieldFrom(String targetNodeName, String targetObjectName, String field){
-        ExecutionResult result;
+        // Wait for the reply of the asynchronous query
+        return SimulationClock.getInstance().await(getFieldFromAsync(targetNodeName, targetObjectName, field));
+    }
+
+    /**
+     * Asynchronous version of getFieldFrom. Many queries can be in flight to the slave nodes at once
+     * @param targetNodeName Name of the slave node containing the device that contains the field to be retrieved
+     * @param targetObjectName Name of the device that contains the field to be retrieved
+     * @param field Name of the field to be retrieved
+     * @return future completing with the execution result once the reply arrives from the slave node
+     */
+    public CompletableFuture<ExecutionResult> getFieldFromAsync(String targetNodeName, String targetObjectName, String field){
          
         // Find the slave node having the target node name in the list of connected slave nodes
         SlaveNode targetNode = connectedSlaveNodes.get(targetNodeName);
@@ -172,27 +273,32 @@ public class MasterNode extends SimulationObject {
         // If target node exists
         if(targetNode!= null) {
             // Add a log message indicating that this master node is queryinig a field in another slave node
-            exportState(String.format("Queried field [%s] from object [%s] in slave node [%s]", field, targetObjectName, targetNodeName));
+            exportEvent(LogTemplate.MASTER_QUERIED_FIELD, field, targetObjectName, targetNodeName);
             
             // Retrieve the field from the target node
-            result = targetNode.getField(this, targetObjectName, field);
-            
-            // Check if the query was successful or not
-            String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
+            // Time the command is sent, to record its round trip
+            long sent = getCurrentTimeNanos();
+            return targetNode.getFieldAsync(this, targetObjectName, field).thenApply(result -> {
+                // Record the time from sending the command to receiving the reply
+                commandLatency.record(getCurrentTimeNanos() - sent);
             
-            // Add a log message inidcating whether the query was successful or not
-            exportState(String.format("[%s] Received field [%s] from object [%s] in slave node [%s]. Value [%s]",successStatus, field, targetObjectName, targetNodeName, result.isSuccess()? result.getReturnedPacket().getValue():"Null"));
-            
-            // Return the execution result
-            return result;
+                // Check if the query was successful or not
+                String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
+                
+                // Add a log message inidcating whether the query was successful or not
+                exportEvent(LogTemplate.MASTER_RECEIVED_FIELD, successStatus, field, targetObjectName, targetNodeName, result.isSuccess()? result.getReturnedPacket().getValue():"Null");
+                
+                // Return the execution result
+                return result;
+            });
         }
         // If the target node does not exist
         else{
             // Add an error log message
-            exportState(String.format("[FAILURE] Received field [%s] from object [%s] in slave node [%s]. Value [Null]",field, targetObjectName, targetNodeName));
+            exportEvent(LogTemplate.MASTER_RECEIVED_FIELD_FAILURE, field, targetObjectName, targetNodeName);
             
             // Return a blank execution result
-            return new ExecutionResult(false, null);
+            return CompletableFuture.completedFuture(new ExecutionResult(false, null));
         }
     }
 
@@ -206,6 +312,20 @@ public class MasterNode extends SimulationObject {
      * @return Execution result encapsulating the success of the query and the returned data packet containing the user provided parameters
      */
     public ExecutionResult setFieldIn(String targetNodeName, String targetObjectName, String field, String value, int size){
+        // Wait for the acknowledgement of the asynchronous update
+        return SimulationClock.getInstance().await(setFieldInAsync(targetNodeName, targetObjectName, field, value, size));
+    }
+
+    /**
+     * Asynchronous version of setFieldIn. Many updates can be in flight to the slave nodes at once
+     * @param targetNodeName Name of the slave node containing the device containing the field whose value is to be updated
+     * @param targetObjectName Name of the device containing the field to be updated
+     * @param field Name of the field to be updated
+     * @param value New value for the field
+     * @param size Size of the new value in bytes
+     * @return future completing with the execution result once the acknowledgement arrives from the slave node
+     */
+    public CompletableFuture<ExecutionResult> setFieldInAsync(String targetNodeName, String targetObjectName, String field, String value, int size){
         
         // Find the slave node in the list of connected slave nodes having the target node name
         SlaveNode targetNode = connectedSlaveNodes.get(targetNodeName);
@@ -214,25 +334,30 @@ public class MasterNode extends SimulationObject {
         if(targetNode != null){
 
             // Add a log message indicating the attempt to update the field value
-            exportState(String.format("Attempted setting field [%s] in object [%s] in slave node [%s]", field, targetObjectName, targetNodeName));
+            exportEvent(LogTemplate.MASTER_SETTING_FIELD, field, targetObjectName, targetNodeName);
             
             // Attempt updating the field value
-            ExecutionResult result = targetNode.setField(this, targetObjectName, field, value, size);
-            
-            // Check whether the new value was successfully set or not
-            String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
+            // Time the command is sent, to record its round trip
+            long sent = getCurrentTimeNanos();
+            return targetNode.setFieldAsync(this, targetObjectName, field, value, size).thenApply(result -> {
+                // Record the time from sending the command to receiving the reply
+                commandLatency.record(getCurrentTimeNanos() - sent);
             
-            // Add a log message indicating the success of setting the new value
-            exportState(String.format("[%s] Set field [%s] in object [%s] in slave node [%s]. New Value [%s]", successStatus, field, targetObjectName, targetNodeName, result.isSuccess() ? result.getReturnedPacket().getValue() : "old value"));
-            return result;
+                // Check whether the new value was successfully set or not
+                String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
+                
+                // Add a log message indicating the success of setting the new value
+                exportEvent(LogTemplate.MASTER_SET_FIELD, successStatus, field, targetObjectName, targetNodeName, result.isSuccess() ? result.getReturnedPacket().getValue() : "old value");
+                return result;
+            });
         }       
         // If the target node does not exist
         else{
             // Add an error log message
-            exportState(String.format("[FAILURE] Set field [%s] in object [%s] in slave node [%s]. New Value [old value]",field, targetObjectName, targetNodeName));
+            exportEvent(LogTemplate.MASTER_SET_FIELD_FAILURE, field, targetObjectName, targetNodeName);
             
             // Return a blank execution result
-            return new ExecutionResult(false, null);
+            return CompletableFuture.completedFuture(new ExecutionResult(false, null));
         }
         
     }
@@ -246,6 +371,19 @@ public class MasterNode extends SimulationObject {
      * @return Execution result encapsulating the success of the query and the returned data packet containg the user provided parameters
      */
     public ExecutionResult updateSwitchIn(String targetNodeName, String targetObjectName, String position, String switchStatus){
+        // Wait for the acknowledgement of the asynchronous update
+        return SimulationClock.getInstance().await(updateSwitchInAsync(targetNodeName, targetObjectName, position, switchStatus));
+    }
+
+    /**
+     * Asynchronous version of updateSwitchIn. Many updates can be in flight to the slave nodes at once
+     * @param targetNodeName Name of the slave node containing relay device whose switch state is to be updated
+     * @param targetObjectName Name of the relay device whose switch state is to be update
+     * @param position The switch number with the relay
+     * @param switchStatus The new status of the switch. "true" or "false"
+     * @return future completing with the execution result once the acknowledgement arrives from the slave node
+     */
+    public CompletableFuture<ExecutionResult> updateSwitchInAsync(String targetNodeName, String targetObjectName, String position, String switchStatus){
         
         // Find the slave node in the list of connected slave nodes having the target node name
         SlaveNode targetNode = connectedSlaveNodes.get(targetNodeName);
@@ -253,27 +391,32 @@ public class MasterNode extends SimulationObject {
         // If the target node exists
         if(targetNode != null){
             // Add a log message indicating the attempt to update the switch state
-            exportState(String.format("Attempted setting switch position [%s] in object [%s] in slave node [%s]", position, targetObjectName, targetNodeName));
+            exportEvent(LogTemplate.MASTER_SETTING_SWITCH, position, targetObjectName, targetNodeName);
             
             // Attempt updating the switch state
-            ExecutionResult result = targetNode.updateSwitch(this, targetObjectName, position,switchStatus);
-            
-            // Check whether the update attempt was successful or not
-            String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
+            // Time the command is sent, to record its round trip
+            long sent = getCurrentTimeNanos();
+            return targetNode.updateSwitchAsync(this, targetObjectName, position,switchStatus).thenApply(result -> {
+                // Record the time from sending the command to receiving the reply
+                commandLatency.record(getCurrentTimeNanos() - sent);
             
-            // Add a log message indicating the success of the update attempt
-            exportState(String.format("[%s] Set switch position [%s] in object [%s] in slave node [%s]. New State [%s]", successStatus, position, targetObjectName, targetNodeName, result.isSuccess() ? result.getReturnedPacket().getValue() : "old state"));
-            
-            // Return the execution result
-            return result;
+                // Check whether the update attempt was successful or not
+                String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
+                
+                // Add a log message indicating the success of the update attempt
+                exportEvent(LogTemplate.MASTER_SET_SWITCH, successStatus, position, targetObjectName, targetNodeName, result.isSuccess() ? result.getReturnedPacket().getValue() : "old state");
+                
+                // Return the execution result
+                return result;
+            });
         }       
         // If the target node does not exist
         else{
             // Add an error log message
-            exportState(String.format("[FAILURE] Set switch position [%s] in object [%s] in slave node [%s]. New State [old state]",position, targetObjectName, targetNodeName));
+            exportEvent(LogTemplate.MASTER_SET_SWITCH_FAILURE, position, targetObjectName, targetNodeName);
             
             // Return blank execution result
-            return new ExecutionResult(false, null);
+            return CompletableFuture.completedFuture(new ExecutionResult(false, null));
         }
     }
 
@@ -287,30 +430,122 @@ public class MasterNode extends SimulationObject {
     }
 
     /**
-     * Function to return a copy of all the buffered data packets received from slave nodes
+     * Function to return a copy of all the buffered data packets received from slave nodes. The buffered packets
+     * stay owned by the buffer, so the copies are new packets that are not pooled: they stay valid once the buffered
+     * packets are taken and released (see DataPacketPool)
      * @return Queue containing a copy of all packets buffered in the master node
      */
     public Queue<DataPacket> getBufferedDataPackets() {
-        synchronized(bufferedDataPackets){
-            // Copy all the packets to a new queue
-            Queue<DataPacket> copy = new LinkedList<>(bufferedDataPackets);
-            
-            // Return the copy
-            return copy;
+        // Copy all the packets to a new queue
+        Queue<DataPacket> copy = new LinkedList<>();
+        bufferedDataPackets.copyTo(copy, DataPacket::copy);
 
-        }
+        // Return the copy
+        return copy;
     }
     
+    /**
+     * Function to take all the buffered data packets received from slave nodes, leaving the buffer empty. Unlike
+     * getBufferedDataPackets followed by clearBufferedDataPackets, no packet received in between is lost. The caller
+     * becomes the owner of the packets (see DataPacketPool)
+     * @return Queue containing the packets that were buffered in the master node
+     */
+    public Queue<DataPacket> takeBufferedDataPackets() {
+        Queue<DataPacket> taken = new LinkedList<>();
+        bufferedDataPackets.drainTo(taken);
+        return taken;
+    }
+
+    /**
+     * Function to move all the buffered data packets received from slave nodes to a collection, in the order they
+     * were received, leaving the buffer empty. Slave nodes keep adding packets while the buffer is drained, and a
+     * packet that is not taken by this drain is taken by the next one. Takes time proportional to the number of
+     * packets drained. The caller becomes the owner of the packets (see DataPacketPool)
+     * @param target Collection the packets are added to
+     * @return number of packets drained
+     */
+    public int drainBufferedDataPackets(Collection<? super DataPacket> target) {
+        return bufferedDataPackets.drainTo(target);
+    }
+
+    /**
+     * Getter
+     * @return number of data packets buffered in the master node
+     */
+    public int getBufferedDataPacketCount() {
+        return bufferedDataPackets.size();
+    }
+
     /**
      * Function to clear all the buffered data packets received from slave nodes
      */
     public void clearBufferedDataPackets(){
-        synchronized(bufferedDataPackets){
-            // Clear the buffered data packets queue
-            bufferedDataPackets.clear();
+        // Clear the buffered data packets queue
+        bufferedDataPackets.clear();
+    }
+
+    /**
+     * Getter
+     * @return number of bulk data packets received from other zones
+     */
+    public long getReceivedBulkPacketCount() {
+        synchronized(receivedBulkDataPackets){
+            return receivedBulkPacketCount;
+        }
+    }
+
+    /**
+     * Getter
+     * @return number of data packets carried by the bulk data packets received from other zones
+     */
+    public long getReceivedDataPacketCount() {
+        synchronized(receivedBulkDataPackets){
+            return receivedDataPacketCount;
+        }
+    }
+
+    /**
+     * Function to compute the mean time between the creation of a data packet and its arrival at this master node
+     * @return mean latency in nanoseconds of the received data packets, or 0 if none was received
+     */
+    public long getMeanDataPacketLatency() {
+        synchronized(receivedBulkDataPackets){
+            return receivedDataPacketCount == 0 ? 0 : totalDataPacketLatency / receivedDataPacketCount;
         }
     }
 
+    /**
+     * Getter
+     * @return latencies from the creation of a data packet to its arrival here from a slave node
+     */
+    public LatencyHistogram getSensorLatency() {
+        return sensorLatency;
+    }
+
+    /**
+     * Getter
+     * @return latencies from the creation of a data packet to its arrival here in a bulk packet from another zone
+     */
+    public LatencyHistogram getZoneLatency() {
+        return zoneLatency;
+    }
+
+    /**
+     * Getter
+     * @return latencies from the creation of a bulk packet by the master node of another zone to its arrival here
+     */
+    public LatencyHistogram getBulkLatency() {
+        return bulkLatency;
+    }
+
+    /**
+     * Getter
+     * @return latencies from sending a field or switch command to a slave node to receiving its reply
+     */
+    public LatencyHistogram getCommandLatency() {
+        return commandLatency;
+    }
+
     /**
      * Function to return a copy of all the buffered bulk data packets received from slave zones
      * @param consume if true, the stored bulk packets in this master node will be cleared after returning their copy. 
@@ -318,16 +553,23 @@ public class MasterNode extends SimulationObject {
      * @return Queue containing a copy of the buffered bulk data packets
      */
     public Queue<BulkDataPacket> getReceivedBulkDataPackets(boolean consume) {
-        synchronized(receivedBulkDataPackets){
-            // Copy the bulk data packets into a new containter
-            Queue<BulkDataPacket> copy = new LinkedList<>(receivedBulkDataPackets);
-            
-            // Clear the bulk data packets buffer if the caller wants to consume the buffer
-            if(consume) receivedBulkDataPackets.clear();
+        Queue<BulkDataPacket> copy = new LinkedList<>();
 
-            // Return the copy of the bulk data packets buffer
-            return copy;
-        }
+        // Take the bulk data packets if the caller wants to consume the buffer, and copy them otherwise. Taking them
+        // loses none received meanwhile
+        if(consume) receivedBulkDataPackets.drainTo(copy);
+        else receivedBulkDataPackets.copyTo(copy);
+
+        // Return the copy of the bulk data packets buffer
+        return copy;
+    }
+
+    /**
+     * Function to print the overflow events of the buffered data packets and received bulk data packets, if any
+     */
+    public void printBufferReport() {
+        bufferedDataPackets.printReport();
+        receivedBulkDataPackets.printReport();
     }
     
     /**
@@ -346,41 +588,51 @@ public class MasterNode extends SimulationObject {
      * @return true if the worker is permitted to enter, false otherwise
      */
     public boolean isPermittedToEnter(SlaveNode gate, DataPacket packet){
+        // Wait for the reply of the asynchronous query
+        return SimulationClock.getInstance().await(isPermittedToEnterAsync(gate, packet));
+    }
+
+    /**
+     * Asynchronous version of isPermittedToEnter. The query and its reply travel over the BLE link
+     * without blocking the gate
+     * @param gate The gate slave node object inquiring about permission of a certain worker
+     * @param packet DataPacket encapsulating the ID of worker whose entry permission is being queried
+     * @return future completing with the permission status once the reply arrives back at the gate
+     */
+    public CompletableFuture<Boolean> isPermittedToEnterAsync(SlaveNode gate, DataPacket packet){
         String id = packet.getValue();
         
-        // Simulate the delay of RTT/2 + size/Transmission rate for the request to arrive from gate slave node to this master node
-        SimulationClock.getInstance().waitFor(gate.getRTT_to_Master_Node()/2 + packet.getSize() / BLE_Transmission_Rate);
+        // Simulate the delay of RTT/2 + size/Transmission rate for the request to arrive from gate slave node to this master node.
+        // The reply is delayed by RTT/2, which is the time needed for the acknowledgement to get back to caller
+        return BleLink.request(gate.getRTT_to_Master_Node()/2 + packet.getSize() / BLE_Transmission_Rate, () -> {
+
+            // Since the gate queried about the worker with the given ID, this means 
+            // that gate detected the worker at the gate. Hence, the field "ID" in the gate 
+            // must be updated
+            synchronized(fieldValues){
+                // getGlobalOfferedFields returns an array of fields in the gate with object name appended at the beginning
+                // The arraylist contains only one field "ID"
+                // Update that entry in the field registry
+                fieldValues.put(gate.getGlobalOfferedFields().get(0),id);
+            }
 
-        synchronized(bufferedDataPackets){
-            // Add received packet to list of buffered packets
-            bufferedDataPackets.add(packet);
-        }
+            // Add a log message indicating that gate asked about the permission of a certain worker
+            exportEvent(LogTemplate.MASTER_GATE_QUERY, gate.getObject_name(), id);
+            
+            // Check if the worker is permitted to enter or not
+            boolean isPermitted =  localController.isPermittedToEnter(id);
+            
+            // Add a log message indicating whether the worker is allowed or not
+            exportEvent(LogTemplate.MASTER_GATE_QUERY_RESULT, gate.getObject_name(), id, isPermitted ? "ALLOWED" : "DENIED");
 
-        // Since the gate queried about the worker with the given ID, this means 
-        // that gate detected the worker at the gate. Hence, the field "ID" in the gate 
-        // must be updated
-        synchronized(fieldValues){
-            // getGlobalOfferedFields returns an array of fields in the gate with object name appended at the beginning
-            // The arraylist contains only one field "ID"
-            // Update that entry in the field values map
-            fieldValues.put(gate.getGlobalOfferedFields().get(0),id);
-        }
+            // Add received packet to list of buffered packets. This is the last use of the packet here, since the
+            // buffer owns it from then on
+            bufferedDataPackets.add(packet);
 
-        // Add a log message indicating that gate asked about the permission of a certain worker
-        exportState(String.format("Gate [%s] queried permission status for ID [%s]", gate.getObject_name(), id));
-        
-        // Check if the worker is permitted to enter or not
-        boolean isPermitted =  localController.isPermittedToEnter(id);
-        
-        // Add a log message indicating whether the worker is allowed or not
-        exportState(String.format("Gate [%s] queried permission status for ID [%s]. Permission [%s]", gate.getObject_name(), id, isPermitted ? "ALLOWED" : "DENIED"));
-        
-        // Simulate a delay of RTT/2, which is the time needed for the acknowledgement to get back to caller
-        SimulationClock.getInstance().waitFor(gate.getRTT_to_Master_Node()/2);
-     
+            // Return permission status
+            return isPermitted;
 
-        // Return permission status
-        return isPermitted;
+        }, permitted -> gate.getRTT_to_Master_Node()/2);
     
     }
 
@@ -392,9 +644,55 @@ public class MasterNode extends SimulationObject {
      * @return String value of the field
      */
     public String getCurrentValue(String deviceName, String fieldName){
-        synchronized(fieldValues){
-            return fieldValues.get(deviceName+"_"+ fieldName);
-        }
+        return fieldValues.get(fieldValues.handleOf(deviceName, fieldName));
+    }
+
+    /**
+     * Function to retrieve the current value of a field from its handle. Takes no lock
+     * @param fieldHandle Handle of the field, returned by getFieldHandle
+     * @return String value of the field, or null if the field has no value yet
+     */
+    public String getCurrentValue(int fieldHandle){
+        return fieldValues.get(fieldHandle);
+    }
+
+    /**
+     * Function to check whether a field holds a number or a boolean, as opposed to text such as "Uninitialized".
+     * Takes no lock
+     * @param fieldHandle Handle of the field, returned by getFieldHandle
+     * @return true if the last value received for the field is a number or a boolean
+     */
+    public boolean hasValue(int fieldHandle){
+        return fieldValues.hasNumber(fieldHandle);
+    }
+
+    /**
+     * Function to retrieve the current value of a field as a number, parsed once when its packet arrived. Takes no lock
+     * @param fieldHandle Handle of the field, returned by getFieldHandle
+     * @return value of the field, 1 or 0 for a boolean, or NaN if the field holds no number (see hasValue)
+     */
+    public double getCurrentDouble(int fieldHandle){
+        return fieldValues.getDouble(fieldHandle);
+    }
+
+    /**
+     * Function to retrieve the current value of a field as a boolean. Takes no lock
+     * @param fieldHandle Handle of the field, returned by getFieldHandle
+     * @return true if the field holds true or a non-zero number, false otherwise
+     */
+    public boolean getCurrentBoolean(int fieldHandle){
+        return fieldValues.getBoolean(fieldHandle);
+    }
+
+    /**
+     * Function to find the handle of a field in a certain device, so that a loop algorithm reads the field's value
+     * through getCurrentValue(int) without looking up its name on every run. Fields not received yet are registered
+     * @param deviceName Device containing the field
+     * @param fieldName Name of the field in the device
+     * @return handle of the field
+     */
+    public int getFieldHandle(String deviceName, String fieldName){
+        return fieldValues.handleOf(deviceName, fieldName);
     }
     
     /**
@@ -403,34 +701,98 @@ public class MasterNode extends SimulationObject {
      */
     @Override
     public void exportState(String... events) {
-        // Add header for CSV file if not done already
-        if(!hasAddedHeader){
-            ArrayList<String> columns = new ArrayList<>();
-            columns.add("Timestamp");
-            columns.add("Object Name");
-            columns.add("Event");
-            columns.addAll(fieldValues.keySet());
-            writer.println(String.join(",",columns));
-            hasAddedHeader = true;
-        }
-        
-        ArrayList<String> values = new ArrayList<>();
-        
-        // Prepare values for first three columns
-        values.add(getCurrentTimestamp());
-        values.add(object_name);
-        values.add(events[0]);
+        exportEvent(LogTemplate.MESSAGE, events[0]);
+    }
 
-        // Add values for for the remaining columns using current values map
+    /**
+     * Function to set the header of the output CSV file: the event columns, then one column per field
+     */
+    @Override
+    protected void setEventLogHeader() {
+        StringBuilder header = new StringBuilder("Timestamp,Object Name,Event");
+        if(deltaRows) header.append(",Frame,Frame Type");
+        for(String name : fieldValues.getNames()) header.append(',').append(name);
+        setLogHeader(header.toString());
+    }
+
+    /**
+     * Function to log an event with the current field values after it
+     * @param event Event to log
+     */
+    @Override
+    protected void logEvent(LogEvent event) {
         synchronized(fieldValues){
-            for(Entry<String, String> entry : fieldValues.entrySet()) values.add(entry.getValue());
-        } 
+            // Values of the columns after the event, built in the reused builder. The timestamp, object name and
+            // event are added by the writer thread
+            StringBuilder values = rowColumns;
+            values.setLength(0);
+
+            if(!deltaRows){
+                // Add values for for the remaining columns using current values map
+                for(int field = 0; field < fieldValues.size(); field++){
+                    if(field > 0) values.append(',');
+                    values.append(fieldValues.get(field));
+                }
+            }
+            else{
+                // Keyframes hold every field. Other rows only hold the fields changed since the previous row, as "column:value"
+                boolean keyframe = exportedValues == null || exportedValues.length != fieldValues.size()
+                    || keyframeInterval <= 1 || exportedRows % keyframeInterval == 0;
+                if(exportedValues == null || exportedValues.length != fieldValues.size()) exportedValues = new String[fieldValues.size()];
+
+                values.append(exportedRows++).append(',').append(keyframe ? 'K' : 'D');
+
+                for(int column = 0; column < exportedValues.length; column++){
+                    String value = fieldValues.get(column);
+                    if(keyframe) values.append(',').append(value);
+                    else if(!Objects.equals(value, exportedValues[column])) values.append(',').append(column).append(':').append(value);
+                    exportedValues[column] = value;
+                }
+            }
 
-        synchronized(writer){
-            // Write to output csv file
-            writer.println(String.join(",",values));  
+            // Log the row while holding the lock, so that rows are logged in the order of their frame numbers
+            if(values.length() > 0) event.setTrailingColumns(values.toString());
+            writeLogRecord(event);
         }
+    }
 
+    /**
+     * Function to set whether master nodes log only the fields changed since their previous row. Must be called before
+     * the simulation starts
+     * @param enabled true to log delta rows and keyframes, false to log every field on every row
+     */
+    public static void setDeltaRows(boolean enabled){
+        deltaRows = enabled;
+    }
+
+    /**
+     * Function to set the number of rows between two keyframes holding every field
+     * @param interval Number of rows. 1 makes every row a keyframe
+     */
+    public static void setKeyframeInterval(int interval){
+        keyframeInterval = interval;
+    }
+
+    /**
+     * Function to set the capacities of the packet buffers of the master nodes created afterwards. A full buffer
+     * handles new packets according to the overflow policy
+     * @param dataPackets Maximum number of data packets from slave nodes held in memory
+     * @param bulkPackets Maximum number of bulk data packets from other zones held in memory
+     */
+    public static void setBufferCapacities(int dataPackets, int bulkPackets){
+        dataPacketCapacity = dataPackets;
+        bulkPacketCapacity = bulkPackets;
+    }
+
+    /**
+     * Function to set what happens to a packet added to a full buffer, in the master nodes created afterwards
+     * @param policy Overflow policy
+     * @param blockMillis Maximum simulation time in ms a publisher waits for room with the BLOCK policy, before the
+     * packet is dropped
+     */
+    public static void setOverflowPolicy(PacketBuffer.OverflowPolicy policy, int blockMillis){
+        overflowPolicy = policy;
+        maxBlockMillis = blockMillis;
     }
 
     /**
@@ -1,13 +1,11 @@
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-
 /**
  * This class represents a Master Zone
  */
 public class MasterZone extends Zone {
 
+    // Sink of the Database.csv file, where the master node's loop stores the data packets received by the zone
+    private LogSink database;
+
     /**
      * Constructor
      * @param object_name Name of the master zone
@@ -48,25 +46,11 @@ public class MasterZone extends Zone {
     }
     
     /**
-     * Function to create the Database.csv file
+     * Function to create the sink of the Database.csv file. Rotated and compressed like the object logs with ROTATING_GZIP
      */
     private void createDatabaseFile(){
-        try {
-            File file = new File("logs/Database.csv");
-            
-            // Delete the file if it already exists from previous simulation runs 
-            if (file.exists()) file.delete();
-
-            // Write the header to the file
-            FileWriter fileWriter = new FileWriter("logs/Database.csv", true);
-            PrintWriter writer = new PrintWriter(fileWriter,true);
-            writer.println("Time of Arrival,"+DataPacket.getHeader());
-            writer.close();
-
-        } catch (IOException e) {
-            System.out.println("An error occurred while appending to the file.");
-            e.printStackTrace();
-        }
+        database = createCsvSink(getOutputDirectory() + "Database.csv");
+        database.setHeader("Time of Arrival,"+DataPacket.getHeader());
     }
 
     /**
@@ -96,6 +80,9 @@ public class MasterZone extends Zone {
         // Connect the uController to the gateway
         controller.connectTo(gateway);
 
+        // Let the master node's loop write to the database
+        controller.setDatabase(database);
+
         // Initialize the MasterNode object
         MasterNode node = new MasterNode(nodeName, BLE_Transmission_Rate, controller);
 
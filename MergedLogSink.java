@@ -0,0 +1,193 @@
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * This class is a LogSink merging the event records of all simulation objects into one time-ordered stream
+ * with the columns "Timestamp,Object Name,Event", the layout of combinedLogs.csv. Objects log to it in
+ * addition to (or instead of) their own log files, so the events no longer have to be read back from every
+ * object's file and sorted after the run.
+ *
+ * Records reach the AsyncLogWriter's writer thread in batches, and a record of one thread can arrive in a
+ * later batch than a more recent record of another thread. The sink therefore holds records back in a
+ * reorder buffer and only writes those older than a watermark, the earliest simulation time at which a
+ * record can still be logged. The writer thread takes the watermark before collecting every batch. In
+ * virtual time the watermark is exact: a thread logging at time t keeps the clock at t until it has
+ * submitted the record. In real time it lags the clock by a reorder window, and records arriving later
+ * than that are written as they come and counted
+ */
+public class MergedLogSink implements LogSink {
+
+    // Header of the merged stream. Objects whose log starts with these columns are merged
+    public static final String HEADER = "Timestamp,Object Name,Event";
+
+    // Time in nanoseconds the watermark lags the clock in real time
+    private static final long REAL_TIME_REORDER_WINDOW = 100_000_000;
+
+    /**
+     * Record held in the reorder buffer until the watermark passes it
+     */
+    private static final class HeldRecord {
+        private final long time;
+        private final long sequence;
+        private final CharSequence row;
+
+        private HeldRecord(long time, long sequence, CharSequence row) {
+            this.time = time;
+            this.sequence = sequence;
+            this.row = row;
+        }
+    }
+
+    // Sink the merged stream is written to
+    private LogSink delegate;
+
+    // Clock of the simulation run whose objects log to this sink
+    private SimulationClock clock;
+
+    // Coordinator of the zones if every zone runs on its own clock. null otherwise
+    private volatile ZoneCoordinator coordinator;
+
+    // Names of the objects whose records are merged. null to merge all objects
+    private volatile Set<String> objectFilter;
+
+    // Records not written yet, in order of time and then arrival
+    private PriorityQueue<HeldRecord> heldRecords;
+
+    // Arrival number of the next record. Keeps records with the same time in the order they were logged
+    private long sequence;
+
+    // Watermark taken by the writer thread before collecting the current batch
+    private long watermark;
+
+    // Time of the last record written. Records older than it arrived too late to be ordered
+    private long lastWrittenTime;
+
+    // Statistics reported at the end of the simulation
+    private long written;
+    private long late;
+
+    /**
+     * Constructor. Registers the sink with the AsyncLogWriter
+     * @param delegate Sink the merged stream is written to, e.g. a FileLogSink for "logs/combinedLogs.csv"
+     * @param clock Clock of the simulation run whose objects log to this sink
+     */
+    public MergedLogSink(LogSink delegate, SimulationClock clock) {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.heldRecords = new PriorityQueue<>(Comparator.<HeldRecord>comparingLong(record -> record.time).thenComparingLong(record -> record.sequence));
+        this.sequence = 0;
+        this.watermark = Long.MIN_VALUE;
+        this.lastWrittenTime = Long.MIN_VALUE;
+
+        delegate.setHeader(HEADER);
+        AsyncLogWriter.getInstance().register(this);
+    }
+
+    /**
+     * Function to take the watermark from the zone clocks instead of the run's clock when every zone runs on its own clock
+     * @param coordinator Coordinator of the zones
+     */
+    public void setCoordinator(ZoneCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Function to merge only the records of some objects
+     * @param objectNames Names of the objects to keep. null to keep all objects
+     */
+    public void setObjectFilter(Collection<String> objectNames) {
+        this.objectFilter = objectNames == null ? null : new HashSet<>(objectNames);
+    }
+
+    /**
+     * Function to check whether the records of an object are merged
+     * @param objectName Name of the object
+     * @return true if the object passes the filter
+     */
+    public boolean accepts(String objectName) {
+        Set<String> filter = objectFilter;
+        return filter == null || filter.contains(objectName);
+    }
+
+    @Override
+    public void setHeader(String header) {
+        // The merged stream always has its own header
+    }
+
+    @Override
+    public void write(long time, CharSequence row) {
+        // Keep the object name and event columns only. Events stay unformatted until the delegate writes them
+        if(row instanceof LogEvent){
+            heldRecords.add(new HeldRecord(time, sequence++, ((LogEvent) row).withoutTrailingColumns()));
+            return;
+        }
+
+        String text = row.toString();
+        int objectNameEnd = text.indexOf(',');
+        int eventEnd = objectNameEnd < 0 ? -1 : text.indexOf(',', objectNameEnd + 1);
+        if(eventEnd >= 0) text = text.substring(0, eventEnd);
+
+        heldRecords.add(new HeldRecord(time, sequence++, text));
+    }
+
+    @Override
+    public void flush() {
+        // Write the records the watermark has passed, then flush them
+        release(watermark);
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        // No record can arrive anymore, so write all held records
+        release(Long.MAX_VALUE);
+        delegate.close();
+        AsyncLogWriter.getInstance().unregister(this);
+    }
+
+    /**
+     * Function called by the writer thread before collecting a batch. Takes the earliest time at which a record
+     * not collected yet can have been logged
+     */
+    void takeWatermark() {
+        if(clock.getMode() != SimulationClock.Mode.VIRTUAL_TIME){
+            watermark = clock.getCurrentTimeNanos() - REAL_TIME_REORDER_WINDOW;
+            return;
+        }
+
+        ZoneCoordinator zones = coordinator;
+        watermark = zones != null ? zones.getEarliestZoneTime() : clock.getCurrentTimeNanos();
+    }
+
+    /**
+     * Function called by the writer thread after writing a batch. Writes the records older than the watermark
+     */
+    void release() {
+        release(watermark);
+    }
+
+    /**
+     * Function to write the held records older than a time in time order
+     * @param time Records before this time are written
+     */
+    private void release(long time) {
+        while(!heldRecords.isEmpty() && heldRecords.peek().time < time){
+            HeldRecord record = heldRecords.poll();
+            if(record.time < lastWrittenTime) late++;
+            else lastWrittenTime = record.time;
+
+            delegate.write(record.time, record.row);
+            written++;
+        }
+    }
+
+    /**
+     * Function to print the number of merged records and the records that arrived too late to be ordered
+     */
+    public void printReport() {
+        System.out.println(String.format("[Merged Log] %d records, %d out of order", written, late));
+    }
+}
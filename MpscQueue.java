@@ -0,0 +1,160 @@
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * This class is a FIFO queue that many threads add to without taking a lock, and one consumer empties at a time.
+ * Adding an item links a new node after the tail with a single atomic swap, so slave nodes publishing at the same
+ * time never wait for each other or for the consumer. The consumer takes every item linked so far in one pass with
+ * drainTo, in O(number of items taken), and nothing added meanwhile is lost: an item whose node is not linked yet
+ * is taken by the next drain. The consumer side functions are synchronized, so that several threads may consume,
+ * one at a time
+ * @param <E> Type of the items
+ */
+public class MpscQueue<E> {
+
+    /**
+     * Node of the linked list of items
+     */
+    private static final class Node<E> {
+        private E item;
+        private volatile Node<E> next;
+
+        private Node(E item) {
+            this.item = item;
+        }
+    }
+
+    // Last node added. Producers swap in their node here
+    private final AtomicReference<Node<E>> tail;
+
+    // Node before the first item. Its item has been taken already. Guarded by this
+    private Node<E> head;
+
+    // Number of items added and not taken yet. Counted before an item is linked, so it may briefly count an item
+    // that the consumer cannot take yet, but never less than the items it can take
+    private final AtomicInteger size;
+
+    /**
+     * Constructor
+     */
+    public MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * Function to add an item at the end of the queue. Takes no lock
+     * @param item Item to add
+     */
+    public void add(E item) {
+        size.incrementAndGet();
+        link(new Node<>(item));
+    }
+
+    /**
+     * Function to add an item at the end of the queue unless it already holds capacity items. Takes no lock
+     * @param item Item to add
+     * @param capacity Maximum number of items in the queue
+     * @return true if the item was added, false if the queue was full
+     */
+    public boolean offer(E item, int capacity) {
+        // Reserve a place for the item first, so that concurrent producers never take more places than there are
+        int current;
+        do{
+            current = size.get();
+            if(current >= capacity) return false;
+        } while(!size.compareAndSet(current, current + 1));
+
+        link(new Node<>(item));
+        return true;
+    }
+
+    /**
+     * Function to link a node after the tail
+     * @param node Node of the item added
+     */
+    private void link(Node<E> node) {
+        // Swap in the new tail, then link the previous tail to it
+        Node<E> previous = tail.getAndSet(node);
+        previous.next = node;
+    }
+
+    /**
+     * Function to take the first item linked so far
+     * @return the oldest item, or null if no item is linked
+     */
+    public synchronized E poll() {
+        Node<E> next = head.next;
+        if(next == null) return null;
+
+        E item = next.item;
+        next.item = null;
+        head = next;
+        size.decrementAndGet();
+        return item;
+    }
+
+    /**
+     * Function to take every item linked so far, in the order they were added
+     * @param target Collection the items are added to
+     * @return number of items taken
+     */
+    public synchronized int drainTo(Collection<? super E> target) {
+        int drained = 0;
+        for(Node<E> next = head.next; next != null; next = next.next){
+            target.add(next.item);
+
+            // The node becomes the new head, which holds no item
+            next.item = null;
+            head = next;
+            drained++;
+        }
+        size.addAndGet(-drained);
+        return drained;
+    }
+
+    /**
+     * Function to add every item linked so far to a collection, leaving them in the queue
+     * @param target Collection the items are added to
+     */
+    public synchronized void copyTo(Collection<? super E> target) {
+        for(Node<E> next = head.next; next != null; next = next.next) target.add(next.item);
+    }
+
+    /**
+     * Function to add a copy of every item linked so far to a collection, leaving the items in the queue. The items
+     * are copied holding the consumer lock, so that none of them is taken while it is copied
+     * @param target Collection the copies are added to
+     * @param copier Function returning a copy of an item
+     */
+    public synchronized void copyTo(Collection<? super E> target, Function<? super E, ? extends E> copier) {
+        for(Node<E> next = head.next; next != null; next = next.next) target.add(copier.apply(next.item));
+    }
+
+    /**
+     * Function to remove every item linked so far
+     * @return number of items removed
+     */
+    public synchronized int clear() {
+        int cleared = 0;
+        for(Node<E> next = head.next; next != null; next = next.next){
+            next.item = null;
+            head = next;
+            cleared++;
+        }
+        size.addAndGet(-cleared);
+        return cleared;
+    }
+
+    /**
+     * Getter
+     * @return number of items in the queue. Takes no lock
+     */
+    public int size() {
+        return size.get();
+    }
+}
@@ -0,0 +1,87 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class gives every object and field name used in data packets a small integer handle. Packets store the
+ * handles instead of the names, so code on the telemetry path can compare and index by int, and the names are
+ * only looked up when a packet is written out. Handles are never reused and are shared by all simulation runs
+ * in the JVM
+ */
+public final class NameTable {
+
+    // Handle of every name registered so far
+    private static final ConcurrentHashMap<String, Integer> handles = new ConcurrentHashMap<>();
+
+    // Name of every handle, indexed by handle. Replaced by a larger copy when full
+    private static volatile String[] names = new String[256];
+
+    // UTF-8 bytes of the name of every handle, indexed by handle, so that packets are encoded without encoding
+    // their names again. Replaced together with names
+    private static volatile byte[][] encodedNames = new byte[256][];
+
+    // Number of handles given so far. Guarded by NameTable.class
+    private static int count = 0;
+
+    /**
+     * Private constructor. The class only has static functions
+     */
+    private NameTable() {
+    }
+
+    /**
+     * Function to return the handle of a name, registering the name if it has none yet
+     * @param name Object or field name
+     * @return handle of the name
+     */
+    public static int handleOf(String name) {
+        Integer handle = handles.get(name);
+        if(handle != null) return handle;
+
+        synchronized(NameTable.class){
+            handle = handles.get(name);
+            if(handle != null) return handle;
+
+            // Store the name before publishing its handle, so that nameOf finds it for every handle it can be given
+            String[] table = names;
+            byte[][] encodedTable = encodedNames;
+            if(count == table.length){
+                table = Arrays.copyOf(table, table.length * 2);
+                encodedTable = Arrays.copyOf(encodedTable, encodedTable.length * 2);
+            }
+            table[count] = name;
+            encodedTable[count] = name.getBytes(StandardCharsets.UTF_8);
+            encodedNames = encodedTable;
+            names = table;
+
+            handles.put(name, count);
+            return count++;
+        }
+    }
+
+    /**
+     * Function to return the name of a handle
+     * @param handle Handle returned by handleOf
+     * @return name of the handle
+     */
+    public static String nameOf(int handle) {
+        return names[handle];
+    }
+
+    /**
+     * Function to return the UTF-8 bytes of the name of a handle. The array must not be modified
+     * @param handle Handle returned by handleOf
+     * @return UTF-8 bytes of the name
+     */
+    public static byte[] bytesOf(int handle) {
+        return encodedNames[handle];
+    }
+
+    /**
+     * Getter
+     * @return number of names registered so far
+     */
+    public static synchronized int size() {
+        return count;
+    }
+}
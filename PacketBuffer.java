@@ -0,0 +1,325 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * This class is a FIFO buffer of packets with a capacity, used by master nodes for the data packets published by
+ * their slave nodes and the bulk data packets received from other zones. Packets are added without taking a lock
+ * (see MpscQueue) while the buffer has room. Once it is full, the overflow policy decides what happens to the next
+ * packet: the oldest packet is dropped, the new packet is dropped, the publisher waits for room in simulation time,
+ * or the packet is written to a spill file on disk and read back when the buffer is drained. A buffer that is never
+ * drained therefore holds at most its capacity in memory. Overflow events are counted and reported by printReport
+ * @param <E> Type of the packets
+ */
+public class PacketBuffer<E> {
+
+    // What happens to a packet added to a full buffer
+    public enum OverflowPolicy {
+        // The oldest buffered packet is dropped to make room
+        DROP_OLDEST,
+        // The new packet is dropped
+        DROP_NEWEST,
+        // The publisher waits in simulation time until the buffer has room, or drops the packet after the maximum wait
+        BLOCK,
+        // The packet is written to a spill file and read back, after the buffered packets, when the buffer is drained
+        SPILL_TO_DISK
+    }
+
+    /**
+     * Function writing a packet to the spill file
+     */
+    public interface SpillWriter<E> {
+        void write(E packet, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Function reading a packet back from the spill file
+     */
+    public interface SpillReader<E> {
+        E read(DataInputStream in) throws IOException;
+    }
+
+    // Simulation time in ms a blocked publisher waits before checking for room again
+    private static final int BLOCK_STEP_MILLIS = 10;
+
+    // Name of the buffer in the report, e.g. "RoofZone_MasterNode data packets"
+    private final String name;
+
+    // Buffered packets
+    private final MpscQueue<E> queue;
+
+    // Maximum number of packets held in memory
+    private final int capacity;
+
+    // What happens to a packet added to a full buffer
+    private final OverflowPolicy policy;
+
+    // Maximum simulation time in ms a publisher waits for room with the BLOCK policy
+    private final int maxBlockMillis;
+
+    // Function called with every packet the buffer drops or writes to disk, e.g. to give it back to its pool
+    private final Consumer<E> onDiscard;
+
+    // Functions writing and reading the packets of the spill file
+    private final SpillWriter<E> spillWriter;
+    private final SpillReader<E> spillReader;
+
+    // Spill file and the stream writing to it. The stream is opened on the first spill. Guarded by spillLock
+    private final String spillFileName;
+    private DataOutputStream spillOut;
+    private final Object spillLock = new Object();
+
+    // Flag indicating whether the spill file holds packets. While it does, new packets are spilled too, so that
+    // they are read back after the packets spilled before them
+    private volatile boolean spilling;
+
+    // Number of packets in the spill file
+    private volatile int spilledCount;
+
+    // Overflow statistics
+    private final LongAdder droppedOldest = new LongAdder();
+    private final LongAdder droppedNewest = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder blockTimeouts = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder spillErrors = new LongAdder();
+
+    /**
+     * Constructor
+     * @param name Name of the buffer in the report
+     * @param capacity Maximum number of packets held in memory
+     * @param policy What happens to a packet added to a full buffer
+     * @param maxBlockMillis Maximum simulation time in ms a publisher waits for room with the BLOCK policy
+     * @param onDiscard Function called with every packet the buffer drops or writes to disk
+     * @param spillFileName Spill file used with the SPILL_TO_DISK policy
+     * @param spillWriter Function writing a packet to the spill file
+     * @param spillReader Function reading a packet back from the spill file
+     */
+    public PacketBuffer(String name, int capacity, OverflowPolicy policy, int maxBlockMillis, Consumer<E> onDiscard,
+            String spillFileName, SpillWriter<E> spillWriter, SpillReader<E> spillReader) {
+        this.name = name;
+        this.queue = new MpscQueue<>();
+        this.capacity = Math.max(capacity, 1);
+        this.policy = policy;
+        this.maxBlockMillis = maxBlockMillis;
+        this.onDiscard = onDiscard;
+        this.spillFileName = spillFileName;
+        this.spillWriter = spillWriter;
+        this.spillReader = spillReader;
+    }
+
+    /**
+     * Function to add a packet at the end of the buffer. Takes no lock while the buffer has room
+     * @param packet Packet to add
+     */
+    public void add(E packet) {
+        if(!spilling && queue.offer(packet, capacity)) return;
+
+        // The buffer is full
+        switch(policy){
+            case DROP_OLDEST:
+                // Drop packets from the front until the new packet fits. Other publishers may take the room first
+                while(!queue.offer(packet, capacity)){
+                    E oldest = queue.poll();
+                    if(oldest != null){
+                        droppedOldest.increment();
+                        onDiscard.accept(oldest);
+                    }
+                }
+                break;
+            case DROP_NEWEST:
+                droppedNewest.increment();
+                onDiscard.accept(packet);
+                break;
+            case BLOCK:
+                block(packet);
+                break;
+            case SPILL_TO_DISK:
+                spill(packet);
+                break;
+        }
+    }
+
+    /**
+     * Function to wait in simulation time until the buffer has room for a packet. In virtual time, the clock moves
+     * on while the publisher waits, so the consumer gets to drain the buffer. The packet is dropped if the buffer is
+     * still full after the maximum wait, since a buffer that is never drained would block the publisher forever
+     * @param packet Packet to add
+     */
+    private void block(E packet) {
+        blocked.increment();
+        SimulationClock clock = SimulationClock.getInstance();
+        for(int waited = 0; !queue.offer(packet, capacity); waited += BLOCK_STEP_MILLIS){
+            if(waited >= maxBlockMillis){
+                blockTimeouts.increment();
+                onDiscard.accept(packet);
+                return;
+            }
+            clock.waitFor(BLOCK_STEP_MILLIS);
+        }
+    }
+
+    /**
+     * Function to write a packet to the spill file
+     * @param packet Packet to spill
+     */
+    private void spill(E packet) {
+        synchronized(spillLock){
+            // The buffer may have been drained since the packet did not fit
+            if(!spilling && queue.offer(packet, capacity)) return;
+
+            try {
+                if(spillOut == null) spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFileName)));
+                spillWriter.write(packet, spillOut);
+                spilling = true;
+                spilledCount++;
+                spilled.increment();
+            } catch (IOException e) {
+                System.out.println("An error occurred while writing to " + spillFileName);
+                e.printStackTrace();
+                spillErrors.increment();
+            }
+        }
+
+        // The spill file holds the packet from now on
+        onDiscard.accept(packet);
+    }
+
+    /**
+     * Function to move every buffered packet to a collection, in the order they were added, leaving the buffer
+     * empty. Packets in the spill file come after the packets held in memory. A packet added while the buffer is
+     * drained is taken by the next drain
+     * @param target Collection the packets are added to
+     * @return number of packets drained
+     */
+    public int drainTo(Collection<? super E> target) {
+        int drained = queue.drainTo(target);
+        if(spilling) drained += readSpill(target, true);
+        return drained;
+    }
+
+    /**
+     * Function to add every buffered packet to a collection, leaving them in the buffer. Packets in the spill file
+     * are read back as copies
+     * @param target Collection the packets are added to
+     */
+    public void copyTo(Collection<? super E> target) {
+        queue.copyTo(target);
+        if(spilling) readSpill(target, false);
+    }
+
+    /**
+     * Function to add a copy of every buffered packet to a collection, leaving the packets in the buffer. The packets
+     * held in memory are copied before any consumer can take them. Packets in the spill file are read back as copies
+     * @param target Collection the copies are added to
+     * @param copier Function returning a copy of a packet
+     */
+    public void copyTo(Collection<? super E> target, Function<? super E, ? extends E> copier) {
+        queue.copyTo(target, copier);
+        if(spilling) readSpill(target, false);
+    }
+
+    /**
+     * Function to remove every buffered packet, including the packets in the spill file
+     */
+    public void clear() {
+        queue.clear();
+        if(spilling){
+            synchronized(spillLock){
+                closeSpill();
+            }
+        }
+    }
+
+    /**
+     * Function to read the packets of the spill file
+     * @param target Collection the packets are added to
+     * @param consume true to empty the spill file afterwards
+     * @return number of packets read
+     */
+    private int readSpill(Collection<? super E> target, boolean consume) {
+        synchronized(spillLock){
+            if(!spilling) return 0;
+
+            int read = 0;
+            try {
+                spillOut.flush();
+                try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFileName)))){
+                    for(; read < spilledCount; read++) target.add(spillReader.read(in));
+                }
+            } catch (EOFException e) {
+                System.out.println("The spill file " + spillFileName + " ended after " + read + " of " + spilledCount + " packets");
+                spillErrors.increment();
+            } catch (IOException e) {
+                System.out.println("An error occurred while reading " + spillFileName);
+                e.printStackTrace();
+                spillErrors.increment();
+            }
+
+            if(consume) closeSpill();
+            return read;
+        }
+    }
+
+    /**
+     * Function to close and delete the spill file. Must be called holding spillLock
+     */
+    private void closeSpill() {
+        if(spillOut != null){
+            try {
+                spillOut.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            spillOut = null;
+            new File(spillFileName).delete();
+        }
+        spilledCount = 0;
+        spilling = false;
+    }
+
+    /**
+     * Getter
+     * @return number of buffered packets, including the packets in the spill file. Takes no lock
+     */
+    public int size() {
+        return queue.size() + spilledCount;
+    }
+
+    /**
+     * Getter
+     * @return maximum number of packets held in memory
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Getter
+     * @return number of packets dropped, by any policy
+     */
+    public long getDroppedCount() {
+        return droppedOldest.sum() + droppedNewest.sum() + blockTimeouts.sum() + spillErrors.sum();
+    }
+
+    /**
+     * Function to print the overflow events of the buffer, if it ever overflowed
+     */
+    public void printReport() {
+        long oldest = droppedOldest.sum(), newest = droppedNewest.sum(), waits = blocked.sum(), spills = spilled.sum();
+        if(oldest + newest + waits + spills + spillErrors.sum() == 0) return;
+
+        System.out.println(String.format("[Buffer] %s: capacity %d, %s, %d dropped oldest, %d dropped newest, %d blocked (%d timed out), %d spilled (%d errors)",
+            name, capacity, policy, oldest, newest, waits, blockTimeouts.sum(), spills, spillErrors.sum()));
+    }
+}
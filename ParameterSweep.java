@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs the construction site simulation for every combination of a set of parameter values,
+ * several runs at a time in the same JVM. Every run has its own virtual-time SimulationClock and its own
+ * output directory, so runs do not share any simulation state. A table summarizing the packets delivered
+ * to the master zone by every run is printed at the end
+ */
+public class ParameterSweep {
+
+    /**
+     * Parameters and results of one simulation run
+     */
+    private static final class SweepRun {
+        private final int index;
+        private final int runTimeStep;
+        private final int RTT_to_Master_Node;
+        private final int RTT_between_gateways;
+        private final int BLE_Transmission_Rate;
+        private final int WIFI_Transmission_Rate;
+
+        // Results, filled in once the run has finished
+        private long bulkPackets;
+        private long dataPackets;
+        private long meanLatency;
+        private long p99Latency;
+        private long wallTime;
+
+        private SweepRun(int index, int runTimeStep, int RTT_to_Master_Node, int RTT_between_gateways,
+                int BLE_Transmission_Rate, int WIFI_Transmission_Rate) {
+            this.index = index;
+            this.runTimeStep = runTimeStep;
+            this.RTT_to_Master_Node = RTT_to_Master_Node;
+            this.RTT_between_gateways = RTT_between_gateways;
+            this.BLE_Transmission_Rate = BLE_Transmission_Rate;
+            this.WIFI_Transmission_Rate = WIFI_Transmission_Rate;
+        }
+    }
+
+    public static void main(String[] args) {
+
+        // Parameter values to sweep. Every combination is simulated
+        int[] runTimeSteps = {20, 50}; //ms
+        int[] RTTs_to_Master_Node = {20, 40}; //ms
+        int[] RTTs_between_gateways = {100, 200}; //ms
+        int[] BLE_Transmission_Rates = {100}; //kbps
+        int[] WIFI_Transmission_Rates = {2000}; //kbps
+        int duration = 30; // seconds of simulation time per run
+
+        // Number of runs executed at the same time
+        int parallelRuns = Runtime.getRuntime().availableProcessors();
+
+        // Every run writes its logs to its own subdirectory
+        String outputDirectory = "logs/sweep/";
+
+        // Build the list of runs
+        ArrayList<SweepRun> runs = new ArrayList<>();
+        for(int runTimeStep : runTimeSteps)
+            for(int RTT_to_Master_Node : RTTs_to_Master_Node)
+                for(int RTT_between_gateways : RTTs_between_gateways)
+                    for(int BLE_Transmission_Rate : BLE_Transmission_Rates)
+                        for(int WIFI_Transmission_Rate : WIFI_Transmission_Rates)
+                            runs.add(new SweepRun(runs.size() + 1, runTimeStep, RTT_to_Master_Node, RTT_between_gateways,
+                                BLE_Transmission_Rate, WIFI_Transmission_Rate));
+
+        System.out.println(String.format("[Sweep Started] %d runs, %d at a time", runs.size(), parallelRuns));
+        long sweepStart = System.nanoTime();
+
+        // Execute the runs concurrently
+        ExecutorService pool = Executors.newFixedThreadPool(parallelRuns);
+        ArrayList<Future<?>> results = new ArrayList<>();
+        for(SweepRun run : runs)
+            results.add(pool.submit(() -> execute(run, duration, String.format("%srun%03d/", outputDirectory, run.index))));
+
+        // Wait for all runs to finish
+        for(Future<?> result : results){
+            try {
+                result.get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        pool.shutdown();
+
+        // Wait for the log records still queued to be written
+        AsyncLogWriter.getInstance().drain();
+        LogCompressor.getInstance().drain();
+
+        printSummary(runs);
+        System.out.println(String.format("[Sweep Ended] %.1f s", (System.nanoTime() - sweepStart) / 1e9));
+    }
+
+    // Method to execute one simulation run on the calling thread with its own clock and output directory
+    private static void execute(SweepRun run, int duration, String directory) {
+        long wallStart = System.nanoTime();
+        SimulationClock clock = SimulationClock.createVirtualClock();
+
+        // Every object of the run, and every thread it starts, uses the run's clock
+        clock.runBound(() -> {
+            SimulationObject.setOutputDirectory(directory);
+
+            // Merge the events of the run's objects into one time-ordered log
+            MergedLogSink mergedLog = new MergedLogSink(SimulationObject.createCsvSink(directory + "combinedLogs.csv"), clock);
+            SimulationObject.setMergedLog(mergedLog);
+
+            // Build the site with the run's parameters and initialize the fields of its devices
+            HashMap<String, Zone> zones = Simulation.createSite(run.runTimeStep, run.RTT_to_Master_Node, run.RTT_between_gateways,
+                run.BLE_Transmission_Rate, run.WIFI_Transmission_Rate);
+            for(Zone zone : zones.values()) zone.initFields();
+
+            // The calling thread takes part in virtual time so that the clock does not advance while zones are still being started
+            clock.attachCurrentThread();
+            for(Zone zone : zones.values()) zone.start();
+
+            // Run for the duration
+            clock.waitFor(duration * 1000);
+
+            // Collect the results at the master zone. The clock cannot advance while this thread is participating,
+            // so the results are those at the end of the duration
+            MasterNode masterNode = zones.get("MasterZone").getMasterNode();
+            run.bulkPackets = masterNode.getReceivedBulkPacketCount();
+            run.dataPackets = masterNode.getReceivedDataPacketCount();
+            run.meanLatency = masterNode.getMeanDataPacketLatency();
+            run.p99Latency = masterNode.getZoneLatency().getPercentile(99);
+
+            // Stop all zones and let their threads run to completion before closing the merged log
+            for(Zone zone : zones.values()) zone.terminate();
+            clock.detachCurrentThread();
+            clock.awaitIdle();
+            AsyncLogWriter.getInstance().close(mergedLog);
+
+            // Report the tick overruns of the run, if its objects were run by the shared tick scheduler
+            TickScheduler.getInstance().printReport(clock);
+        });
+
+        run.wallTime = System.nanoTime() - wallStart;
+    }
+
+    // Method to print one row per run with its parameters and the packets delivered to the master zone
+    private static void printSummary(ArrayList<SweepRun> runs) {
+        System.out.println(String.format("%-4s %8s %10s %10s %8s %8s %8s %8s %12s %12s %8s",
+            "Run", "Step(ms)", "RTT_MN(ms)", "RTT_GW(ms)", "BLE", "WIFI", "Bulk", "Packets", "Latency(ms)", "p99(ms)", "Wall(s)"));
+
+        for(SweepRun run : runs){
+            System.out.println(String.format("%-4d %8d %10d %10d %8d %8d %8d %8d %12.3f %12.3f %8.2f",
+                run.index, run.runTimeStep, run.RTT_to_Master_Node, run.RTT_between_gateways,
+                run.BLE_Transmission_Rate, run.WIFI_Transmission_Rate,
+                run.bulkPackets, run.dataPackets, run.meanLatency / 1e6, run.p99Latency / 1e6, run.wallTime / 1e9));
+        }
+    }
+}
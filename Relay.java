@@ -194,11 +194,8 @@ public class Relay extends Device {
             // Join the header column names using commas
             String header = String.join(",",header_columns);
 
-            synchronized(writer){
-                // Write the header to the output CSV file
-                writer.println(header);
-            }
-            hasAddedHeader = true;
+            // Set the header of the output CSV file
+            setLogHeader(header);
         }
 
         ArrayList<String> values = new ArrayList<>();
@@ -217,10 +214,8 @@ public class Relay extends Device {
         // Join the values using commas
         String joined_values = String.join(",", values);
 
-        synchronized(writer){
-            // Write row to output log file
-            writer.println(getCurrentTimestamp()+"," + object_name + "," + joined_values);
-        }
+        // Log the row if the log policy lets it through. The timestamp is only formatted by the writer thread
+        writeStateRecord(object_name + "," + joined_values);
     }
 
     /**
@@ -256,7 +251,7 @@ public class Relay extends Device {
                 else if (arguments[1].equalsIgnoreCase("false")) success = switchOff(position);
                 
                 // Return new packet encapsulating the user provided parameters
-                packet = new DataPacket(this.object_name, arguments[0], arguments[1], 1, getCurrentTimestamp());
+                packet = packetPool.acquire(objectHandle, NameTable.handleOf(arguments[0]), arguments[1], 1, getCurrentTimeNanos());
                 
             } catch (NumberFormatException e) {
                 e.printStackTrace();
@@ -264,22 +259,29 @@ public class Relay extends Device {
         }
 
         // If command is GET
-        if(command.equalsIgnoreCase("GET")){
-            synchronized(fieldValues){
-                // Check if the field to retrieve is in the fieldValues map
-                if(fieldValues.containsKey(arguments[0])) {
-
-                    // If it is, encapsulate its value in a DataPacket
-                    packet = new DataPacket(this.getObject_name(), arguments[0], fieldValues.get(arguments[0]),1,getCurrentTimestamp());                 
-                    success = true;    
-                }
-            }
-        }
+        if(command.equalsIgnoreCase("GET")) return get(arguments[0]);
 
         // Return the results after executing the command
         return new ExecutionResult(success, packet); 
     }
 
+    /**
+     * Function to read a field of the relay without building a command
+     * @param field Name of the field
+     * @return result holding a packet owned by the caller, or a failed result if the field does not exist
+     */
+    @Override
+    public ExecutionResult get(String field){
+        synchronized(fieldValues){
+            // Check if the field to retrieve is in the fieldValues map
+            String value = fieldValues.get(field);
+            if(value == null) return ExecutionResult.FAILED;
+
+            // If it is, encapsulate its value in a pooled DataPacket
+            return packetPool.acquire(objectHandle, NameTable.handleOf(field), value, 1, getCurrentTimeNanos()).asResult();
+        }
+    }
+
     /**
      * Function to terminate the Relay's simulation lifetime thread
      */
@@ -0,0 +1,150 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is a LogSink writing CSV records to a series of gzip-compressed files instead of one growing file.
+ * A new file (segment) is started when the current one reaches a size, or when the records reach the end of a
+ * period of simulation time. For the output file "logs/name_output.csv", the segments are
+ * "logs/name_output.000.csv.gz", "logs/name_output.001.csv.gz" and so on, each starting with the header, so every
+ * segment is a complete CSV file. The records are formatted as in FileLogSink and handed in chunks to the
+ * LogCompressor, which compresses them on its own thread
+ */
+public class RotatingLogSink implements LogSink {
+
+    // Size in characters of the chunks handed to the compressor
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // Name of the output file without its extension, and the extension, e.g. "logs/name_output" and ".csv"
+    private String baseName;
+    private String extension;
+
+    // Size in characters after which a new segment is started. 0 for no limit
+    private long maxSegmentSize;
+
+    // Simulation time in nanoseconds covered by one segment. 0 for no limit
+    private long segmentPeriod;
+
+    // Header written at the start of every segment. Set by the logging object, read by the writer thread
+    private volatile String header;
+
+    // Number of the next segment
+    private int nextSegment;
+
+    // Name of the current segment. null if no segment is open
+    private String segmentFileName;
+
+    // Size in characters of the current segment
+    private long segmentSize;
+
+    // Simulation time at which the current segment ends
+    private long segmentEnd;
+
+    // Text of the current segment not handed to the compressor yet
+    private StringBuilder chunk;
+
+    // Flag indicating whether the sink has been closed
+    private boolean closed;
+
+    /**
+     * Constructor. Deletes the segments of a previous run with the same output file name
+     * @param fileName Name of the output file, e.g. "logs/name_output.csv"
+     * @param maxSegmentSize Size in characters after which a new segment is started. 0 for no limit
+     * @param segmentPeriod Simulation time in nanoseconds covered by one segment. 0 for no limit
+     */
+    public RotatingLogSink(String fileName, long maxSegmentSize, long segmentPeriod) {
+        int extensionStart = fileName.lastIndexOf('.');
+        if(extensionStart <= fileName.lastIndexOf('/')) extensionStart = fileName.length();
+        this.baseName = fileName.substring(0, extensionStart);
+        this.extension = fileName.substring(extensionStart);
+        this.maxSegmentSize = maxSegmentSize;
+        this.segmentPeriod = segmentPeriod;
+        this.nextSegment = 0;
+        this.chunk = new StringBuilder(CHUNK_SIZE + 1024);
+        this.closed = false;
+
+        // Delete the segments of a previous run, which may be more than this run writes
+        for(int segment = 0; new File(getSegmentFileName(segment)).delete(); segment++);
+    }
+
+    @Override
+    public void setHeader(String header) {
+        if(this.header == null) this.header = header;
+    }
+
+    @Override
+    public void write(long time, CharSequence row) {
+        if(closed) return;
+
+        // Start a new segment if the current one is full or its period is over
+        if(segmentFileName != null && ((maxSegmentSize > 0 && segmentSize >= maxSegmentSize) || time >= segmentEnd)) closeSegment();
+        if(segmentFileName == null) openSegment(time);
+
+        int start = chunk.length();
+        TimeFormat.appendSeconds(chunk, time).append(',');
+
+        // Events are formatted here, straight into the chunk
+        if(row instanceof LogEvent) ((LogEvent) row).appendTo(chunk);
+        else chunk.append(row);
+        chunk.append(System.lineSeparator());
+        segmentSize += chunk.length() - start;
+
+        if(chunk.length() >= CHUNK_SIZE) handOff(false);
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to do. A gzip stream is only complete once its segment ends, so handing the compressor the text
+        // written so far would only make the chunks smaller
+    }
+
+    @Override
+    public void close() {
+        if(closed) return;
+
+        // Write the header even if no record was logged
+        if(segmentFileName == null && nextSegment == 0 && header != null) openSegment(0);
+        if(segmentFileName != null) closeSegment();
+        closed = true;
+    }
+
+    /**
+     * Function to start a new segment
+     * @param time Time of the first record of the segment
+     */
+    private void openSegment(long time) {
+        segmentFileName = getSegmentFileName(nextSegment++);
+        segmentSize = 0;
+        segmentEnd = segmentPeriod > 0 ? (Math.floorDiv(time, segmentPeriod) + 1) * segmentPeriod : Long.MAX_VALUE;
+
+        if(header != null){
+            chunk.append(header).append(System.lineSeparator());
+            segmentSize += header.length() + System.lineSeparator().length();
+        }
+    }
+
+    /**
+     * Function to end the current segment. The compressor closes its file after the remaining text
+     */
+    private void closeSegment() {
+        handOff(true);
+        segmentFileName = null;
+    }
+
+    /**
+     * Function to hand the text of the current segment not handed yet to the compressor
+     * @param last true if the text ends the segment
+     */
+    private void handOff(boolean last) {
+        LogCompressor.getInstance().submit(segmentFileName, chunk.toString().getBytes(StandardCharsets.UTF_8), last);
+        chunk.setLength(0);
+    }
+
+    /**
+     * Function to generate the file name of a segment
+     * @param segment Number of the segment
+     * @return file name of the segment
+     */
+    private String getSegmentFileName(int segment) {
+        return String.format("%s.%03d%s.gz", baseName, segment, extension);
+    }
+}
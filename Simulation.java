@@ -1,7 +1,5 @@
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.Queue;
@@ -13,6 +11,10 @@ public class Simulation {
     static Scanner scanner = new Scanner(System.in);
     // A map to hold all simulation objects (zones and nodes)
     static HashMap<String, Zone> simulationObjects = new HashMap<>(); 
+    // Coordinator running every zone as its own logical process. null if all zones share one clock
+    static ZoneCoordinator coordinator = null;
+    // Time-ordered log of the events of all objects. null if events are not merged
+    static MergedLogSink mergedLog = null;
 
     public static void main(String[] args) {
         
@@ -25,8 +27,70 @@ public class Simulation {
         int duration = 30; // seconds
         // Set the simulation clock scale factor
         SimulationClock.getInstance().setScaleFactor(1);
+        // Set the simulation clock mode. VIRTUAL_TIME runs the same scenario without waiting in wall-clock time
+        SimulationClock.getInstance().setMode(SimulationClock.Mode.REAL_TIME);
+        // Set how the clock waits in real time. PRECISE keeps sub-millisecond delays accurate at high scale factors
+        SimulationClock.getInstance().setWaitStrategy(SimulationClock.WaitStrategy.SLEEP);
+        // Set the kind of threads running the uControllers. VIRTUAL_THREADS allows models with thousands of nodes.
+        // SCHEDULER runs all uController ticks at fixed rates on a shared worker pool, bounded in REAL_TIME only. In
+        // VIRTUAL_TIME the pool grows with the ticks blocked at the same instant, and the Gate and Speaker controllers
+        // overrun every tick, so a run logs about 1.8x the records and 1.9x the data packets of the thread modes
+        SimulationObject.setExecutionMode(SimulationObject.ExecutionMode.PLATFORM_THREADS);
+        // Set the format of the object log files. BINARY files are much smaller and are converted back to CSV
+        // with BinaryLogConverter. ROTATING_GZIP splits the CSV logs, the merged log and Database.csv into
+        // compressed files of at most 64 MB (uncompressed) each, for long runs
+        SimulationObject.setLogFormat(SimulationObject.LogFormat.CSV);
+        SimulationObject.setLogRotation(64L * 1024 * 1024, 0);
+        // Run every zone as its own logical process with its own clock, synchronized through the gateway links.
+        // Zones then advance in parallel. Requires VIRTUAL_TIME
+        boolean parallelZones = false;
+        // Merge the events of all objects into one time-ordered log, logs/combinedLogs.csv, as the objects run.
+        // Call mergedLog.setObjectFilter to keep only some objects. Without per-object logs only the merged log is written
+        boolean mergeEvents = true;
+        SimulationObject.setPerObjectLogs(true);
+        // Choose which records are logged. By default every record is. For example, device state rows can be written
+        // only when they change, high-rate packet events sampled (1 in N per object), and the steps of requests dropped
+        // with LogPolicy.getInstance().setLevel(LogPolicy.Category.COMMAND, LogPolicy.Level.INFO)
+        LogPolicy.getInstance().setChangeOnlyState(false);
+        LogPolicy.getInstance().setSampling(LogPolicy.Category.PACKET, 1);
+        // Compress the bulk data packets forwarded between zones with a dictionary of names and deltas of times and
+        // values. The packets arrive unchanged, but fewer bytes cross the WiFi links, so each hop takes less time
+        uController.setBulkCompression(true);
+        // Bound the packet buffers of the master nodes, since the master nodes of Zone2 and Zone3 never drain them.
+        // A full buffer drops its oldest packet (DROP_OLDEST), the new packet (DROP_NEWEST), makes the publisher wait
+        // up to the given simulation time (BLOCK), or writes the packet to a spill file in the logs folder (SPILL_TO_DISK)
+        MasterNode.setBufferCapacities(4096, 256);
+        MasterNode.setOverflowPolicy(PacketBuffer.OverflowPolicy.DROP_OLDEST, 1000);
+
+        if(mergeEvents){
+            LogSink mergedFile = SimulationObject.getLogFormat() == SimulationObject.LogFormat.BINARY
+                ? new BinaryLogSink("logs/combinedLogs.bin") : SimulationObject.createCsvSink("logs/combinedLogs.csv");
+            mergedLog = new MergedLogSink(mergedFile, SimulationClock.getInstance());
+            SimulationObject.setMergedLog(mergedLog);
+        }
 
+        // Build the construction site
+        simulationObjects = createSite(runTimeStep, RTT_to_Master_Node, RTT_between_gateways, BLE_Transmission_Rate, WIFI_Transmission_Rate);
 
+        // Give every zone its own clock if the zones run in parallel
+        if(parallelZones) coordinator = new ZoneCoordinator(simulationObjects.values());
+        if(coordinator != null && mergedLog != null) mergedLog.setCoordinator(coordinator);
+        
+        // Uncomment the line below to activate the menu, if needed
+        // while(menu());
+        
+        // Initialize fields, start the simulation, and then end it after 10 seconds
+        initFields();
+        startSimulation();
+        if(coordinator != null) coordinator.runUntil(duration * 1_000_000_000L);
+        else SimulationClock.getInstance().waitFor(duration * 1000);
+        endSimulation();
+    }
+        
+    // Method to build the zones, nodes and links of the simulated construction site for a set of parameters.
+    // Objects write their logs to the output directory of the calling thread
+    static HashMap<String, Zone> createSite(int runTimeStep, int RTT_to_Master_Node, int RTT_between_gateways,
+            int BLE_Transmission_Rate, int WIFI_Transmission_Rate) {
 
         // List to store extra slave nodes
         ArrayList<SlaveNode> extraSlaveNodes = new ArrayList<>();
@@ -49,63 +113,63 @@ public class Simulation {
         // Create a pulley lift to be attached to actuator
         HighPowerDevice pulleyLift = new HighPowerDevice("RoofZone_PulleyLift");
 
+        // Devices and fields read by the roof zone algorithm, and their handles, found on the algorithm's first run
+        String[][] roofZoneFields = {
+            {"RoofZone_UltrasonicNode1_UltrasonicSensor", "Distance"},
+            {"RoofZone_UltrasonicNode2_UltrasonicSensor", "Distance"},
+            {"RoofZone_UltrasonicNode3_UltrasonicSensor", "Distance"},
+            {"RoofZone_UltrasonicNode4_UltrasonicSensor", "Distance"},
+            {"RoofZone_UltrasonicNode5_UltrasonicSensor", "Distance"},
+            {"RoofZone_WindNode_WindSensor", "Wind Speed"},
+            {"RoofZone_SmartRopeNode1_SmartRope", "Is Attached"},
+            {"RoofZone_SmartRopeNode2_SmartRope", "Is Attached"},
+            {"RoofZone_SmartRopeNode3_SmartRope", "Is Attached"}
+        };
+        int[] roofZoneHandles = new int[roofZoneFields.length];
+        Arrays.fill(roofZoneHandles, -1);
+
+        // Packets drained from the master node buffer on every aggregation. Reused, since the loop runs on one thread
+        ArrayList<DataPacket> roofZonePackets = new ArrayList<>();
+
         // Define the processing algorithm for the roof zone master node uController
         ProcessingAlgorithm roofZoneAlgo = (uController controller)->{
+
+            // Find the handles of the fields once, when the controller already belongs to its master node
+            if(roofZoneHandles[0] < 0)
+                for(int i = 0; i < roofZoneFields.length; i++)
+                    roofZoneHandles[i] = controller.getFieldHandle(roofZoneFields[i][0], roofZoneFields[i][1]);
             
+            // Exit until every field has received a number. The values were parsed once, when their packets arrived
+            for(int handle : roofZoneHandles) if(!controller.hasValue(handle)) return;
+
             // Get current values from various sensors
-            String distance1 = controller.getCurrentValue( "RoofZone_UltrasonicNode1_UltrasonicSensor", "Distance");
-            String distance2 = controller.getCurrentValue( "RoofZone_UltrasonicNode2_UltrasonicSensor", "Distance");
-            String distance3 = controller.getCurrentValue( "RoofZone_UltrasonicNode3_UltrasonicSensor", "Distance");
-            String distance4 = controller.getCurrentValue( "RoofZone_UltrasonicNode4_UltrasonicSensor", "Distance");
-            String distance5 = controller.getCurrentValue( "RoofZone_UltrasonicNode5_UltrasonicSensor", "Distance");
+            double distance1 = controller.getCurrentDouble(roofZoneHandles[0]);
+            double distance2 = controller.getCurrentDouble(roofZoneHandles[1]);
+            double distance3 = controller.getCurrentDouble(roofZoneHandles[2]);
+            double distance4 = controller.getCurrentDouble(roofZoneHandles[3]);
+            double distance5 = controller.getCurrentDouble(roofZoneHandles[4]);
             
-            String windSpeed = controller.getCurrentValue("RoofZone_WindNode_WindSensor", "Wind Speed");
+            double windSpeed = controller.getCurrentDouble(roofZoneHandles[5]);
             
-            String ropeAttached1 = controller.getCurrentValue("RoofZone_SmartRopeNode1_SmartRope", "Is Attached");
-            String ropeAttached2 = controller.getCurrentValue("RoofZone_SmartRopeNode2_SmartRope", "Is Attached");
-            String ropeAttached3 = controller.getCurrentValue("RoofZone_SmartRopeNode3_SmartRope", "Is Attached");         
-
-            // Convert the string values to float for processing
-            Float distance1_float;
-            Float distance2_float;
-            Float distance3_float;
-            Float distance4_float;
-            Float distance5_float;
-
-            Float windSpeed_float;
-
-            Float ropeAttached1_float;
-            Float ropeAttached2_float;
-            Float ropeAttached3_float;
-
-            try{
-                distance1_float = Float.parseFloat(distance1);
-                distance2_float = Float.parseFloat(distance2);
-                distance3_float = Float.parseFloat(distance3);
-                distance4_float = Float.parseFloat(distance4);
-                distance5_float = Float.parseFloat(distance5);
-
-                windSpeed_float =  Float.parseFloat(windSpeed);
-
-                ropeAttached1_float = Float.parseFloat(ropeAttached1);
-                ropeAttached2_float = Float.parseFloat(ropeAttached2);
-                ropeAttached3_float = Float.parseFloat(ropeAttached3);
-            }catch(Exception e){
-                return; // Exit if there is a parsing error
-            }
+            boolean ropeAttached1 = controller.getCurrentBoolean(roofZoneHandles[6]);
+            boolean ropeAttached2 = controller.getCurrentBoolean(roofZoneHandles[7]);
+            boolean ropeAttached3 = controller.getCurrentBoolean(roofZoneHandles[8]);
             
-            // Safety check: if any rope is not attached, trigger buzzer and message
-            if(ropeAttached1_float == 0 || ropeAttached2_float == 0 || ropeAttached3_float == 0){
-                controller.updateSwitchIn("RoofZone_BuzzerNode", "RoofZone_BuzzerNode_relay", "0","true");
-                controller.setFieldIn("RoofZone_SpeakerNode", "RoofZone_SpeakerNode_speaker", "Played Message", "One or more safety ropes not attached!!!!",32);
+            // Safety check: if any rope is not attached, trigger buzzer and message.
+            // Both commands are sent at once and the controller waits for their acknowledgements together
+            if(!ropeAttached1 || !ropeAttached2 || !ropeAttached3){
+                controller.awaitAll(
+                    controller.updateSwitchInAsync("RoofZone_BuzzerNode", "RoofZone_BuzzerNode_relay", "0","true"),
+                    controller.setFieldInAsync("RoofZone_SpeakerNode", "RoofZone_SpeakerNode_speaker", "Played Message", "One or more safety ropes not attached!!!!",32));
             }
             else{
-                controller.updateSwitchIn("RoofZone_BuzzerNode", "RoofZone_BuzzerNode_relay", "0","false");
-                controller.setFieldIn("RoofZone_SpeakerNode", "RoofZone_SpeakerNode_speaker", "Played Message", "",0);
+                controller.awaitAll(
+                    controller.updateSwitchInAsync("RoofZone_BuzzerNode", "RoofZone_BuzzerNode_relay", "0","false"),
+                    controller.setFieldInAsync("RoofZone_SpeakerNode", "RoofZone_SpeakerNode_speaker", "Played Message", "",0));
             }
             
             // // Safety check: if the worker is too close to the edge, trigger buzzer and message
-            // if(distance1_float<100 || distance2_float < 100 || distance3_float<100 || distance4_float<100 || distance4_float<100 || distance5_float<100){
+            // if(distance1<100 || distance2 < 100 || distance3<100 || distance4<100 || distance4<100 || distance5<100){
             //     controller.updateSwitchIn("RoofZone_BuzzerNode", "RoofZone_BuzzerNode_relay", "0","true");
             //     controller.setFieldIn("RoofZone_SpeakerNode", "RoofZone_SpeakerNode_speaker", "Played Message", "Worker too close to edge",32);
             // }else{
@@ -114,19 +178,21 @@ public class Simulation {
             // }
 
             // // Control the actuator node based on wind speed
-            // if(windSpeed_float < 20){
+            // if(windSpeed < 20){
             //     controller.updateSwitchIn("RoofZone_ActuatorNode", "RoofZone_ActuatorNode_relay", "0", "true");
             // }else{
             //     controller.updateSwitchIn("RoofZone_ActuatorNode", "RoofZone_ActuatorNode_relay", "0","false");
             // }
 
-            // If more than 20 packets are buffered, aggregate and forward them
-            Queue<DataPacket> packets = controller.getBufferedDataPackets();
-            if(packets.size() > 20){
-                controller.clearBufferedDataPackets();
-                BulkDataPacket bigBoi = new BulkDataPacket(controller.getParentMasterNode().getObject_name(), controller.getCurrentTimestamp());
-                bigBoi.addPackets(packets);
-                controller.exportState(String.format("Aggregated (%d) data packets to forward to control zone",packets.size()));
+            // If more than 20 packets are buffered, aggregate and forward them. Draining the buffer loses no packet,
+            // even one received while it is drained
+            if(controller.getBufferedDataPacketCount() > 20){
+                roofZonePackets.clear();
+                int drained = controller.drainBufferedDataPackets(roofZonePackets);
+                BulkDataPacket bigBoi = new BulkDataPacket(controller.getParentMasterNode().getObject_name(), controller.getCurrentTimeNanos());
+                bigBoi.addPackets(roofZonePackets);
+                roofZonePackets.clear();
+                controller.exportState(String.format("Aggregated (%d) data packets to forward to control zone",drained));
                 controller.forwardToZones(bigBoi, "Zone2","Zone3","MasterZone");
             }
         };
@@ -153,26 +219,13 @@ public class Simulation {
             // Retrieve any bulk data packets received by the master zone
             Queue<BulkDataPacket> bulkDataPackets = cont.getReceivedBulkDataPackets(true);
         
-            // If there are any bulk data packets, write them to a CSV log
-            if(!bulkDataPackets.isEmpty()){
-                try{
-                    // Open a file writer to append data to the CSV file
-                    FileWriter fileWriter = new FileWriter("logs/Database.csv", true);
-                    PrintWriter writer = new PrintWriter(fileWriter);
-                        
-                    // Loop through all bulk packets and their individual data packets
-                    for(BulkDataPacket bulkPacket : bulkDataPackets)
-                        for(DataPacket packet : bulkPacket.getPackets())
-                            writer.println(cont.getCurrentTimestamp() + "," + packet.toString());
-                
-                    // Flush and close the writer to save data
-                    writer.flush();
-                    writer.close();
-                    
-                } catch (IOException e) {
-                    e.printStackTrace(); // Print stack trace in case of IO exception
+            // Store the individual data packets of all bulk packets in the database. The time of arrival is added by the writer thread.
+            // The master zone is the last owner of the packets, so they go back to their pools once stored
+            for(BulkDataPacket bulkPacket : bulkDataPackets)
+                for(DataPacket packet : bulkPacket.getPackets()){
+                    cont.writeDatabaseRecord(packet.toString());
+                    packet.release();
                 }
-            }
         }, RTT_to_Master_Node, BLE_Transmission_Rate, WIFI_Transmission_Rate);
         
         // Connect the roof zone to zone2, and zone2 to zone3, and zone3 to master zone
@@ -180,22 +233,16 @@ public class Simulation {
         zone2.connectToZone(zone3, RTT_between_gateways);
         zone3.connectToZone(masterZone, RTT_between_gateways);
         
-        // Add all zones and master zone to the simulation objects map
-        simulationObjects.put(roofZone.getObject_name(), roofZone);
-        simulationObjects.put(zone2.getObject_name(), zone2);
-        simulationObjects.put(zone3.getObject_name(), zone3);
-        simulationObjects.put(masterZone.getObject_name(), masterZone);
-        
-        // Uncomment the line below to activate the menu, if needed
-        // while(menu());
-        
-        // Initialize fields, start the simulation, and then end it after 10 seconds
-        initFields();
-        startSimulation();
-        SimulationClock.getInstance().waitFor(duration * 1000);
-        endSimulation();
+        // Add all zones and master zone to the map of zones
+        HashMap<String, Zone> zones = new HashMap<>();
+        zones.put(roofZone.getObject_name(), roofZone);
+        zones.put(zone2.getObject_name(), zone2);
+        zones.put(zone3.getObject_name(), zone3);
+        zones.put(masterZone.getObject_name(), masterZone);
+
+        return zones;
     }
-        
+
         // Method to create a general slave node with a given set of parameters
     static SlaveNode create_general_slave_node(String nodeName, String deviceName, String fieldName, int fieldSize,
             int runTimeStep, int RTT_to_Zone_Controller, int BLE_transmission_rate) {
@@ -268,6 +315,9 @@ public class Simulation {
     static void startSimulation() {
         SimulationClock.getInstance().reset(); // Reset the simulation clock
 
+        // The main thread takes part in virtual time so that the clock does not advance while zones are still being started
+        SimulationClock.getInstance().attachCurrentThread();
+
         // Loop through all simulation objects and start any inactive zones
         for (Entry<String, Zone> entry : simulationObjects.entrySet())
             if (!entry.getValue().isAlive())
@@ -283,6 +333,48 @@ public class Simulation {
             if (entry.getValue().isAlive())
                 entry.getValue().terminate();
 
+        // Let the remaining threads run to completion in virtual time
+        SimulationClock.getInstance().detachCurrentThread();
+        if(coordinator != null){
+            coordinator.runUntil(Long.MAX_VALUE);
+            coordinator.printReport();
+        }
+        else SimulationClock.getInstance().awaitIdle();
+
+        // Report the latencies recorded by the master nodes of all zones
+        LatencyHistogram sensorLatency = new LatencyHistogram("Sensor to master node");
+        LatencyHistogram zoneLatency = new LatencyHistogram("Sensor to master zone");
+        LatencyHistogram bulkLatency = new LatencyHistogram("Master node to master zone");
+        LatencyHistogram commandLatency = new LatencyHistogram("Command round trip");
+        for (Zone zone : simulationObjects.values()){
+            sensorLatency.add(zone.getMasterNode().getSensorLatency());
+            zoneLatency.add(zone.getMasterNode().getZoneLatency());
+            bulkLatency.add(zone.getMasterNode().getBulkLatency());
+            commandLatency.add(zone.getMasterNode().getCommandLatency());
+        }
+        sensorLatency.printReport();
+        zoneLatency.printReport();
+        bulkLatency.printReport();
+        commandLatency.printReport();
+
+        // Report the packets dropped, delayed or spilled by full master node buffers, if any
+        for (Zone zone : simulationObjects.values()) zone.getMasterNode().printBufferReport();
+
+        // Report the accuracy achieved by real-time waits
+        SimulationClock.getInstance().printWaitErrorReport();
+
+        // Report tick overruns of objects run by the shared tick scheduler, if any
+        TickScheduler.getInstance().printReport();
+
+        // Wait for the log records still queued to be written, and report dropped and delayed records
+        if(mergedLog != null) AsyncLogWriter.getInstance().close(mergedLog);
+        AsyncLogWriter.getInstance().drain();
+        LogCompressor.getInstance().drain();
+        AsyncLogWriter.getInstance().printReport();
+        LogCompressor.getInstance().printReport();
+        if(mergedLog != null) mergedLog.printReport();
+        LogPolicy.getInstance().printReport();
+
         System.out.println("[Simulation Ended]"); // Notify that the simulation has ended
     }
 }        
@@ -1,80 +1,547 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
 public class SimulationClock {
 
-    // Singleton instance of the SimulationClock to ensure only one instance exists
-    private static SimulationClock instance;
-    
+    // Modes in which the clock can advance the simulation time
+    public enum Mode {
+        // Simulation time follows the wall clock scaled by the scale factor. Waits sleep the calling thread
+        REAL_TIME,
+        // Simulation time is virtual. Waits are scheduled as events and the clock jumps straight to the next event
+        // once every simulation thread is waiting
+        VIRTUAL_TIME
+    }
+
+    // Strategies used to wait in real time
+    public enum WaitStrategy {
+        // Thread.sleep for the scaled number of whole milliseconds. Sub-millisecond delays are lost
+        SLEEP,
+        // parkNanos until shortly before the deadline, then spin for the final stretch.
+        // Keeps simulation time accurate at high scale factors at the cost of some CPU
+        PRECISE
+    }
+
+    // Length of one clock tick in nanoseconds of simulation time. Scheduled events are kept in a
+    // timer wheel keyed on ticks; events falling in the same tick are still ordered by their exact time
+    private static final long TICK_NANOS = 1_000;
+
+    // Singleton instance of the SimulationClock to ensure only one instance exists.
+    // Created eagerly so that getInstance is thread safe without locking
+    private static final SimulationClock instance = new SimulationClock();
+
+    // Clock of the zone the current thread is running for, when zones run as separate logical processes.
+    // null for threads using the singleton instance
+    private static final ThreadLocal<SimulationClock> boundClock = new ThreadLocal<>();
+
     // Start time of the simulation in nanoseconds (initialized when the clock is created)
     private long startTime;
-    
+
     // Factor representing the relationship between simulation delays and real-life delays
     // For example, if scale factor is 100, then simulating a 1 second delay in will be done using a 1/100 seconds delay in the simulation
     // This speeds up the simulation.
     private int scaleFactor = 1;
 
+    // Mode in which the clock advances. Must be set before the simulation starts
+    private Mode mode = Mode.REAL_TIME;
+
+    // Current simulation time in nanoseconds when running in virtual time
+    private long virtualTime;
+
+    // Timer wheel holding the pending events. In virtual time it holds both wait events and action events.
+    // In real time it holds the action events handed to their executors by the timer thread
+    private TimerWheel events;
+
+    // Sequence number given to the next scheduled event
+    private long eventSequence;
+
+    // Number of participating threads that are currently running rather than waiting on the clock.
+    // Virtual time only advances when this number drops to zero
+    private int activeThreads;
+
+    // Flag indicating whether the current thread is a participant counted in activeThreads
+    private ThreadLocal<Boolean> participating;
+
+    // Wait event of every thread, reused for all its waits in virtual time. A thread waits for one event at a time
+    private static final ThreadLocal<SimulationEvent> waitEventOfThread = new ThreadLocal<>();
+
+    // Strategy used by waitFor in real time
+    private WaitStrategy waitStrategy = WaitStrategy.SLEEP;
+
+    // With the PRECISE strategy, remaining time in nanoseconds below which the thread spins instead of parking
+    private long spinThresholdNanos = 100_000;
+
+    // Statistics on the error of real-time waits: actual wait minus requested wait in real nanoseconds
+    private LongAdder waitCount = new LongAdder();
+    private LongAdder totalWaitError = new LongAdder();
+    private AtomicLong maxWaitError = new AtomicLong();
+
+    // Timer thread that hands scheduled actions to their executors in real time. Created on first use
+    private Thread timer;
+
+    // Coordinator synchronizing this clock with the clocks of the other zones. null for the singleton instance
+    private ZoneCoordinator coordinator;
+
+    // In virtual time, only events due before the horizon are dispatched. The coordinator raises the horizon
+    // of every zone's clock one time window at a time. Unbounded for the singleton instance
+    private long horizon;
+
     // Private constructor to initialize the start time with the current nano time
     private SimulationClock(){
         this.startTime = System.nanoTime();
+        this.virtualTime = 0;
+        this.events = new TimerWheel(TICK_NANOS);
+        this.eventSequence = 0;
+        this.activeThreads = 0;
+        this.participating = ThreadLocal.withInitial(() -> false);
+        this.horizon = Long.MAX_VALUE;
     }
 
-    // Public static method to get the singleton instance of the SimulationClock
+    // Private constructor for the virtual-time clock of a zone run as a logical process. Nothing is dispatched
+    // until the coordinator opens the first time window
+    private SimulationClock(ZoneCoordinator coordinator){
+        this();
+        this.mode = Mode.VIRTUAL_TIME;
+        this.coordinator = coordinator;
+        this.horizon = 0;
+    }
+
+    // Public static method to get the SimulationClock of the calling thread: the clock of its zone when zones
+    // run as separate logical processes, and the singleton instance otherwise
     public static SimulationClock getInstance() {
-        // Create the instance if it doesn't exist, ensuring only one instance is created (Singleton Pattern)
-        return (instance == null) ? instance = new SimulationClock() : instance;
+        SimulationClock bound = boundClock.get();
+        return bound != null ? bound : instance;
+    }
+
+    // Method to create an independent virtual-time clock, e.g. for one of several simulation runs in the same JVM.
+    // Bind it to the thread creating and starting the run's objects with runBound
+    public static SimulationClock createVirtualClock(){
+        SimulationClock clock = new SimulationClock();
+        clock.mode = Mode.VIRTUAL_TIME;
+        return clock;
     }
 
-    // Method to return the current time in the simulation as a formatted string with 3 decimal places
+    // Method to create the clock of a zone that runs as its own logical process, synchronized by a coordinator
+    public static SimulationClock createZoneClock(ZoneCoordinator coordinator){
+        return new SimulationClock(coordinator);
+    }
+
+    // Method to run a task on the calling thread with this clock returned by getInstance, e.g. to start
+    // the objects of a zone on the zone's clock
+    public void runBound(Runnable task){
+        SimulationClock previous = boundClock.get();
+        boundClock.set(this);
+        try {
+            task.run();
+        } finally {
+            boundClock.set(previous);
+        }
+    }
+
+    // Method to return the current time in the simulation as a formatted string with 3 decimal places.
+    // Prefer getCurrentTimeNanos and format only when writing output
     public String getCurrentTimeString(){
-        double seconds_duration = getCurrentTime();
-        return String.format("%.3f",seconds_duration); // Format to 3 decimal places
+        return TimeFormat.format(getCurrentTimeNanos()); // Format to 3 decimal places
     }
 
     // Method to return the current time in seconds in the simulation (scaled by the scaleFactor)
     public double getCurrentTime(){
-        // Calculate the duration since startTime and scale it by the scaleFactor
-        long duration = (System.nanoTime() - startTime) * scaleFactor; 
+        long duration = getCurrentTimeNanos();
         // Convert the duration to seconds and return it
         double seconds_duration = duration * 1.0 / 1e9;
         return seconds_duration; // Returns time in seconds (scaled by factor)
     }
-    
+
+    // Method to return the current time in nanoseconds in the simulation (scaled by the scaleFactor)
+    public long getCurrentTimeNanos(){
+        // In virtual time, the simulation time is the time of the last event the clock jumped to
+        if(mode == Mode.VIRTUAL_TIME){
+            synchronized(this){
+                return virtualTime;
+            }
+        }
+
+        // Calculate the duration since startTime and scale it by the scaleFactor
+        return (System.nanoTime() - startTime) * scaleFactor;
+    }
+
     // Method to wait for a specified number of milliseconds, scaled by the scaleFactor
     public void waitFor(int milliseconds) {
-        
+
+        // In virtual time, the wait is scheduled as an event instead of sleeping
+        if(mode == Mode.VIRTUAL_TIME){
+            waitForEvent(milliseconds * 1_000_000L);
+            return;
+        }
+
         // Scale the time to wait by the scaleFactor (making the simulation time faster/slower)
         double scaledTimeToWait = milliseconds * 1.0 / scaleFactor;
         // Convert the scaled time to wait from milliseconds to nanoseconds
-        long targetWaitTimeInNanos = (long) (scaledTimeToWait * 1_000_000); 
-        
+        long targetWaitTimeInNanos = (long) (scaledTimeToWait * 1_000_000);
+
         // Store the current time in nanoseconds
         long startTime = System.nanoTime();
         // Calculate the target time for when to stop waiting
         long endTime = startTime + targetWaitTimeInNanos;
 
-        // // Busy-wait loop to keep the thread alive until the target time is reached
-        // while (System.nanoTime() < endTime); // Do nothing, just wait
+        if(waitStrategy == WaitStrategy.PRECISE){
+            // Park until the remaining time drops below the spin threshold
+            long remaining;
+            while ((remaining = endTime - System.nanoTime()) > spinThresholdNanos) {
+                LockSupport.parkNanos(this, remaining - spinThresholdNanos);
+            }
 
-        try {
-            Thread.sleep((long) scaledTimeToWait);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            // Busy-wait loop for the final stretch until the target time is reached
+            while (System.nanoTime() < endTime) Thread.onSpinWait();
+        }
+        else{
+            try {
+                Thread.sleep((long) scaledTimeToWait);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Record how far the actual wait was from the requested one
+        recordWaitError(System.nanoTime() - endTime);
+    }
+
+    // Method to add the error of one real-time wait to the wait statistics
+    private void recordWaitError(long errorNanos){
+        waitCount.increment();
+        totalWaitError.add(Math.abs(errorNanos));
+        maxWaitError.accumulateAndGet(Math.abs(errorNanos), Math::max);
+    }
+
+    // Method to print the mean and maximum error of the real-time waits performed so far, both in real time
+    // and in simulation time (real error multiplied by the scale factor)
+    public void printWaitErrorReport(){
+        long count = waitCount.sum();
+        if(mode != Mode.REAL_TIME || count == 0) return;
+
+        double meanError = totalWaitError.sum() * 1.0 / count;
+        long maxError = maxWaitError.get();
+        System.out.println(String.format("[Clock] %s waits: %d, mean error %.1f us (%.3f ms sim), max error %.1f us (%.3f ms sim)",
+            waitStrategy, count,
+            meanError / 1e3, meanError * scaleFactor / 1e6,
+            maxError / 1e3, maxError * scaleFactor / 1e6));
+    }
+
+    // Method to schedule a wait event in virtual time and park the calling thread until the clock reaches it
+    private void waitForEvent(long nanos){
+
+        // Threads that are not participants (e.g. a thread that never attached) are counted as
+        // active only while they are woken up from this wait
+        boolean temporary = !participating.get();
+
+        // The thread's wait event has fired, so it is reused
+        SimulationEvent event = waitEventOfThread.get();
+        if(event == null){
+            event = new SimulationEvent(0, 0, Thread.currentThread());
+            waitEventOfThread.set(event);
+        }
+        else event.rearm();
+
+        synchronized(this){
+            event.setDue(virtualTime + nanos, eventSequence++);
+            events.add(event);
+
+            // The calling thread is now waiting rather than running
+            if(!temporary) activeThreads--;
+        }
+
+        // Advance the clock if every participant is now waiting
+        dispatch();
+
+        // Park until the event fires. The loop protects against spurious wake ups
+        while(!event.hasFired()) LockSupport.park(this);
+
+        // A temporary participant stops being counted as soon as its wait is over
+        if(temporary) release();
+    }
+
+    // Method to block the calling thread until a future completes and return its result.
+    // In virtual time, a participant stops being counted as active while it waits so that the clock
+    // can advance to the events that complete the future. Completing the future schedules a wait event
+    // at the current time rather than resuming this thread at once, so that it resumes only once the thread
+    // completing the future is done. Participants thus run one at a time, in the order of their events,
+    // which makes runs in virtual time reproducible
+    public <T> T await(CompletableFuture<T> future){
+        if(mode == Mode.VIRTUAL_TIME && participating.get() && !future.isDone()){
+            Thread thread = Thread.currentThread();
+            AtomicReference<SimulationEvent> resume = new AtomicReference<>();
+
+            synchronized(this){
+                activeThreads--;
+            }
+
+            // Schedule the resumption of this thread once the future completes
+            future.whenComplete((result, error) -> {
+                synchronized(this){
+                    SimulationEvent event = new SimulationEvent(virtualTime, eventSequence++, thread);
+                    events.add(event);
+                    resume.set(event);
+                }
+                dispatch();
+            });
+
+            // Advance the clock if every participant is now waiting
+            dispatch();
+
+            // Park until the resumption fires. The loop protects against spurious wake ups
+            SimulationEvent event;
+            while((event = resume.get()) == null || !event.hasFired()) LockSupport.park(this);
         }
+        return future.join();
+    }
+
+    // Method to run an action on an executor once the simulation time reaches timeNanos.
+    // In virtual time, the action is an event in the timer wheel and it counts as an active
+    // participant from the moment it fires until it completes.
+    // Returns the scheduled event, which can be passed to cancel until it fires
+    public SimulationEvent schedule(long timeNanos, Runnable action, Executor executor){
+        SimulationEvent event = new SimulationEvent(timeNanos, 0, action, executor);
+        schedule(event, timeNanos);
+        return event;
+    }
+
+    // Method to schedule an event owned by the caller, e.g. an event a thread reuses for all its requests, instead of
+    // creating one. The event must not be pending, and must have been rearmed if it fired before. An action event
+    // runs its action on its executor. A wait event wakes up its thread, which waits for it with awaitEvent
+    public void schedule(SimulationEvent event, long timeNanos){
+        if(mode == Mode.VIRTUAL_TIME){
+            synchronized(this){
+                event.setDue(Math.max(timeNanos, virtualTime), eventSequence++);
+                events.add(event);
+            }
+            dispatch();
+            return;
+        }
+
+        // In real time, the timer thread fires the event once it is due
+        synchronized(this){
+            event.setDue(timeNanos, eventSequence++);
+            events.add(event);
+
+            if(timer == null){
+                timer = new Thread(this::runTimer, "SimulationClock-timer");
+                timer.setDaemon(true);
+                timer.start();
+            }
+        }
+
+        // Wake the timer thread up in case the new event is due before the one it is waiting for
+        LockSupport.unpark(timer);
+    }
+
+    // Method to block the calling thread until a wait event scheduled by another thread fires, e.g. the reply to a
+    // request. The event must have been rearmed before any thread could schedule it. In virtual time, the calling
+    // thread stops being counted as active while it waits, as in waitFor
+    public void awaitEvent(SimulationEvent event){
+        boolean temporary = mode == Mode.VIRTUAL_TIME && !participating.get();
+        if(mode == Mode.VIRTUAL_TIME && !temporary){
+            synchronized(this){
+                activeThreads--;
+            }
+
+            // Advance the clock if every participant is now waiting
+            dispatch();
+        }
+
+        // Park until the event fires. The loop protects against spurious wake ups
+        while(!event.hasFired()) LockSupport.park(this);
+
+        // A temporary participant was counted as active when the event woke it up
+        if(temporary) release();
+    }
+
+    // Method to cancel an action event that has not fired yet. Returns true if the event was removed
+    public boolean cancel(SimulationEvent event){
+        synchronized(this){
+            return events.remove(event);
+        }
+    }
+
+    // Method run by the real-time timer thread. Fires every event once the simulation time reaches it
+    // and parks until the next one is due otherwise
+    private void runTimer(){
+        while(true){
+            SimulationEvent due = null;
+            long delay;
+            synchronized(this){
+                long next = events.peekTime();
+                // Delay until the next event in real nanoseconds, or -1 if there is no pending event
+                delay = next == Long.MAX_VALUE ? -1 : Math.max((next - getCurrentTimeNanos()) / scaleFactor, 0);
+                if(delay == 0) due = events.poll();
+            }
+
+            if(due != null) due.fire(due.getAction());
+            else if(delay < 0) LockSupport.park(this);
+            else LockSupport.parkNanos(this, delay);
+        }
+    }
+
+    // Method to advance the virtual time to the next pending event once all participants are waiting
+    private void dispatch(){
+        SimulationEvent next;
+        synchronized(this){
+            // Some thread is still running at the current simulation time, so time cannot advance yet
+            if(activeThreads > 0) return;
+
+            // Nothing left to do before the horizon. Let the coordinator know that this zone has finished its window
+            if(events.isEmpty() || events.peekTime() >= horizon){
+                if(coordinator != null) coordinator.signal();
+                return;
+            }
+
+            // Jump straight to the earliest pending event
+            next = events.poll();
+            if(next.getTime() > virtualTime) virtualTime = next.getTime();
+
+            // The woken thread, or the task running the event's action, becomes active
+            activeThreads++;
+        }
+
+        // Fire the event outside the lock since the executor may run the action right away
+        next.fire(next.isWaitEvent() ? null : participantTask(next.getAction()));
+    }
+
+    // Method to wrap a task so that the thread running it is a participant that already owns an active slot.
+    // The slot is released once the task completes
+    private Runnable participantTask(Runnable task){
+        return () -> {
+            participating.set(true);
+            SimulationClock previous = boundClock.get();
+            boundClock.set(this);
+            try {
+                task.run();
+            } finally {
+                boundClock.set(previous);
+                participating.set(false);
+                release();
+            }
+        };
+    }
+
+    // Method called by the coordinator to let this zone dispatch every event due before the new horizon
+    public void advanceTo(long horizon){
+        synchronized(this){
+            this.horizon = horizon;
+        }
+        dispatch();
+    }
+
+    // Method to check whether this clock has processed every event before its horizon and all its participants are waiting.
+    // A blocked clock stays blocked until its horizon is raised
+    public synchronized boolean isBlocked(){
+        return activeThreads == 0 && (events.isEmpty() || events.peekTime() >= horizon);
+    }
+
+    // Method to block a thread that does not participate until the clock is blocked, e.g. until the threads of
+    // terminated objects have run to completion. Has no effect in real time
+    public void awaitIdle(){
+        if(mode != Mode.VIRTUAL_TIME) return;
+        while(!isBlocked()) LockSupport.parkNanos(this, 1_000_000);
+    }
+
+    // Method to return the time in nanoseconds of the earliest pending event, or Long.MAX_VALUE if there is none
+    public synchronized long getNextEventTime(){
+        return events.peekTime();
+    }
+
+    public ZoneCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    // Method to stop counting one active thread and advance the clock if it was the last one
+    private void release(){
+        synchronized(this){
+            activeThreads--;
+        }
+        dispatch();
+    }
+
+    // Method to wrap a task that is about to run on a new thread so that the thread takes part in virtual time.
+    // The thread starts running the task once a start event, scheduled now at the current time, fires. The clock
+    // cannot advance past the start event, and the thread never runs at the same time as the thread starting it
+    public Runnable bindParticipant(Runnable task){
+        if(mode != Mode.VIRTUAL_TIME) return task;
+
+        SimulationEvent start;
+        synchronized(this){
+            start = new SimulationEvent(virtualTime, eventSequence++);
+            events.add(start);
+        }
+
+        // The thread owns the active slot taken when the start event fired, released once the task completes
+        Runnable participant = participantTask(task);
+        return () -> {
+            start.attach(Thread.currentThread());
+            while(!start.hasFired()) LockSupport.park(this);
+            participant.run();
+        };
+    }
+
+    // Method to make the calling thread a participant in virtual time. The clock does not advance while
+    // a participant is running. Has no effect in real time
+    public void attachCurrentThread(){
+        if(mode != Mode.VIRTUAL_TIME || participating.get()) return;
+
+        participating.set(true);
+        synchronized(this){
+            activeThreads++;
+        }
+    }
+
+    // Method to stop the calling thread from participating in virtual time. Has no effect in real time
+    public void detachCurrentThread(){
+        if(mode != Mode.VIRTUAL_TIME || !participating.get()) return;
+
+        participating.set(false);
+        release();
     }
 
     // Method to reset the start time of the simulation clock to the current time
     public void reset(){
         startTime = System.nanoTime();
+        synchronized(this){
+            virtualTime = 0;
+        }
     }
 
     public void setScaleFactor(int scaleFactor) {
         this.scaleFactor = scaleFactor;
     }
+
+    // Method to set the strategy used to wait in real time
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    // Method to set the remaining time below which the PRECISE strategy spins instead of parking
+    public void setSpinThresholdNanos(long spinThresholdNanos) {
+        this.spinThresholdNanos = spinThresholdNanos;
+    }
+
+    // Method to set the mode of the clock. Must be called before the simulation starts
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
     public static void main(String[] args) throws InterruptedException {
       SimulationClock clock = SimulationClock.getInstance();
       clock.setScaleFactor(1);
       for(int i = 0; i<10;i++){
           Thread.sleep(1000);
-          System.out.println(System.nanoTime());  
+          System.out.println(System.nanoTime());
 
       }
-    } 
+    }
 }
@@ -0,0 +1,172 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class represents an event scheduled on the SimulationClock. When the clock
+ * runs in virtual time, every wait performed by a simulation thread becomes one of these
+ * events, and the clock jumps straight to the earliest one once all threads are waiting.
+ * An event either wakes up a waiting thread or runs an action on an executor
+ */
+public class SimulationEvent implements Comparable<SimulationEvent> {
+
+    // Simulation time in nanoseconds at which the event is due
+    private long time;
+
+    // Sequence number used to order events that are due at the same time in the order they were scheduled
+    private long sequence;
+
+    // Flag indicating whether the event wakes up a waiting thread rather than running an action
+    private boolean waitEvent;
+
+    // Thread waiting for this event. The thread is unparked when the event fires. null for action events, and for
+    // wait events whose thread has not attached yet
+    private volatile Thread waitingThread;
+
+    // Action to run when the event fires. null for wait events
+    private Runnable action;
+
+    // Executor on which the action runs
+    private Executor executor;
+
+    // Flag indicating whether the event has fired or not
+    private volatile boolean fired;
+
+    // Position of the event in the TimerWheel holding it. The level is -1 while the event is not in a wheel.
+    // The previous and next events link the events sharing a slot so that the event can be removed in O(1)
+    int wheelLevel = -1;
+    int wheelSlot;
+    SimulationEvent wheelPrevious;
+    SimulationEvent wheelNext;
+
+    /**
+     * Constructor
+     * @param time Simulation time in nanoseconds at which the event is due
+     * @param sequence Sequence number of the event
+     * @param waitingThread Thread waiting for the event to fire
+     */
+    public SimulationEvent(long time, long sequence, Thread waitingThread) {
+        this.time = time;
+        this.sequence = sequence;
+        this.waitingThread = waitingThread;
+        this.waitEvent = true;
+        this.fired = false;
+    }
+
+    /**
+     * Constructor of a wait event whose thread attaches later, e.g. a thread that has not started yet
+     * @param time Simulation time in nanoseconds at which the event is due
+     * @param sequence Sequence number of the event
+     */
+    public SimulationEvent(long time, long sequence) {
+        this.time = time;
+        this.sequence = sequence;
+        this.waitEvent = true;
+        this.fired = false;
+    }
+
+    /**
+     * Function to make an event that has fired pending again, so that its owner can reuse it instead of creating an
+     * event for every wait or request. Must be called before the event is scheduled again, and before any thread
+     * waits for it to fire again
+     */
+    void rearm() {
+        this.fired = false;
+    }
+
+    /**
+     * Function to set when a reused event is due. Called by the clock when the event is scheduled
+     * @param time Simulation time in nanoseconds at which the event is due
+     * @param sequence Sequence number of the event
+     */
+    void setDue(long time, long sequence) {
+        this.time = time;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Function to make the calling thread the one woken up by this wait event. The thread then parks until
+     * hasFired returns true, which it also does if the event fired before the thread attached
+     * @param thread Thread waiting for the event
+     */
+    public void attach(Thread thread) {
+        this.waitingThread = thread;
+    }
+
+    /**
+     * Constructor
+     * @param time Simulation time in nanoseconds at which the event is due
+     * @param sequence Sequence number of the event
+     * @param action Action to run when the event fires
+     * @param executor Executor on which the action runs
+     */
+    public SimulationEvent(long time, long sequence, Runnable action, Executor executor) {
+        this.time = time;
+        this.sequence = sequence;
+        this.action = action;
+        this.executor = executor;
+        this.fired = false;
+    }
+
+    /**
+     * Function to fire the event. A wait event wakes up the thread waiting for it.
+     * An action event submits the given task, which wraps the action, to the executor
+     * @param task Task to submit for action events. Ignored for wait events
+     */
+    public void fire(Runnable task){
+        fired = true;
+        if(waitEvent){
+            Thread thread = waitingThread;
+            if(thread != null) LockSupport.unpark(thread);
+        }
+        else executor.execute(task);
+    }
+
+    /**
+     * Getter
+     * @return true if the event wakes up a waiting thread, false if it runs an action
+     */
+    public boolean isWaitEvent() {
+        return waitEvent;
+    }
+
+    /**
+     * Getter
+     * @return action
+     */
+    public Runnable getAction() {
+        return action;
+    }
+
+    /**
+     * Getter
+     * @return true if the event has fired, false otherwise
+     */
+    public boolean hasFired() {
+        return fired;
+    }
+
+    /**
+     * Getter
+     * @return time
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Getter
+     * @return sequence
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Events are ordered by their due time. Events due at the same time are ordered by their sequence number
+     */
+    @Override
+    public int compareTo(SimulationEvent other) {
+        if(time != other.time) return Long.compare(time, other.time);
+        return Long.compare(sequence, other.sequence);
+    }
+}
@@ -1,13 +1,73 @@
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * The base class of most objects in the simulation
  */
 public abstract class SimulationObject implements Runnable {
 
+    // Kinds of threads that can run the runtime loops of simulation objects
+    public enum ExecutionMode {
+        // One platform (OS) thread per runtime loop
+        PLATFORM_THREADS,
+        // One virtual thread per runtime loop. Blocking waits unmount the virtual thread from its carrier,
+        // so thousands of nodes can run in one JVM. Requires a JVM that supports virtual threads (Java 21+).
+        // Falls back to platform threads otherwise
+        VIRTUAL_THREADS,
+        // No thread per runtime loop. The shared TickScheduler runs all ticks at fixed deadlines on a
+        // bounded worker pool and reports overruns
+        SCHEDULER
+    }
+
+    // Formats of the output log files of simulation objects
+    public enum LogFormat {
+        // One CSV file per object, readable as is
+        CSV,
+        // One compact binary file per object (see BinaryLogSink). Converted to the CSV layout by BinaryLogConverter
+        BINARY,
+        // CSV files rolled by size or simulation time and gzip-compressed on a background thread (see RotatingLogSink).
+        // Also used for the merged log and the master zone's database
+        ROTATING_GZIP
+    }
+
+    // Execution mode used for all runtime threads started from now on
+    private static ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+
+    // Format of the output log files of all objects created from now on
+    private static volatile LogFormat logFormat = LogFormat.CSV;
+
+    // Size in characters and simulation time in nanoseconds after which ROTATING_GZIP logs start a new file. 0 for no limit
+    private static volatile long maxLogSegmentSize = 64L * 1024 * 1024;
+    private static volatile long logSegmentPeriod = 0;
+
+    // Flag indicating whether objects created from now on write their own output log files
+    private static volatile boolean perObjectLogs = true;
+
+    // Directory of the output log files of objects created by the current thread. Kept per thread so that
+    // concurrent simulation runs in the same JVM write to separate directories
+    private static final ThreadLocal<String> outputDirectoryOfThread = ThreadLocal.withInitial(() -> "logs/");
+
+    // Merged log of the events of all objects created by the current thread. null if events are not merged.
+    // Kept per thread for the same reason as the output directory
+    private static final ThreadLocal<MergedLogSink> mergedLogOfThread = new ThreadLocal<>();
+
+    // Builder for virtual threads (Thread.ofVirtual()) and its unstarted(Runnable) method, looked up
+    // reflectively so that the code still compiles and runs on JVMs without virtual threads.
+    // null if virtual threads are not available
+    private static Object virtualThreadBuilder;
+    private static Method unstartedVirtualThread;
+
+    static {
+        try {
+            virtualThreadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+            unstartedVirtualThread = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        } catch (ReflectiveOperationException e) {
+            virtualThreadBuilder = null;
+            unstartedVirtualThread = null;
+        }
+    }
+
     // Timestep in ms for the object's lifetime thread. The thread continuously 
     // calls a runtime function representing the object's behavior throughout
     // the simulation. After executing the function, the thread waits for a
@@ -18,11 +78,27 @@ public abstract class SimulationObject implements Runnable {
     // Name of the simulation object
     protected String object_name;
 
-    // Name of the output CSV file where all the logs for this object will be stored
+    // Directory where the output log files of this object and its simulation run are stored
+    private String outputDirectory;
+
+    // Name of the output file where all the logs for this object will be stored
     private String outputLogFileName;
 
-    // Writer object responsible for writing to the output log file
-    protected PrintWriter writer;
+    // Sink receiving the log records of this object. Records are written by the AsyncLogWriter's writer thread.
+    // null if the object does not write its own log file
+    protected LogSink sink;
+
+    // Merged log also receiving the event records of this object. null if they are not merged
+    private MergedLogSink mergedLog;
+
+    // Flag indicating whether the records of this object are events ("Object Name,Event" columns) and go to the merged log
+    private boolean logsEvents;
+
+    // Number of records of every log category this object has logged, indexed by ordinal. Used for sampling
+    private final AtomicLongArray recordsPerCategory;
+
+    // Last state row written by this object. Only used when unchanged state rows are suppressed
+    private String lastStateRow;
 
     // Flag indicating whether the header of the CSV file has been added or not
     protected boolean hasAddedHeader;
@@ -39,7 +115,11 @@ public abstract class SimulationObject implements Runnable {
         this.hasAddedHeader = false;
         this.alive = false;
         this.object_name = name;
+        this.outputDirectory = outputDirectoryOfThread.get();
         this.outputLogFileName = getOutputFileName(name);
+        this.mergedLog = mergedLogOfThread.get();
+        if(mergedLog != null && !mergedLog.accepts(name)) mergedLog = null;
+        this.recordsPerCategory = new AtomicLongArray(LogPolicy.Category.values().length);
         initWriter();
     }
 
@@ -51,13 +131,12 @@ public abstract class SimulationObject implements Runnable {
             // Update the alive flag so that the runtime thread terminates in its next iteration
             alive = false;
         }
-        synchronized(writer){
-            // flush any remaining content
-            writer.flush();
-            
-            // close the writer
-            writer.close();
-        }
+
+        // In scheduler mode, remove the object's pending tick from the clock instead of letting it fire
+        if(executionMode == ExecutionMode.SCHEDULER) TickScheduler.getInstance().cancel(this);
+
+        // Close the log file once the records logged so far have been written
+        if(sink != null) AsyncLogWriter.getInstance().close(sink);
     }
     
     /**
@@ -71,23 +150,82 @@ public abstract class SimulationObject implements Runnable {
     }
     
     /**
-     * Function to create an output log file and open the writer object
+     * Function to create an output log file and open the sink writing to it
      */
     private void initWriter(){
-        try {
-            File file = new File(outputLogFileName); 
-
-            // Delete the file if it already exists
-            if (file.exists()) file.delete();
-
-            // Start the writer
-            FileWriter fileWriter = new FileWriter(outputLogFileName, true);
-            writer = new PrintWriter(fileWriter);
-            hasAddedHeader = false;
-        } catch (IOException e) {
-            System.out.println("An error occurred while appending to the file.");
-            e.printStackTrace();
-        }
+        if(!perObjectLogs) sink = null;
+        else if(logFormat == LogFormat.BINARY) sink = new BinaryLogSink(outputLogFileName);
+        else sink = createCsvSink(outputLogFileName);
+        hasAddedHeader = false;
+    }
+
+    /**
+     * Function to create a sink for a CSV log according to the log format: rotating compressed files for ROTATING_GZIP,
+     * one plain file otherwise
+     * @param fileName Name of the CSV file
+     * @return new sink
+     */
+    public static LogSink createCsvSink(String fileName){
+        if(logFormat == LogFormat.ROTATING_GZIP) return new RotatingLogSink(fileName, maxLogSegmentSize, logSegmentPeriod);
+        return new FileLogSink(fileName);
+    }
+
+    /**
+     * Function to set the header of the output log file. The header is written before the first record
+     * @param header Header line
+     */
+    protected void setLogHeader(String header){
+        if(sink != null) sink.setHeader(header);
+        logsEvents = header.startsWith(MergedLogSink.HEADER);
+        hasAddedHeader = true;
+    }
+
+    /**
+     * Function to log a record to the output log file, and to the merged log if the record is an event. The record
+     * is only enqueued; its timestamp is formatted and the record written later by the AsyncLogWriter's writer thread
+     * @param row Rest of the record after the timestamp. Must not be modified afterwards
+     */
+    protected void writeLogRecord(CharSequence row){
+        long time = getCurrentTimeNanos();
+        if(sink != null) AsyncLogWriter.getInstance().submit(sink, time, row);
+        if(mergedLog != null && logsEvents) AsyncLogWriter.getInstance().submit(mergedLog, time, row);
+    }
+
+    /**
+     * Function to check whether the object's records go anywhere, so that callers skip building records nobody writes.
+     * Only known once the log header is set
+     * @return true if the object has its own log or logs its events to a merged log
+     */
+    protected boolean isLogging(){
+        return sink != null || (mergedLog != null && logsEvents);
+    }
+
+    /**
+     * Function to log a state row, e.g. the field values of a device, if the LogPolicy lets it through
+     * @param row Rest of the record after the timestamp
+     */
+    protected void writeStateRecord(String row){
+        if(LogPolicy.getInstance().acceptsState(this, row)) writeLogRecord(row);
+    }
+
+    /**
+     * Function to count a record of a log category
+     * @param category Category of the record
+     * @return number of records of the category this object logged before
+     */
+    long nextRecordIndex(LogPolicy.Category category){
+        return recordsPerCategory.getAndIncrement(category.ordinal());
+    }
+
+    /**
+     * Function to remember the last state row written. State rows are only written by the object's runtime thread
+     * @param row New state row
+     * @return previous state row, or null if there is none
+     */
+    String replaceLastStateRow(String row){
+        String previous = lastStateRow;
+        lastStateRow = row;
+        return previous;
     }
     
     /**
@@ -112,12 +250,99 @@ public abstract class SimulationObject implements Runnable {
             // Start thread
             if (startThread) {
                 this.runTimeStep = runTimeStep;
-                Thread runTimeThread = new Thread(this);
+
+                // In scheduler mode, the shared tick scheduler owns the object's ticks instead of a dedicated thread
+                if(executionMode == ExecutionMode.SCHEDULER){
+                    TickScheduler.getInstance().register(this, runTimeStep);
+                    return;
+                }
+
+                // Bind the thread to the simulation clock so that it takes part in virtual time, if enabled
+                Thread runTimeThread = createRuntimeThread(SimulationClock.getInstance().bindParticipant(this));
                 runTimeThread.start();
             }
         }
     }
 
+    /**
+     * Function to create an unstarted runtime thread according to the current execution mode
+     * @param task Task to be run by the thread
+     * @return Newly created thread
+     */
+    private Thread createRuntimeThread(Runnable task){
+        if(executionMode == ExecutionMode.VIRTUAL_THREADS && virtualThreadBuilder != null){
+            try {
+                Thread thread = (Thread) unstartedVirtualThread.invoke(virtualThreadBuilder, task);
+                thread.setName(object_name);
+                return thread;
+            } catch (ReflectiveOperationException e) {
+                e.printStackTrace();
+            }
+        }
+        return new Thread(task, object_name);
+    }
+
+    /**
+     * Function to set the kind of threads used for the runtime loops of all objects started afterwards
+     * @param mode New execution mode
+     */
+    public static void setExecutionMode(ExecutionMode mode){
+        if(mode == ExecutionMode.VIRTUAL_THREADS && virtualThreadBuilder == null)
+            System.out.println("Virtual threads are not supported by this JVM. Falling back to platform threads.");
+        executionMode = mode;
+    }
+
+    /**
+     * Getter
+     * @return execution mode used for runtime threads
+     */
+    public static ExecutionMode getExecutionMode(){
+        return executionMode;
+    }
+
+    /**
+     * Function to set the format of the output log files of all objects created afterwards
+     * @param format New log format
+     */
+    public static void setLogFormat(LogFormat format){
+        logFormat = format;
+    }
+
+    /**
+     * Getter
+     * @return format of the output log files
+     */
+    public static LogFormat getLogFormat(){
+        return logFormat;
+    }
+
+    /**
+     * Function to set when ROTATING_GZIP logs created afterwards start a new file
+     * @param maxSegmentSize Size in characters of a file before compression. 0 for no limit
+     * @param segmentSeconds Simulation time in seconds covered by one file. 0 for no limit
+     */
+    public static void setLogRotation(long maxSegmentSize, int segmentSeconds){
+        maxLogSegmentSize = maxSegmentSize;
+        logSegmentPeriod = segmentSeconds * 1_000_000_000L;
+    }
+
+    /**
+     * Function to set whether objects created afterwards write their own output log files. Without them,
+     * only the merged log is written
+     * @param enabled true to write one log file per object
+     */
+    public static void setPerObjectLogs(boolean enabled){
+        perObjectLogs = enabled;
+    }
+
+    /**
+     * Function to merge the events of all objects created afterwards by the calling thread into one time-ordered log
+     * @param log Merged log. null to stop merging
+     */
+    public static void setMergedLog(MergedLogSink log){
+        mergedLogOfThread.set(log);
+    }
+
     /**
      * Run function called by the newly created thread
      */
@@ -140,27 +365,130 @@ public abstract class SimulationObject implements Runnable {
      * @return output file name
      */
     protected static String getOutputFileName(String name){
-        return "logs/"+ name+ "_output.csv";
+        return outputDirectoryOfThread.get()+ name+ (logFormat == LogFormat.BINARY ? "_output.bin" : "_output.csv");
         
     }
 
+    /**
+     * Function to set the directory of the output log files of all objects created afterwards by the calling thread.
+     * The directory is created if it does not exist
+     * @param directory Output directory, ending with "/"
+     */
+    public static void setOutputDirectory(String directory){
+        new File(directory).mkdirs();
+        outputDirectoryOfThread.set(directory);
+    }
+
+    /**
+     * Getter
+     * @return directory where the output log files of this object's simulation run are stored, ending with "/"
+     */
+    public String getOutputDirectory() {
+        return outputDirectory;
+    }
+
     /**
      * Function to write a log record to the output log file. Default implementation
      * @param event optional parameter to specify a certain event message in the log record 
      */
     public void exportState(String... event) {
+        exportEvent(LogTemplate.MESSAGE, event[0]);
+    }
 
-        synchronized(writer){
-            // Add header if not added already
-            if(!hasAddedHeader){
-                writer.println("Timestamp,Object Name,Event");
-                hasAddedHeader = true;
-            }
+    /**
+     * Function to write an event to the output log file. The event message is not formatted here but by the writer
+     * thread, at the output edge, like the timestamp. Events with at most LogEvent.MAX_INLINE_ARGS arguments are logged
+     * through the fixed-arity versions of this function, which create no argument array
+     * @param template Template of the event message
+     * @param args Arguments of the template. Must be immutable values (strings, numbers, booleans)
+     */
+    public final void exportEvent(LogTemplate template, Object... args) {
+        if(startEvent(template)) logEvent(new LogEvent(object_name, template, args, null));
+    }
 
-            // Write the log record
-            writer.println(getCurrentTimestamp()+"," + object_name + "," + event[0]);
-        }
-        
+    /**
+     * Function to write an event without arguments to the output log file
+     * @param template Template of the event message
+     */
+    public final void exportEvent(LogTemplate template) {
+        if(startEvent(template)) logEvent(new LogEvent(object_name, template, 0, null, null, null, null, null));
+    }
+
+    /**
+     * Function to write an event with one argument to the output log file
+     * @param template Template of the event message
+     * @param arg0 Argument of the template. Must be an immutable value (string, number, boolean)
+     */
+    public final void exportEvent(LogTemplate template, Object arg0) {
+        if(startEvent(template)) logEvent(new LogEvent(object_name, template, 1, arg0, null, null, null, null));
+    }
+
+    /**
+     * Function to write an event with two arguments to the output log file
+     * @param template Template of the event message
+     * @param arg0 First argument of the template. Must be an immutable value, like the other arguments
+     */
+    public final void exportEvent(LogTemplate template, Object arg0, Object arg1) {
+        if(startEvent(template)) logEvent(new LogEvent(object_name, template, 2, arg0, arg1, null, null, null));
+    }
+
+    /**
+     * Function to write an event with three arguments to the output log file
+     * @param template Template of the event message
+     * @param arg0 First argument of the template. Must be an immutable value, like the other arguments
+     */
+    public final void exportEvent(LogTemplate template, Object arg0, Object arg1, Object arg2) {
+        if(startEvent(template)) logEvent(new LogEvent(object_name, template, 3, arg0, arg1, arg2, null, null));
+    }
+
+    /**
+     * Function to write an event with four arguments to the output log file
+     * @param template Template of the event message
+     * @param arg0 First argument of the template. Must be an immutable value, like the other arguments
+     */
+    public final void exportEvent(LogTemplate template, Object arg0, Object arg1, Object arg2, Object arg3) {
+        if(startEvent(template)) logEvent(new LogEvent(object_name, template, 4, arg0, arg1, arg2, arg3, null));
+    }
+
+    /**
+     * Function to write an event with five arguments to the output log file
+     * @param template Template of the event message
+     * @param arg0 First argument of the template. Must be an immutable value, like the other arguments
+     */
+    public final void exportEvent(LogTemplate template, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if(startEvent(template)) logEvent(new LogEvent(object_name, template, 5, arg0, arg1, arg2, arg3, arg4));
+    }
+
+    /**
+     * Function to check whether an event is logged before it is built
+     * @param template Template of the event message
+     * @return true if the log policy lets the event through and the object's records go anywhere
+     */
+    private boolean startEvent(LogTemplate template) {
+
+        // Skip the event if the log policy suppresses it
+        if(!LogPolicy.getInstance().accepts(this, template.getCategory(), template.getLevel())) return false;
+
+        // Add header if not added already
+        if(!hasAddedHeader) setEventLogHeader();
+
+        // Skip building the event if it would not be written anywhere
+        return isLogging();
+    }
+
+    /**
+     * Function to set the header of the output log file before the first event. Default implementation
+     */
+    protected void setEventLogHeader() {
+        setLogHeader("Timestamp,Object Name,Event");
+    }
+
+    /**
+     * Function to log an event that passed the log policy. Default implementation
+     * @param event Event to log
+     */
+    protected void logEvent(LogEvent event) {
+        writeLogRecord(event);
     }
 
     /**
@@ -173,12 +501,20 @@ public abstract class SimulationObject implements Runnable {
 
     /**
      * Get current timestamp
-     * @return current timestamp
+     * @return current timestamp formatted as seconds with 3 decimal places
      */
     public String getCurrentTimestamp(){
         return SimulationClock.getInstance().getCurrentTimeString();
         // return LocalDateTime.now().toString();
     }
+
+    /**
+     * Get current simulation time without formatting it
+     * @return current simulation time in nanoseconds
+     */
+    public long getCurrentTimeNanos(){
+        return SimulationClock.getInstance().getCurrentTimeNanos();
+    }
     
     /**
      * Abstract function to be implemented by every child of this class.
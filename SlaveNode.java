@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class implements a SlaveNode, which encapsulates a uController and its connected devices
@@ -61,13 +62,13 @@ public class SlaveNode extends SimulationObject{
      */
     public void publishPacket(DataPacket... packets){
         // Write a log message to output log file
-        exportState(String.format("Started Publishing (%d) packets to Control Node [%s]",packets.length, masterNode.getObject_name()));
+        exportEvent(LogTemplate.SLAVE_STARTED_PUBLISHING, packets.length, masterNode.getObject_name());
         
         // Send the packet to the master node
         masterNode.update(this,packets);
 
         // Write a log message to output log file after message was sent
-        exportState(String.format("Done Publishing (%d) packets to Control Node [%s]",packets.length, masterNode.getObject_name()));
+        exportEvent(LogTemplate.SLAVE_DONE_PUBLISHING, packets.length, masterNode.getObject_name());
     }
 
     /**
@@ -81,53 +82,62 @@ public class SlaveNode extends SimulationObject{
      * @return Execution result containing a data packet that encapsulates the field value
      */
     public ExecutionResult getField(MasterNode requester, String deviceName, String field){
+        // Wait for the reply of the asynchronous request
+        return SimulationClock.getInstance().await(getFieldAsync(requester, deviceName, field));
+    }
 
-        // Delay to simulate the propagation delay between the master node and this slave node
-        int time_delay= RTT_to_Master_Node /2;
-        SimulationClock.getInstance().waitFor(time_delay);
+    /**
+     * Asynchronous version of getField. The request and its reply travel over the BLE link
+     * without blocking the requester
+     * @param requester MasterNode that requested the field
+     * @param deviceName Name of the device that contains the field to be retrieved
+     * @param field Name of the field whose value is to be retrieved
+     * @return future completing with the execution result once the reply arrives at the master node
+     */
+    public CompletableFuture<ExecutionResult> getFieldAsync(MasterNode requester, String deviceName, String field){
+
+        // The request is delayed by the propagation delay between the master node and this slave node.
+        // The reply is delayed by the propagation and transmission delays to transmit the data packet from slave node to master node
+        return BleLink.request(RTT_to_Master_Node /2, () -> {
+
+            // Add a log message to the output log file indicating that the request arrived at the slave node
+            exportEvent(LogTemplate.SLAVE_FIELD_REQUESTED,
+                requester.getObject_name(),
+                field, 
+                deviceName);
 
-        // Add a log message to the output log file indicating that the request arrived at the slave node
-        exportState(String.format("Node [%s] requested field [%s] in object [%s]",
-            requester.getObject_name(),
-            field, 
-            deviceName));
 
+            // Add a log message to indicate that this slave node has asked its controller to retrieve the field value
+            exportEvent(LogTemplate.SLAVE_RETRIEVING_FIELD,
+                field, 
+                deviceName);
+
+            ExecutionResult result;
+            synchronized(localController){
+                // Ask the local controller to retrieve the value
+                result = localController.getField(deviceName, field);
+            }
+
+            //Add a log message to indicate the status of the query to the local controller
+            exportEvent(LogTemplate.SLAVE_RETRIEVED_FIELD,
+            result.isSuccess()? "SUCCESS" : "FAILURE",
+            field, 
+            deviceName,
+            result.isSuccess() ? result.getReturnedPacket().getValue() : "null");
 
-        // Add a log message to indicate that this slave node has asked its controller to retrieve the field value
-        exportState(String.format("Attempted Retrieving field [%s] in object [%s] from local controller",
+            // Add a log message to indicate the status of the query at the node level
+            exportEvent(LogTemplate.SLAVE_FIELD_REQUEST_RESULT,
+            result.isSuccess() ? "SUCCESS" : "FAILURE",
+            requester.getObject_name(),
             field, 
-            deviceName));
-
-        ExecutionResult result;
-        synchronized(localController){
-            // Ask the local controller to retrieve the value
-            result = localController.getField(deviceName, field);
-        }
-
-        //Add a log message to indicate the status of the query to the local controller
-        exportState(String.format("[%s] Retrieved field [%s] in object [%s] from local controller. Returned Value [%s]",
-        result.isSuccess()? "SUCCESS" : "FAILURE",
-        field, 
-        deviceName,
-        result.isSuccess() ? result.getReturnedPacket().getValue() : "null"));
-
-        // Add a log message to indicate the status of the query at the node level
-        exportState(String.format("[%s] Node [%s] requested field [%s] in object [%s]. Returned Value [%s]",
-        result.isSuccess() ? "SUCCESS" : "FAILURE",
-        requester.getObject_name(),
-        field, 
-        deviceName,
-        result.isSuccess() ? result.getReturnedPacket().getValue() : "null"
-        ));
-
-        // Delay simulating the propagation and transmission delays to transmit data packet from slave node to master node 
-        time_delay= RTT_to_Master_Node/2 + (result.isSuccess() ? result.getReturnedPacket().getSize() * 8 / (BLE_Transmission_Rate) : 0);
-        SimulationClock.getInstance().waitFor(time_delay);
-
-
-        // return the execution result
-        return result;
+            deviceName,
+            result.isSuccess() ? result.getReturnedPacket().getValue() : "null"
+            );
+
+            // return the execution result
+            return result;
 
+        }, result -> RTT_to_Master_Node/2 + (result.isSuccess() ? result.getReturnedPacket().getSize() * 8 / (BLE_Transmission_Rate) : 0));
     }
     
     /**
@@ -143,52 +153,64 @@ public class SlaveNode extends SimulationObject{
      * @return ExecutionResult encapsulating the success state of setting the field and a copy of the passed values as a DataPacket
      */
     public ExecutionResult setField(MasterNode setter, String deviceName, String field, String value, int size){
+        // Wait for the reply of the asynchronous request
+        return SimulationClock.getInstance().await(setFieldAsync(setter, deviceName, field, value, size));
+    }
 
-        // Delay simulating the propagation and tranmission delays of the new value from the master node to this slave node
-        int time_delay= RTT_to_Master_Node /2 + size * 8 / BLE_Transmission_Rate;
-        SimulationClock.getInstance().waitFor(time_delay);
-    
-
-        // Add a log message indicating that the request to set the field was received at the slave node
-        exportState(String.format("Node [%s] attempted updating field [%s] in object [%s]",
-            setter.getObject_name(),
-            field, 
-            deviceName));
-
-        // Add a log message indicating that this slave node has asked its local uController to set the value of the field 
-        exportState(String.format("Attempted setting field [%s] in object [%s] through local controller",
-            field, 
-            deviceName));
+    /**
+     * Asynchronous version of setField. The request and its acknowledgement travel over the BLE link
+     * without blocking the setter
+     * @param setter MasterNode that is attempting to set the field
+     * @param deviceName Name of the device whose field is to be updated 
+     * @param field Name of the field to be updated
+     * @param value New value of the field
+     * @param size Size in bytes of the new value
+     * @return future completing with the execution result once the acknowledgement arrives at the master node
+     */
+    public CompletableFuture<ExecutionResult> setFieldAsync(MasterNode setter, String deviceName, String field, String value, int size){
 
-        ExecutionResult result;
-        synchronized(localController){
-            // Ask the localuController to set the field
-            result = localController.setField(deviceName, field, value);
-        }
-        
-        // Add a log message indicating the success of the setting attempt by the local uController
-        exportState(String.format("[%s] Set field [%s] in object [%s] through local controller. New Value [%s]",
-        result.isSuccess()? "SUCCESS" : "FAILURE",
-        field, 
-        deviceName,
-        result.isSuccess() ? result.getReturnedPacket().getValue() : "old value"));
-
-        // Add a log message indicating the success of the setting attempt at the node level
-        exportState(String.format("[%s] Node [%s] attempted updating field [%s] in object [%s]. New Value [%s]",
-            result.isSuccess() ? "SUCCESS" : "FAILURE",
-            setter.getObject_name(),
+        // The request is delayed by the propagation and tranmission delays of the new value from the master node to this slave node.
+        // The acknowledgement is delayed by the propagation delay back to the master node that attempted to set the field.
+        // It is assumed that the transmission delay of that acknowledgement is negligible 
+        return BleLink.request(RTT_to_Master_Node /2 + size * 8 / BLE_Transmission_Rate, () -> {
+
+            // Add a log message indicating that the request to set the field was received at the slave node
+            exportEvent(LogTemplate.SLAVE_FIELD_UPDATE_REQUESTED,
+                setter.getObject_name(),
+                field, 
+                deviceName);
+
+            // Add a log message indicating that this slave node has asked its local uController to set the value of the field 
+            exportEvent(LogTemplate.SLAVE_SETTING_FIELD,
+                field, 
+                deviceName);
+
+            ExecutionResult result;
+            synchronized(localController){
+                // Ask the localuController to set the field
+                result = localController.setField(deviceName, field, value);
+            }
+            
+            // Add a log message indicating the success of the setting attempt by the local uController
+            exportEvent(LogTemplate.SLAVE_SET_FIELD,
+            result.isSuccess()? "SUCCESS" : "FAILURE",
             field, 
             deviceName,
-            result.isSuccess() ? result.getReturnedPacket().getValue() : "old value"
-            ));
+            result.isSuccess() ? result.getReturnedPacket().getValue() : "old value");
 
-        // Delay simulating the propagation delay of the acknowledgement back to the master node that attempted to set the field.
-        // It is assumed that the transmission delay of that acknowledgement is negligible 
-         time_delay= RTT_to_Master_Node/2;
-         SimulationClock.getInstance().waitFor(time_delay);
+            // Add a log message indicating the success of the setting attempt at the node level
+            exportEvent(LogTemplate.SLAVE_FIELD_UPDATE_RESULT,
+                result.isSuccess() ? "SUCCESS" : "FAILURE",
+                setter.getObject_name(),
+                field, 
+                deviceName,
+                result.isSuccess() ? result.getReturnedPacket().getValue() : "old value"
+                );
 
-        // Return result to the master node
-        return result;
+            // Return result to the master node
+            return result;
+
+        }, result -> RTT_to_Master_Node/2);
     }
 
     /**
@@ -203,52 +225,64 @@ public class SlaveNode extends SimulationObject{
      * 
      */
     public ExecutionResult updateSwitch(MasterNode switcher, String deviceName, String position, String switchStatus) {
-        
-        // Delay simulating the propagation and tranmission delays of the new switch state from the master node to this slave node
-        int time_delay= RTT_to_Master_Node /2 + 8 / BLE_Transmission_Rate;
-        SimulationClock.getInstance().waitFor(time_delay);
+        // Wait for the reply of the asynchronous request
+        return SimulationClock.getInstance().await(updateSwitchAsync(switcher, deviceName, position, switchStatus));
+    }
 
-        // Add a log message indicating that the request to update the switch was received at the slave node
-        exportState(String.format("Node [%s] attempted updating switch position [%s] in object [%s]",
-            switcher.getObject_name(),
-            position, 
-            deviceName));
-
-        // Add a log message indicating that this slave node has asked its local uController to switch the specified position in the connected relay
-        exportState(String.format("Attempted switching position [%s] in object [%s] through local controller.",
-           position, 
-            deviceName
-            ));
-
-        ExecutionResult result;
-        synchronized(localController){
-            // Ask the localuController to update the switch state
-            result = localController.updateSwitch(deviceName, position, switchStatus);
-        }
-
-        // Add a log message indicating the success of the switch update attempt by the local uController
-        exportState(String.format("[%s] Switched position [%s] in object [%s] through local controller. New State [%s]",
-        result.isSuccess()? "SUCCESS" : "FAILURE",
-        position, 
-        deviceName,
-        result.isSuccess() ? result.getReturnedPacket().getValue() : "old state"));
+    /**
+     * Asynchronous version of updateSwitch. The request and its acknowledgement travel over the BLE link
+     * without blocking the switcher
+     * @param switcher MasterNode that is attempting to switch the relay at a certain position
+     * @param deviceName Name of the relay device to be switched
+     * @param position Position to be switched in the relay
+     * @param switchStatus New switch state at the target position: "true" or "false"
+     * @return future completing with the execution result once the acknowledgement arrives at the master node
+     */
+    public CompletableFuture<ExecutionResult> updateSwitchAsync(MasterNode switcher, String deviceName, String position, String switchStatus) {
         
-        // Add a log message indicating the success of the switch update attempt at the node level
-        exportState(String.format("[%s] Node [%s] attempted updating switch position [%s] in object [%s]. New State [%s]",
-            result.isSuccess() ? "SUCCESS" : "FAILURE",
-            switcher.getObject_name(),
+        // The request is delayed by the propagation and tranmission delays of the new switch state from the master node to this slave node.
+        // The acknowledgement is delayed by the propagation delay back to the master node that attempted to update the switch state.
+        // It is assumed that the transmission delay of that acknowledgement is negligible
+        return BleLink.request(RTT_to_Master_Node /2 + 8 / BLE_Transmission_Rate, () -> {
+
+            // Add a log message indicating that the request to update the switch was received at the slave node
+            exportEvent(LogTemplate.SLAVE_SWITCH_UPDATE_REQUESTED,
+                switcher.getObject_name(),
+                position, 
+                deviceName);
+
+            // Add a log message indicating that this slave node has asked its local uController to switch the specified position in the connected relay
+            exportEvent(LogTemplate.SLAVE_SWITCHING,
+               position, 
+                deviceName
+                );
+
+            ExecutionResult result;
+            synchronized(localController){
+                // Ask the localuController to update the switch state
+                result = localController.updateSwitch(deviceName, position, switchStatus);
+            }
+
+            // Add a log message indicating the success of the switch update attempt by the local uController
+            exportEvent(LogTemplate.SLAVE_SWITCHED,
+            result.isSuccess()? "SUCCESS" : "FAILURE",
             position, 
             deviceName,
-            result.isSuccess() ? result.getReturnedPacket().getValue() : "old state"
-            ));
-
-        // Delay simulating the propagation delay of the acknowledgement back to the master node that attempted to update the switch state.
-        // It is assumed that the transmission delay of that acknowledgement is negligible
-        time_delay= RTT_to_Master_Node/2;
-        SimulationClock.getInstance().waitFor(time_delay);
-
-        // Return result to the master node
-        return result;       
+            result.isSuccess() ? result.getReturnedPacket().getValue() : "old state");
+            
+            // Add a log message indicating the success of the switch update attempt at the node level
+            exportEvent(LogTemplate.SLAVE_SWITCH_UPDATE_RESULT,
+                result.isSuccess() ? "SUCCESS" : "FAILURE",
+                switcher.getObject_name(),
+                position, 
+                deviceName,
+                result.isSuccess() ? result.getReturnedPacket().getValue() : "old state"
+                );
+
+            // Return result to the master node
+            return result;       
+
+        }, result -> RTT_to_Master_Node/2);
     }
 
     /**
@@ -261,13 +295,13 @@ public class SlaveNode extends SimulationObject{
 
         // Add a log message indicating that this slave node has asked 
         // the master node about a certain worker's permission to enter zone
-        exportState(String.format("Asked Control Node [%s] about ID [%s]'s permission",masterNode.getObject_name(),id));
+        exportEvent(LogTemplate.SLAVE_ASKED_PERMISSION, masterNode.getObject_name(),id);
 
         // Ask master node if the worker is permitted to enter or not
         boolean permitted = masterNode.isPermittedToEnter(this, packet);
 
         // Add a log message indicating whether the worker is permitted or not
-        exportState(String.format("ID [%s]'s permission: [%s]", id, permitted? "ALLOWED": "DENIED"));
+        exportEvent(LogTemplate.SLAVE_PERMISSION, id, permitted? "ALLOWED": "DENIED");
         
         // Return permission status
         return permitted;
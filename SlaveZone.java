@@ -166,18 +166,21 @@ public class SlaveZone extends Zone {
         // Initialize the actuator relay
         relay = new Relay(relayName, 4);
 
+        // List of the packets to publish, reused on every run of the loop algorithm
+        ArrayList<DataPacket> toPublish = new ArrayList<>();
+
         // Initialize the node's uController including the algorithm running on it
         uController controller = new uController(controllerName, runTimeStep, (uController cont)->{
             //uController continuous algorithm.
 
             // Controller should continuously query all fields. Since we connected the uController will be connected to 
-            // the actuator only, getLocalOfferedFields will return fields belonging to the actuator relay alone
-            ArrayList<ExecutionResult> results = new ArrayList<>();
-            for(String field: cont.getLocalOfferedFields()) results.add(cont.getField(relayName, field));
-
-            // Add the data packets of successfull results to an array to be published
-            ArrayList<DataPacket> toPublish = new ArrayList<>();
-            for (ExecutionResult result : results) if(result.isSuccess()) toPublish.add(result.getReturnedPacket());
+            // the actuator only, getLocalOfferedFields will return fields belonging to the actuator relay alone.
+            // Add the data packets of successfull results to the list to be published
+            toPublish.clear();
+            for(String field: cont.getLocalOfferedFields()){
+                ExecutionResult result = cont.getField(relayName, field);
+                if(result.isSuccess()) toPublish.add(result.getReturnedPacket());
+            }
 
             // Publish the data packets of successful results to the master node
             cont.publishPacket(toPublish.toArray(new DataPacket[0]));
@@ -222,12 +225,15 @@ public class SlaveZone extends Zone {
         // Connect the relay to the buzzer
         relay.connectTo(buzzer, 0);
 
+        // List of the packets to publish, reused on every run of the loop algorithm
+        ArrayList<DataPacket> packets = new ArrayList<>();
+
         // Initialize a new uController
         uController controller = new uController(controllerName, runTimeStep, (uController cont)->{
             // uController continuous algorithm
             
             // Prepare packets for the relay containing fields and their values to be published to the master node.
-            ArrayList<DataPacket> packets = new ArrayList<>();
+            packets.clear();
             
             // For every field in the all the devices connected to uController (only relay is connected)
             for(String field : cont.getLocalOfferedFields()) {
@@ -287,11 +293,14 @@ public class SlaveZone extends Zone {
         // Initialize the speaker object
         LowPowerDevice speaker = new LowPowerDevice(speakerName, 100);
 
+        // List of the packets to publish, reused on every run of the loop algorithm
+        ArrayList<DataPacket> packets = new ArrayList<>();
+
         // Initialize a uController
         uController controller = new uController(controllerName, runTimeStep, (uController cont)->{
             
             // Prepare packets for the speaker containing fields and their values  be published to the master node.
-            ArrayList<DataPacket> packets = new ArrayList<>();
+            packets.clear();
             
             // For every field in the all the devices connected to uController (only speaker is connected)
             for(String field : cont.getLocalOfferedFields()) {
@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a shared fixed-rate scheduler that owns the ticks of all simulation objects
+ * started in the SCHEDULER execution mode. Instead of one thread per uController, ticks are
+ * run by a pool of worker threads at fixed deadlines on the SimulationClock of each object.
+ * The pool is chosen by the mode of the clock: ticks of real-time clocks share a pool bounded by
+ * poolSize, while ticks of virtual-time clocks run on a pool without bound, since a tick blocked in a
+ * simulated delay holds its worker until virtual time reaches the end of the delay. The bound therefore
+ * only holds in real time
+ */
+public class TickScheduler {
+
+    // Singleton instance of the scheduler
+    private static TickScheduler instance;
+
+    // Number of worker threads running ticks in real time
+    private int poolSize;
+
+    // Workers running the ticks of real-time clocks, at most poolSize. Created on first use
+    private ExecutorService boundedWorkers;
+
+    // Workers running the ticks of virtual-time clocks. Created on first use
+    private ExecutorService unboundedWorkers;
+
+    // Number of workers created, used in their names
+    private final AtomicInteger workerCount = new AtomicInteger();
+
+    // Tasks registered with the scheduler and not reported yet, by the clock they run on
+    private LinkedHashMap<SimulationClock, ArrayList<TickTask>> tasksByClock;
+
+    // Task of every registered object whose ticks have not been cancelled
+    private HashMap<SimulationObject, TickTask> tasksByObject;
+
+    /**
+     * Private constructor. The default pool size is well above the number of available processors
+     * since ticks spend most of their time blocked in simulated link delays
+     */
+    private TickScheduler(){
+        this.poolSize = Math.max(64, 4 * Runtime.getRuntime().availableProcessors());
+        this.tasksByClock = new LinkedHashMap<>();
+        this.tasksByObject = new HashMap<>();
+    }
+
+    /**
+     * Function to get the singleton instance of the scheduler
+     * @return scheduler instance
+     */
+    public static synchronized TickScheduler getInstance(){
+        if(instance == null) instance = new TickScheduler();
+        return instance;
+    }
+
+    /**
+     * Function to set the number of worker threads running the ticks of real-time clocks. Must be called before
+     * the first object is registered on a real-time clock. Has no effect in virtual time
+     * @param poolSize Number of worker threads
+     */
+    public synchronized void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Function to register an object whose runtime function should be ticked every period ms.
+     * The first tick is due immediately
+     * @param object Simulation object to be ticked
+     * @param periodMillis Period between ticks in ms
+     */
+    public void register(SimulationObject object, int periodMillis){
+        SimulationClock clock = SimulationClock.getInstance();
+        TickTask task = new TickTask(object, this, periodMillis, clock, clock.getCurrentTimeNanos());
+        synchronized(this){
+            tasksByClock.computeIfAbsent(clock, key -> new ArrayList<>()).add(task);
+            tasksByObject.put(object, task);
+        }
+        scheduleNext(task);
+    }
+
+    /**
+     * Function to schedule the next tick of a task at its deadline
+     * @param task Task to be scheduled
+     */
+    public void scheduleNext(TickTask task){
+        task.setPendingTick(task.getClock().schedule(task.getNextDeadline(), task, getWorkers(task.getClock())));
+    }
+
+    /**
+     * Function to cancel the pending tick of an object. A tick that is already running finishes,
+     * and no further tick is scheduled since the object is no longer alive. The task is kept for the
+     * next report only
+     * @param object Simulation object whose ticks should stop
+     */
+    public void cancel(SimulationObject object){
+        TickTask task;
+        synchronized(this){
+            task = tasksByObject.remove(object);
+        }
+        if(task == null) return;
+
+        SimulationEvent pendingTick = task.getPendingTick();
+        if(pendingTick != null) task.getClock().cancel(pendingTick);
+    }
+
+    /**
+     * Function to return the worker pool running the ticks of a clock, creating it on first use. In real time,
+     * the pool is bounded by poolSize so that tick rates stay honest under load; late ticks are reported as overruns.
+     * In virtual time, time does not pass while a tick runs, so the pool grows to as many workers as there
+     * are ticks blocked in simulated delays at the same instant
+     * @param clock Clock the tick runs on
+     * @return worker pool
+     */
+    private synchronized ExecutorService getWorkers(SimulationClock clock){
+        if(clock.getMode() == SimulationClock.Mode.VIRTUAL_TIME){
+            if(unboundedWorkers == null)
+                unboundedWorkers = Executors.newCachedThreadPool(task -> createWorker(task, workerCount.incrementAndGet()));
+            return unboundedWorkers;
+        }
+
+        if(boundedWorkers == null)
+            boundedWorkers = Executors.newFixedThreadPool(poolSize, task -> createWorker(task, workerCount.incrementAndGet()));
+        return boundedWorkers;
+    }
+
+    /**
+     * Function to create a daemon worker thread
+     * @param task Task run by the worker
+     * @param index Index of the worker used in its name
+     * @return worker thread
+     */
+    private static Thread createWorker(Runnable task, int index){
+        Thread thread = new Thread(task, "TickScheduler-worker-" + index);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Function to print a summary of the ticks executed, overruns, and start lateness of every object
+     * registered since the last report, on any clock. Only objects that overran are listed individually.
+     * The tasks reported are forgotten, so that the next report only covers the next run
+     */
+    public synchronized void printReport(){
+        ArrayList<TickTask> tasks = new ArrayList<>();
+        for(ArrayList<TickTask> clockTasks : tasksByClock.values()) tasks.addAll(clockTasks);
+        tasksByClock.clear();
+        printReport(tasks);
+    }
+
+    /**
+     * Function to print the report of the objects registered on one clock since the last report, e.g. at the end
+     * of one of several runs sharing the scheduler, and forget them
+     * @param clock Clock of the run
+     */
+    public synchronized void printReport(SimulationClock clock){
+        ArrayList<TickTask> tasks = tasksByClock.remove(clock);
+        if(tasks != null) printReport(tasks);
+    }
+
+    /**
+     * Function to print the summary of a list of tasks
+     * @param tasks Tasks reported
+     */
+    private static void printReport(ArrayList<TickTask> tasks){
+        if(tasks.isEmpty()) return;
+
+        long totalTicks = 0, totalOverruns = 0, totalSkipped = 0;
+        for(TickTask task : tasks){
+            totalTicks += task.getTicks();
+            totalOverruns += task.getOverruns();
+            totalSkipped += task.getSkippedTicks();
+        }
+
+        System.out.println(String.format("[Tick Scheduler] %d objects, %d ticks, %d overruns, %d skipped ticks",
+            tasks.size(), totalTicks, totalOverruns, totalSkipped));
+
+        for(TickTask task : tasks){
+            if(task.getOverruns() == 0) continue;
+            System.out.println(String.format("    %s: %d ticks, %d overruns, %d skipped ticks, max start lateness %.3f ms",
+                task.getObject().getObject_name(), task.getTicks(), task.getOverruns(), task.getSkippedTicks(),
+                task.getMaxStartLateness() / 1e6));
+        }
+    }
+}
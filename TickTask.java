@@ -0,0 +1,163 @@
+
+/**
+ * This class represents the periodic ticks of one simulation object owned by the TickScheduler.
+ * Ticks are due at fixed deadlines (start + k * period) regardless of how long each tick takes,
+ * so the tick rate does not drift. Ticks that cannot start in time are skipped and counted as overruns
+ */
+public class TickTask implements Runnable {
+
+    // Simulation object whose runtime function is called on every tick
+    private SimulationObject object;
+
+    // Scheduler that owns this task
+    private TickScheduler scheduler;
+
+    // Clock on which the ticks are scheduled. The clock of the object's zone when zones run as separate logical processes
+    private SimulationClock clock;
+
+    // Period between ticks in nanoseconds of simulation time
+    private long period;
+
+    // Simulation time in nanoseconds at which the next tick is due
+    private long nextDeadline;
+
+    // Number of ticks executed so far
+    private long ticks;
+
+    // Number of times a tick finished after the following tick was already due
+    private long overruns;
+
+    // Number of ticks skipped because of overruns
+    private long skippedTicks;
+
+    // Largest delay in nanoseconds between a tick's deadline and the moment it actually started
+    private long maxStartLateness;
+
+    // Event of the next tick in the clock's timer wheel. Used to cancel the tick when the object terminates
+    private SimulationEvent pendingTick;
+
+    /**
+     * Constructor
+     * @param object Simulation object whose runtime function is called on every tick
+     * @param scheduler Scheduler that owns this task
+     * @param periodMillis Period between ticks in ms
+     * @param clock Clock on which the ticks are scheduled
+     * @param firstDeadline Simulation time in nanoseconds at which the first tick is due
+     */
+    public TickTask(SimulationObject object, TickScheduler scheduler, int periodMillis, SimulationClock clock, long firstDeadline) {
+        this.object = object;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.period = Math.max(periodMillis, 1) * 1_000_000L;
+        this.nextDeadline = firstDeadline;
+    }
+
+    /**
+     * Function called by a worker of the scheduler whenever a tick is due
+     */
+    @Override
+    public void run() {
+        // Stop ticking once the object has been terminated
+        if(!object.isAlive()) return;
+
+        // Record how late the tick started with respect to its deadline
+        long lateness = clock.getCurrentTimeNanos() - nextDeadline;
+        synchronized(this){
+            if(lateness > maxStartLateness) maxStartLateness = lateness;
+        }
+
+        // Call the runtime function of the object
+        object.runTimeFunction();
+
+        // The next deadline is measured from the previous deadline rather than from now,
+        // which compensates for the time spent in the runtime function
+        long now = clock.getCurrentTimeNanos();
+        synchronized(this){
+            ticks++;
+            nextDeadline += period;
+
+            // If the next tick is already due, skip the ticks that were missed
+            if(now > nextDeadline){
+                long missed = (now - nextDeadline + period - 1) / period;
+                nextDeadline += missed * period;
+                skippedTicks += missed;
+                overruns++;
+            }
+        }
+
+        // Schedule the next tick
+        scheduler.scheduleNext(this);
+    }
+
+    /**
+     * Getter
+     * @return simulation object ticked by this task
+     */
+    public SimulationObject getObject() {
+        return object;
+    }
+
+    /**
+     * Getter
+     * @return clock on which the ticks are scheduled
+     */
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Getter
+     * @return simulation time in nanoseconds at which the next tick is due
+     */
+    public synchronized long getNextDeadline() {
+        return nextDeadline;
+    }
+
+    /**
+     * Getter
+     * @return event of the next tick scheduled on the clock
+     */
+    public synchronized SimulationEvent getPendingTick() {
+        return pendingTick;
+    }
+
+    /**
+     * Function to set the event of the next tick scheduled on the clock
+     * @param pendingTick event of the next tick scheduled on the clock
+     */
+    public synchronized void setPendingTick(SimulationEvent pendingTick) {
+        this.pendingTick = pendingTick;
+    }
+
+    /**
+     * Getter
+     * @return number of ticks executed
+     */
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Getter
+     * @return number of ticks that finished after the following tick was due
+     */
+    public synchronized long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Getter
+     * @return number of ticks skipped because of overruns
+     */
+    public synchronized long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * Getter
+     * @return largest delay in nanoseconds between a tick's deadline and its start
+     */
+    public synchronized long getMaxStartLateness() {
+        return maxStartLateness;
+    }
+}
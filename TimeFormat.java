@@ -0,0 +1,72 @@
+
+/**
+ * This class formats simulation timestamps kept as nanoseconds into seconds with 3 decimal places,
+ * the same text produced by String.format("%.3f") but without going through the Formatter.
+ * Formatting only happens at the output edge (log writers, CSV rows). The last formatted
+ * millisecond is cached since many log records share the same timestamp
+ */
+public class TimeFormat {
+
+    // Last formatted timestamp. Replaced as a whole so that it can be read without locking
+    private static volatile CachedTime lastFormatted = new CachedTime(0, "0.000");
+
+    /**
+     * Immutable pair of a timestamp in milliseconds and its formatted text
+     */
+    private static final class CachedTime {
+        private final long millis;
+        private final String text;
+
+        private CachedTime(long millis, String text) {
+            this.millis = millis;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Function to format a timestamp as seconds with 3 decimal places
+     * @param nanos Timestamp in nanoseconds
+     * @return formatted timestamp, e.g. "12.345"
+     */
+    public static String format(long nanos){
+        long millis = toMillis(nanos);
+
+        // Reuse the cached text if the timestamp falls in the same millisecond
+        CachedTime cached = lastFormatted;
+        if(cached.millis == millis) return cached.text;
+
+        String text = appendSeconds(new StringBuilder(16), nanos).toString();
+        lastFormatted = new CachedTime(millis, text);
+        return text;
+    }
+
+    /**
+     * Function to append a timestamp as seconds with 3 decimal places to a StringBuilder without
+     * creating intermediate objects
+     * @param builder StringBuilder to append to
+     * @param nanos Timestamp in nanoseconds
+     * @return the same StringBuilder
+     */
+    public static StringBuilder appendSeconds(StringBuilder builder, long nanos){
+        long millis = toMillis(nanos);
+        if(millis < 0){
+            builder.append('-');
+            millis = -millis;
+        }
+
+        long fraction = millis % 1000;
+        builder.append(millis / 1000).append('.');
+        if(fraction < 100) builder.append('0');
+        if(fraction < 10) builder.append('0');
+        return builder.append(fraction);
+    }
+
+    /**
+     * Function to round a timestamp in nanoseconds to the nearest millisecond (half up, like "%.3f")
+     * @param nanos Timestamp in nanoseconds
+     * @return timestamp in milliseconds
+     */
+    private static long toMillis(long nanos){
+        return nanos >= 0 ? (nanos + 500_000) / 1_000_000 : -((-nanos + 500_000) / 1_000_000);
+    }
+}
@@ -0,0 +1,288 @@
+
+/**
+ * This class is a hierarchical hashed timer wheel holding the events scheduled on the SimulationClock.
+ * Events are keyed on clock ticks (simulation time divided by the tick resolution) and placed on one
+ * of several levels of 64 slots each. Level 0 slots span one tick, level 1 slots span 64 ticks,
+ * level 2 slots span 4096 ticks, and so on. Inserting and cancelling an event are O(1). Finding the
+ * next event uses an occupancy bitmap per level, and a slot on a higher level is cascaded down
+ * to the lower levels when the wheel reaches it.
+ *
+ * An event less than the wheel's span ahead, but past the end of the current turn of the top level, goes to a
+ * top level slot at or behind the current one, which the wheel reaches when the top level wraps around. Events
+ * further ahead wait in an overflow list and are re-inserted whenever the top level wraps, so that they enter the
+ * wheel once it comes within their span.
+ *
+ * Each event records its exact time, so events sharing a slot on level 0 are still returned in order of
+ * (time, sequence). This class is not thread safe; the SimulationClock synchronizes access to it
+ */
+public class TimerWheel {
+
+    // Number of bits of the tick used to index a slot on one level
+    private static final int SLOT_BITS = 6;
+
+    // Number of slots on every level
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    // Number of levels. With 6 levels of 64 slots, the wheel spans 2^36 ticks ahead of the current tick.
+    // Events further away than that wait in an overflow list
+    private static final int LEVELS = 6;
+
+    // Level index used to mark events in the overflow list
+    private static final int OVERFLOW = LEVELS;
+
+    // Number of bits of the tick covered by all levels, and number of ticks the wheel spans
+    private static final int SPAN_BITS = LEVELS * SLOT_BITS;
+    private static final long SPAN = 1L << SPAN_BITS;
+
+    // Length of one tick in nanoseconds of simulation time
+    private long resolution;
+
+    // Tick the wheel is currently at. Never decreases
+    private long currentTick;
+
+    // Heads of the doubly linked lists of events in every slot of every level
+    private SimulationEvent[][] slots;
+
+    // Bitmap of non-empty slots on every level. Bit i is set if slot i holds at least one event
+    private long[] occupied;
+
+    // Head of the list of events too far ahead to fit in the wheel
+    private SimulationEvent overflow;
+
+    // Number of events in the wheel
+    private int size;
+
+    /**
+     * Constructor
+     * @param resolution Length of one tick in nanoseconds of simulation time
+     */
+    public TimerWheel(long resolution) {
+        this.resolution = resolution;
+        this.currentTick = 0;
+        this.slots = new SimulationEvent[LEVELS][SLOTS];
+        this.occupied = new long[LEVELS];
+        this.overflow = null;
+        this.size = 0;
+    }
+
+    /**
+     * Function to add an event to the wheel. Events due before the current tick are placed on the current tick
+     * @param event Event to be added
+     */
+    public void add(SimulationEvent event){
+        long tick = Math.max(event.getTime() / resolution, currentTick);
+
+        // The level is given by the highest digit in which the event's tick differs from the current tick
+        long difference = tick ^ currentTick;
+        int level = difference == 0 ? 0 : (63 - Long.numberOfLeadingZeros(difference)) / SLOT_BITS;
+
+        if(level >= LEVELS && tick - currentTick >= SPAN){
+            // Too far ahead for the wheel
+            link(event, OVERFLOW, 0);
+        }
+        else{
+            // An event in the next turn of the top level goes to its slot on the top level, which is at or behind
+            // the current top level slot. It is reached when the top level wraps around
+            level = Math.min(level, LEVELS - 1);
+            int slot = (int) (tick >>> (level * SLOT_BITS)) & (SLOTS - 1);
+            link(event, level, slot);
+        }
+        size++;
+    }
+
+    /**
+     * Function to cancel an event that is still in the wheel
+     * @param event Event to be removed
+     * @return true if the event was in the wheel and has been removed, false otherwise
+     */
+    public boolean remove(SimulationEvent event){
+        if(event.wheelLevel < 0) return false;
+
+        unlink(event);
+        size--;
+        return true;
+    }
+
+    /**
+     * Function to remove and return the earliest event in the wheel
+     * @return earliest event, or null if the wheel is empty
+     */
+    public SimulationEvent poll(){
+        SimulationEvent earliest = findEarliest();
+        if(earliest != null) remove(earliest);
+        return earliest;
+    }
+
+    /**
+     * Function to return the due time of the earliest event without removing it
+     * @return time in nanoseconds of the earliest event, or Long.MAX_VALUE if the wheel is empty
+     */
+    public long peekTime(){
+        SimulationEvent earliest = findEarliest();
+        return earliest == null ? Long.MAX_VALUE : earliest.getTime();
+    }
+
+    /**
+     * Getter
+     * @return true if there are no events in the wheel
+     */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * Getter
+     * @return number of events in the wheel
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Function to find the earliest event. Moves the wheel forward to the first non-empty slot,
+     * cascading higher level slots down as they are reached
+     * @return earliest event, or null if the wheel is empty
+     */
+    private SimulationEvent findEarliest(){
+        if(size == 0) return null;
+
+        while(true){
+            // Find the lowest level with a non-empty slot ahead of the current tick.
+            // On level 0 the current slot itself holds the events due now
+            int level;
+            long candidates = 0;
+            for(level = 0; level < LEVELS; level++){
+                int digit = (int) (currentTick >>> (level * SLOT_BITS)) & (SLOTS - 1);
+                long ahead = level == 0 ? -1L << digit : (digit == SLOTS - 1 ? 0 : -1L << (digit + 1));
+                candidates = occupied[level] & ahead;
+                if(candidates != 0) break;
+            }
+
+            if(level == LEVELS){
+                int digit = (int) (currentTick >>> ((LEVELS - 1) * SLOT_BITS)) & (SLOTS - 1);
+                long behind = digit == SLOTS - 1 ? -1L : ~(-1L << (digit + 1));
+
+                if((occupied[LEVELS - 1] & behind) != 0){
+                    // Only events in the next turn of the top level are left. Wrap the top level around to the start
+                    // of the next turn, whose first top level slot belongs to the lower levels, and let the overflow
+                    // events now within the wheel's span in
+                    currentTick = ((currentTick >>> SPAN_BITS) + 1) << SPAN_BITS;
+                    if((occupied[LEVELS - 1] & 1L) != 0) cascade(LEVELS - 1, 0);
+                }
+                else{
+                    // The wheel is empty, so only overflow events are left. Move the wheel to the earliest one
+                    long earliestTick = Long.MAX_VALUE;
+                    for(SimulationEvent event = overflow; event != null; event = event.wheelNext)
+                        earliestTick = Math.min(earliestTick, event.getTime() / resolution);
+                    currentTick = Math.max(currentTick, earliestTick);
+                }
+                reinsertOverflow();
+                continue;
+            }
+
+            int slot = Long.numberOfTrailingZeros(candidates);
+
+            // On level 0 the slot holds the earliest tick
+            if(level == 0){
+                currentTick = (currentTick & ~(long) (SLOTS - 1)) | slot;
+                return earliestIn(slots[0][slot]);
+            }
+
+            // Move the wheel to the start of the slot's span and cascade its events down to lower levels
+            int shift = level * SLOT_BITS;
+            currentTick = ((currentTick >>> (shift + SLOT_BITS)) << (shift + SLOT_BITS)) | ((long) slot << shift);
+            cascade(level, slot);
+        }
+    }
+
+    /**
+     * Function to re-insert the events of a slot after the wheel has reached the slot's span
+     * @param level Level of the slot
+     * @param slot Index of the slot
+     */
+    private void cascade(int level, int slot){
+        SimulationEvent event = slots[level][slot];
+        slots[level][slot] = null;
+        occupied[level] &= ~(1L << slot);
+
+        while(event != null){
+            SimulationEvent next = event.wheelNext;
+            event.wheelLevel = -1;
+            event.wheelPrevious = event.wheelNext = null;
+            size--;
+            add(event);
+            event = next;
+        }
+    }
+
+    /**
+     * Function to re-insert all overflow events after the wheel has moved to a new turn of the top level. Events
+     * still too far ahead go back to the overflow list
+     */
+    private void reinsertOverflow(){
+        SimulationEvent event = overflow;
+        overflow = null;
+        while(event != null){
+            SimulationEvent next = event.wheelNext;
+            event.wheelLevel = -1;
+            event.wheelPrevious = event.wheelNext = null;
+            size--;
+            add(event);
+            event = next;
+        }
+    }
+
+    /**
+     * Function to find the earliest event in a slot by (time, sequence)
+     * @param head Head of the slot's list
+     * @return earliest event in the slot
+     */
+    private static SimulationEvent earliestIn(SimulationEvent head){
+        SimulationEvent earliest = head;
+        for(SimulationEvent event = head.wheelNext; event != null; event = event.wheelNext)
+            if(event.compareTo(earliest) < 0) earliest = event;
+        return earliest;
+    }
+
+    /**
+     * Function to add an event at the head of a slot's list
+     * @param event Event to be linked
+     * @param level Level of the slot, or OVERFLOW
+     * @param slot Index of the slot
+     */
+    private void link(SimulationEvent event, int level, int slot){
+        SimulationEvent head = level == OVERFLOW ? overflow : slots[level][slot];
+
+        event.wheelLevel = level;
+        event.wheelSlot = slot;
+        event.wheelPrevious = null;
+        event.wheelNext = head;
+        if(head != null) head.wheelPrevious = event;
+
+        if(level == OVERFLOW) overflow = event;
+        else{
+            slots[level][slot] = event;
+            occupied[level] |= 1L << slot;
+        }
+    }
+
+    /**
+     * Function to remove an event from its slot's list
+     * @param event Event to be unlinked
+     */
+    private void unlink(SimulationEvent event){
+        int level = event.wheelLevel;
+        int slot = event.wheelSlot;
+
+        if(event.wheelPrevious != null) event.wheelPrevious.wheelNext = event.wheelNext;
+        else if(level == OVERFLOW) overflow = event.wheelNext;
+        else slots[level][slot] = event.wheelNext;
+
+        if(event.wheelNext != null) event.wheelNext.wheelPrevious = event.wheelPrevious;
+
+        if(level != OVERFLOW && slots[level][slot] == null) occupied[level] &= ~(1L << slot);
+
+        event.wheelLevel = -1;
+        event.wheelPrevious = event.wheelNext = null;
+    }
+}
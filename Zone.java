@@ -26,6 +26,9 @@ public abstract class Zone extends SimulationObject {
     // WiFi transmission rate in Kbps between connected gateways
     protected int WIFI_Transmission_Rate;
 
+    // Clock of the zone when it runs as its own logical process. null if the zone uses the shared clock
+    protected SimulationClock clock;
+
     /**
      * Constructor
      * @param objectName Name of the zone
@@ -62,6 +65,39 @@ public abstract class Zone extends SimulationObject {
         this.gateway.connectTo(zone.gateway, RTT_to_gateway);
     }
     
+    /**
+     * Function to run the zone as its own logical process on the given clock. Must be called before the zone is started
+     * @param clock Clock of the zone, created by a ZoneCoordinator
+     */
+    public void setClock(SimulationClock clock){
+        this.clock = clock;
+        gateway.setClock(clock);
+    }
+
+    /**
+     * Getter
+     * @return clock of the zone, or null if the zone uses the shared clock
+     */
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Getter
+     * @return master node of the zone
+     */
+    public MasterNode getMasterNode() {
+        return masterNode;
+    }
+
+    /**
+     * Getter
+     * @return gateway of the zone's master node
+     */
+    public Gateway getGateway() {
+        return gateway;
+    }
+
     /**
      * Utility function to generate full name of a local object name
      * @param localName Name of the object whose full name is to be retrieved
@@ -85,6 +121,12 @@ public abstract class Zone extends SimulationObject {
      */
     @Override
     public void start() {
+        // When the zone runs as its own logical process, its objects are started on the zone's clock
+        if(clock != null && SimulationClock.getInstance() != clock){
+            clock.runBound(this::start);
+            return;
+        }
+
         super.start(false,0);
         exportState("Started");
         
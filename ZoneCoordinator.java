@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class runs every zone of the simulation as its own logical process in virtual time. Each zone
+ * gets its own SimulationClock, and its uControllers, nodes and gateway only ever wait on that clock, so
+ * zones advance in parallel on separate threads.
+ *
+ * Zones only interact through their gateways, and every hop between gateways takes at least half the RTT
+ * of the link. This minimum delay is the lookahead of a conservative time-window synchronization: all
+ * zones process their events before the horizon (earliest pending event + lookahead) in parallel, then
+ * the packets exchanged between zones during the window are delivered, and the next window opens. A packet
+ * sent during a window always arrives at or after the window's horizon, so no zone ever receives a packet
+ * in its past.
+ */
+public class ZoneCoordinator {
+
+    /**
+     * A packet hop sent from one zone to another, held until the end of the time window it was sent in
+     */
+    private static final class LinkMessage {
+        private final SimulationClock target;
+        private final long time;
+        private final long sequence;
+        private final Runnable delivery;
+
+        private LinkMessage(SimulationClock target, long time, long sequence, Runnable delivery) {
+            this.target = target;
+            this.time = time;
+            this.sequence = sequence;
+            this.delivery = delivery;
+        }
+    }
+
+    // Clocks of all the zones run by the coordinator
+    private ArrayList<SimulationClock> clocks;
+
+    // Minimum delay in nanoseconds of any hop between two gateways. Length of every time window
+    private long lookahead;
+
+    // Horizon of the current time window. Messages must arrive at or after it
+    private long horizon;
+
+    // Messages sent during the current time window
+    private ArrayList<LinkMessage> pendingMessages;
+
+    // Sequence number given to the next message. Orders messages arriving at the same time
+    private long messageSequence;
+
+    // Thread running the time windows. Unparked whenever a zone finishes its window
+    private volatile Thread driver;
+
+    // Statistics reported at the end of the simulation
+    private long windows;
+    private long messages;
+
+    // Workers running the delivery of messages in their target zones. Created on first use
+    private ExecutorService deliveryWorkers;
+
+    /**
+     * Constructor. Gives every zone its own clock and derives the lookahead from the RTTs of the gateway links.
+     * Must be called after the zones have been connected to each other
+     * @param zones Zones to be run as logical processes
+     */
+    public ZoneCoordinator(Collection<? extends Zone> zones) {
+        if(SimulationClock.getInstance().getMode() != SimulationClock.Mode.VIRTUAL_TIME)
+            throw new IllegalStateException("Zones can only run as separate logical processes in virtual time");
+
+        this.clocks = new ArrayList<>();
+        this.pendingMessages = new ArrayList<>();
+        this.messageSequence = 0;
+        this.horizon = 0;
+
+        // The lookahead is the smallest propagation delay (RTT/2) of any link between gateways
+        int minimumDelay = Integer.MAX_VALUE;
+        for(Zone zone : zones){
+            for(int RTT : zone.getGateway().connectedGateways.values())
+                minimumDelay = Math.min(minimumDelay, RTT / 2);
+        }
+        if(minimumDelay <= 0)
+            throw new IllegalStateException("Zones can only run as separate logical processes if every gateway link has an RTT of at least 2 ms");
+        this.lookahead = minimumDelay == Integer.MAX_VALUE ? Long.MAX_VALUE : minimumDelay * 1_000_000L;
+
+        // Give every zone its own clock
+        for(Zone zone : zones){
+            SimulationClock clock = SimulationClock.createZoneClock(this);
+            zone.setClock(clock);
+            clocks.add(clock);
+        }
+    }
+
+    /**
+     * Function to send a packet hop to another zone. The delivery runs in the target zone, on the target
+     * zone's clock, once its simulation time reaches the arrival time
+     * @param target Clock of the zone receiving the hop
+     * @param time Arrival time in nanoseconds. Must be at least the sender's time plus the lookahead
+     * @param delivery Action run in the target zone when the hop arrives
+     */
+    public synchronized void send(SimulationClock target, long time, Runnable delivery){
+        if(time < horizon)
+            throw new IllegalStateException(String.format("Hop arriving at %s is inside the current time window ending at %s",
+                TimeFormat.format(time), TimeFormat.format(horizon)));
+
+        pendingMessages.add(new LinkMessage(target, time, messageSequence++, delivery));
+    }
+
+    /**
+     * Function called by a zone's clock when the zone has finished its time window
+     */
+    public void signal(){
+        Thread thread = driver;
+        if(thread != null) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Function to run time windows on the calling thread until every zone has processed all its events before the end time.
+     * Pass Long.MAX_VALUE to run until no zone has anything left to do
+     * @param endTime Simulation time in nanoseconds at which to stop
+     */
+    public void runUntil(long endTime){
+        driver = Thread.currentThread();
+        try {
+            while(true){
+                // Wait until every zone has finished the current window
+                for(SimulationClock clock : clocks){
+                    while(!clock.isBlocked()) LockSupport.park(this);
+                }
+
+                // Hand the hops sent during the window to their target zones
+                deliverPendingMessages();
+
+                // The next window starts at the earliest pending event of any zone
+                long next = Long.MAX_VALUE;
+                for(SimulationClock clock : clocks) next = Math.min(next, clock.getNextEventTime());
+                if(next == Long.MAX_VALUE || next >= endTime) break;
+
+                long newHorizon = next > Long.MAX_VALUE - lookahead ? Long.MAX_VALUE : next + lookahead;
+                newHorizon = Math.min(newHorizon, endTime);
+                synchronized(this){
+                    horizon = newHorizon;
+                    windows++;
+                }
+
+                // Let every zone run up to the new horizon in parallel
+                for(SimulationClock clock : clocks) clock.advanceTo(newHorizon);
+            }
+        } finally {
+            driver = null;
+        }
+    }
+
+    /**
+     * Function to return the simulation time of the zone furthest behind. No zone can do anything before it
+     * @return earliest current time of any zone in nanoseconds
+     */
+    public long getEarliestZoneTime(){
+        long earliest = Long.MAX_VALUE;
+        for(SimulationClock clock : clocks) earliest = Math.min(earliest, clock.getCurrentTimeNanos());
+        return earliest;
+    }
+
+    /**
+     * Function to schedule the hops sent during the last window on their target clocks. Hops are scheduled in
+     * order of arrival time and then in the order they were sent
+     */
+    private void deliverPendingMessages(){
+        ArrayList<LinkMessage> delivered;
+        synchronized(this){
+            if(pendingMessages.isEmpty()) return;
+            delivered = pendingMessages;
+            pendingMessages = new ArrayList<>();
+            messages += delivered.size();
+        }
+
+        delivered.sort(Comparator.<LinkMessage>comparingLong(message -> message.time).thenComparingLong(message -> message.sequence));
+        for(LinkMessage message : delivered)
+            message.target.schedule(message.time, message.delivery, getDeliveryWorkers());
+    }
+
+    /**
+     * Function to return the delivery workers, creating them on first use
+     * @return delivery workers
+     */
+    private synchronized ExecutorService getDeliveryWorkers(){
+        if(deliveryWorkers == null){
+            AtomicInteger workerCount = new AtomicInteger();
+            deliveryWorkers = Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "ZoneCoordinator-worker-" + workerCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return deliveryWorkers;
+    }
+
+    /**
+     * Function to print the number of zones, the lookahead, and the number of time windows and hops between zones
+     */
+    public synchronized void printReport(){
+        System.out.println(String.format("[Zone Coordinator] %d zones, lookahead %s ms, %d time windows, %d hops between zones",
+            clocks.size(), lookahead == Long.MAX_VALUE ? "unbounded" : String.valueOf(lookahead / 1_000_000), windows, messages));
+    }
+}
@@ -1,8 +1,11 @@
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class represents a real-life microcontroller, which is present in every master and slave node in a zone
@@ -41,6 +44,13 @@ public class uController extends SimulationObject{
     // node would be connected to a gateway
     private Gateway gateway;
 
+    // Sink of the database the loop algorithm stores data packets in. Only set for the uController of a master zone's
+    // master node. null otherwise
+    private LogSink database;
+
+    // Flag indicating whether the bulk data packets forwarded to other zones are compressed with a dictionary and deltas
+    private static boolean compressBulkPackets = false;
+
     /**
      * Constructor
      * @param name Name of this uController object
@@ -173,11 +183,11 @@ public class uController extends SimulationObject{
     
     /**
      * Function to send one or more packets to the master node. Typically called in the loop algorithms of slave node uControllers
-     * @param packets Packets to send to master node
+     * @param packets Packets to send to master node. Ownership of the packets passes to the master node
      */
     public void publishPacket(DataPacket... packets){
         // Add a log message indiciating that the packets have been sent upwards to the parent node
-        exportState(String.format("Sent [%d] packets to parent node to publish them",packets.length));
+        exportEvent(LogTemplate.CONTROLLER_SENT_PACKETS_TO_PARENT, packets.length);
         
         // Ask the parent node to publish the packeets
         parentSlaveNode.publishPacket(packets);
@@ -189,12 +199,12 @@ public class uController extends SimulationObject{
      * @param previous Last gateway to forward the packet to this uController's connected gateway
      * @param packet Bulk data packet being shared
      */
-    public void receiveBulkDataPacket(Gateway source, Gateway previous, BulkDataPacket packet){
+    public void receiveBulkDataPacket(Gateway source, Gateway previous, ByteBuffer packet){
         // Add a log message indiciating the receival of the packet
-        exportState(String.format("[SUCCESS] Received packet from Gateway [%s]. Last Forwarded By Gateway [%s]", source.getObject_name(), previous.getObject_name()));
+        exportEvent(LogTemplate.CONTROLLER_RECEIVED_GATEWAY_PACKET, source.getObject_name(), previous.getObject_name());
         
-        // Forward the received bulk packet to the parent master node of the uController
-        parentMasterNode.receiveForwardedPacket(source.getParentNode(), packet);
+        // Decode the received bytes and forward the bulk packet to the parent master node of the uController
+        parentMasterNode.receiveForwardedPacket(source.getParentNode(), BulkDataPacket.decode(packet));
     }
     
     /**
@@ -243,23 +253,41 @@ public class uController extends SimulationObject{
         }
 
         // Add a log message to parent master node indicating the start of the forwarding
-        this.parentMasterNode.exportState(String.format("[STARTED] Sent Packet Through Connected Gateway. Next Hop [%s]. Target Destination [%s]", nextHop,destination));
+        this.parentMasterNode.exportEvent(LogTemplate.CONTROLLER_STARTED_GATEWAY_SEND, nextHop,destination);
         
         // Add a log message indicating the start of the forwarding
-        exportState(String.format("[STARTED] Sent Packet Through Connected Gateway. Next Hop [%s]. Target Destination [%s]", nextHop,destination));
+        exportEvent(LogTemplate.CONTROLLER_STARTED_GATEWAY_SEND, nextHop,destination);
         
-        // Forwardd the packet
-        boolean sent =  gateway.forward(gateway,gateway, packet, route, 0);
+        // Forwardd the packet. It is encoded (and compressed if enabled) once here, and the gateways along the route
+        // pass the same bytes on. The receiving uController decodes them in receiveBulkDataPacket. A packet holding a
+        // value too long to encode is not sent
+        boolean sent;
+        try {
+            sent = gateway.forward(gateway,gateway, packet.encode(compressBulkPackets), route, 0);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Bulk data packet of " + packet.getSourceNodeName() + " not sent: " + e.getMessage());
+            sent = false;
+        }
         
         // Add a log message indicating the success or failure of the forwarding
-        exportState(String.format("[%s] Sent Packet Through Connected Gateway. Next Hop [%s]. Target Destination [%s]", sent ? "SUCCESS" : "FAILURE", nextHop, destination));
+        exportEvent(LogTemplate.CONTROLLER_GATEWAY_SEND_RESULT, sent ? "SUCCESS" : "FAILURE", nextHop, destination);
         
         // Add a log message to the parent master node indicating the success or failure of the forwarding
-        this.parentMasterNode.exportState(String.format("[%s] Sent Packet Through Connected Gateway. Next Hop [%s]. Target Destination [%s]", sent ? "SUCCESS" : "FAILURE", nextHop, destination));
+        this.parentMasterNode.exportEvent(LogTemplate.CONTROLLER_GATEWAY_SEND_RESULT, sent ? "SUCCESS" : "FAILURE", nextHop, destination);
         
         return sent;
     }
 
+    /**
+     * Function to set whether the bulk data packets forwarded to other zones are compressed. Compressed packets code
+     * the repeated names with a dictionary and the values and times as differences, so fewer bytes cross the WiFi
+     * links. Must be called before the simulation starts
+     * @param enabled true to compress the bulk data packets, false to send them in the plain format
+     */
+    public static void setBulkCompression(boolean enabled){
+        compressBulkPackets = enabled;
+    }
+
     /**
      * Function to add a worker's ID to the list of IDs permitted to enter a zone. Typically called on uControllers
      * of master nodes
@@ -286,19 +314,50 @@ public class uController extends SimulationObject{
      */
     public boolean isPermittedToEnter(String id){
         boolean permitted = permittedIDs.contains(id);
-        exportState(String.format("Parent Node [%s] asked if ID [%s] is permitted to enter zone. Permission [%s]", parentMasterNode.getObject_name(),id, permitted ? "ALLOWED" : "DENIED"));
+        exportEvent(LogTemplate.CONTROLLER_PERMISSION_QUERY, parentMasterNode.getObject_name(),id, permitted ? "ALLOWED" : "DENIED");
         return permitted;
     }
     
     /**
-     * Function to retrieve the data packets buffered in the parent master node
-     * @return A copy of the buffered packets
+     * Function to retrieve the data packets buffered in the parent master node, leaving them in its buffer
+     * @return Copies of the buffered packets, which are not pooled and belong to the caller
      */
     public Queue<DataPacket> getBufferedDataPackets() {
         if(parentMasterNode != null) return parentMasterNode.getBufferedDataPackets();
         else return new LinkedList<>();
     }
     
+    /**
+     * Function to take the data packets buffered in the parent master node, leaving its buffer empty. The caller
+     * becomes the owner of the packets (see DataPacketPool)
+     * @return The packets that were buffered
+     */
+    public Queue<DataPacket> takeBufferedDataPackets() {
+        if(parentMasterNode != null) return parentMasterNode.takeBufferedDataPackets();
+        else return new LinkedList<>();
+    }
+
+    /**
+     * Function to move the data packets buffered in the parent master node to a collection, leaving its buffer empty.
+     * No packet received while draining is lost: it is taken by the next drain. The caller becomes the owner of the
+     * packets (see DataPacketPool)
+     * @param target Collection the packets are added to
+     * @return number of packets drained
+     */
+    public int drainBufferedDataPackets(Collection<? super DataPacket> target) {
+        if(parentMasterNode != null) return parentMasterNode.drainBufferedDataPackets(target);
+        else return 0;
+    }
+
+    /**
+     * Getter
+     * @return number of data packets buffered in the parent master node
+     */
+    public int getBufferedDataPacketCount() {
+        if(parentMasterNode != null) return parentMasterNode.getBufferedDataPacketCount();
+        else return 0;
+    }
+
     /**
      * Function to clear the data packets buffered in the parent master node
      */
@@ -329,20 +388,37 @@ public class uController extends SimulationObject{
      */
     public ExecutionResult setFieldIn(String targetNodeName, String targetObjectName, String field, String value,
             int size) {
+        // Wait for the result of the asynchronous update
+        return SimulationClock.getInstance().await(setFieldInAsync(targetNodeName, targetObjectName, field, value, size));
+    }
+
+    /**
+     * Asynchronous version of setFieldIn. Allows the loop algorithm to issue several commands to slave nodes
+     * before waiting for any of them
+     * @param targetNodeName Name of the slave node containing the device containing the field whose value is to be updated
+     * @param targetObjectName Name of the device containing the field to be updated
+     * @param field Name of the field to be updated
+     * @param value New value for the field
+     * @param size Size of the new value in bytes
+     * @return future completing with the execution result once the slave node acknowledges the update
+     */
+    public CompletableFuture<ExecutionResult> setFieldInAsync(String targetNodeName, String targetObjectName, String field, String value,
+            int size) {
         // Add a log message indicating that the parent master node  was asked to set field in target object
-        exportState(String.format("Asked parent node to set field [%s] in object [%s] in slave node [%s]", field, targetObjectName, targetNodeName));
+        exportEvent(LogTemplate.CONTROLLER_ASKED_PARENT_SET_FIELD, field, targetObjectName, targetNodeName);
         
         // Ask parent master node to set the field in the target device
-        ExecutionResult result =  parentMasterNode.setFieldIn(targetNodeName, targetObjectName, field, value, size);
+        return parentMasterNode.setFieldInAsync(targetNodeName, targetObjectName, field, value, size).thenApply(result -> {
         
-        // Check whether update attempt was successful or not 
-        String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
-        
-        // Add a log message indiciating the success of the setting attempt
-        exportState(String.format("[%s] Parent set field [%s] in object [%s] in slave node [%s]", successStatus, field, targetObjectName, targetNodeName));
-        
-        // return the execution result
-        return result;                
+            // Check whether update attempt was successful or not 
+            String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
+            
+            // Add a log message indiciating the success of the setting attempt
+            exportEvent(LogTemplate.CONTROLLER_PARENT_SET_FIELD_RESULT, successStatus, field, targetObjectName, targetNodeName);
+            
+            // return the execution result
+            return result;
+        });
     }
 
     /**
@@ -356,20 +432,44 @@ public class uController extends SimulationObject{
      */
     public ExecutionResult updateSwitchIn(String targetNodeName, String targetObjectName, String position,
             String switchStatus) {
+        // Wait for the result of the asynchronous update
+        return SimulationClock.getInstance().await(updateSwitchInAsync(targetNodeName, targetObjectName, position, switchStatus));
+    }
+
+    /**
+     * Asynchronous version of updateSwitchIn. Allows the loop algorithm to issue several commands to slave nodes
+     * before waiting for any of them
+     * @param targetNodeName Name of the slave node containing relay device whose switch state is to be updated
+     * @param targetObjectName Name of the relay device whose switch state is to be update
+     * @param position The switch number with the relay
+     * @param switchStatus The new status of the switch. "true" or "false"
+     * @return future completing with the execution result once the slave node acknowledges the update
+     */
+    public CompletableFuture<ExecutionResult> updateSwitchInAsync(String targetNodeName, String targetObjectName, String position,
+            String switchStatus) {
         // Add a log message indicating that the parent slave node was asked to update a switch position in target device
-        exportState(String.format("Asked parent node to set switch position [%s] in object [%s] in slave node [%s]", position, targetObjectName, targetNodeName));
+        exportEvent(LogTemplate.CONTROLLER_ASKED_PARENT_SET_SWITCH, position, targetObjectName, targetNodeName);
         
         // Ask parent master node to update the switch status
-        ExecutionResult result = parentMasterNode.updateSwitchIn(targetNodeName, targetObjectName, position, switchStatus);
-        
-        // Check if update attempt was successful
-        String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
-        
-        // Add a log message indicating that the success of the switch status update attempt
-        exportState(String.format("[%s] Parent node set switch position [%s] in object [%s] in slave node [%s]", successStatus, position, targetObjectName, targetNodeName));
+        return parentMasterNode.updateSwitchInAsync(targetNodeName, targetObjectName, position, switchStatus).thenApply(result -> {
         
-        // Return execution result
-        return result;  
+            // Check if update attempt was successful
+            String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
+            
+            // Add a log message indicating that the success of the switch status update attempt
+            exportEvent(LogTemplate.CONTROLLER_PARENT_SET_SWITCH_RESULT, successStatus, position, targetObjectName, targetNodeName);
+            
+            // Return execution result
+            return result;
+        });
+    }
+
+    /**
+     * Function to block until all the given asynchronous commands have completed
+     * @param commands Futures returned by the asynchronous command functions
+     */
+    public void awaitAll(CompletableFuture<?>... commands){
+        SimulationClock.getInstance().await(CompletableFuture.allOf(commands));
     }
 
     /**
@@ -409,8 +509,8 @@ public class uController extends SimulationObject{
                 // If the device is the target device
                 if(dev.getObject_name().equalsIgnoreCase(objectName)){
                     
-                    // Execute a GET command on that device
-                    ExecutionResult result = dev.execute("GET", field);
+                    // Execute a GET command on that device. The returned packet is owned by the caller
+                    ExecutionResult result = dev.get(field);
 
                     // Check  the status of the GET command
                     String status = result.isSuccess() ? "SUCCESS" : "FAILURE";
@@ -419,7 +519,7 @@ public class uController extends SimulationObject{
                     DataPacket packet = result.getReturnedPacket();
                     
                     // Add a log message indicating the success of the command and the retrieved value
-                    exportState(String.format("[%s] Received field [%s] from object [%s]. Value [%s]",status, field, objectName, packet != null ? packet.getValue(): "Null"));
+                    exportEvent(LogTemplate.CONTROLLER_RECEIVED_FIELD, status, field, objectName, packet != null ? packet.getLogValue(): "Null");
                     
                     // Return the result
                     return result;
@@ -428,10 +528,10 @@ public class uController extends SimulationObject{
         }
         
         // If the target device is not among the list of devices connected to this uController, add an error log message
-        exportState(String.format("[FAILURE] Received field [%s] from object [%s]. Value [Null]", field, objectName));
+        exportEvent(LogTemplate.CONTROLLER_RECEIVED_FIELD_FAILURE, field, objectName);
 
         // Return a blank ExecutionResult
-        return new ExecutionResult(false, null);
+        return ExecutionResult.FAILED;
     }
     
     /**
@@ -456,7 +556,7 @@ public class uController extends SimulationObject{
                     String status = result.isSuccess() ? "SUCCESS" : "FAILURE";
 
                     // Add a log message indicating the success of the command
-                    exportState(String.format("[%s] Set field [%s] in object [%s]",status, field, objectName));
+                    exportEvent(LogTemplate.CONTROLLER_SET_FIELD, status, field, objectName);
 
                     // Return result
                     return result;
@@ -465,7 +565,7 @@ public class uController extends SimulationObject{
         }
         
         // If device is not in the list of devices connected to this uController, add an error log message
-        exportState(String.format("[FAILURE] Set field [%s] in object [%s]", field, objectName));
+        exportEvent(LogTemplate.CONTROLLER_SET_FIELD_FAILURE, field, objectName);
 
         // Return a blank execution result
         return new ExecutionResult(false, null);
@@ -493,7 +593,7 @@ public class uController extends SimulationObject{
                     String successStatus = result.isSuccess() ? "SUCCESS" : "FAILURE";
                     
                     // Add a log message indicating the success of he switch update attemp
-                    exportState(String.format("[%s] Switched object [%s] position [%s] to [%s]",successStatus, objectName, position, switchStatus));
+                    exportEvent(LogTemplate.CONTROLLER_SWITCHED, successStatus, objectName, position, switchStatus);
                     
                     // Return the result
                     return result;
@@ -502,7 +602,7 @@ public class uController extends SimulationObject{
         }
         
         // If device is is not in list of devices connected to this uController, add an error log message
-        exportState(String.format("[FAILURE] Switched object [%s] position [%s] to [%s]", objectName, position, switchStatus));
+        exportEvent(LogTemplate.CONTROLLER_SWITCHED_FAILURE, objectName, position, switchStatus);
         
         // Return blank execution result
         return new ExecutionResult(false, null);
@@ -558,6 +658,78 @@ public class uController extends SimulationObject{
         else return null;
     }
 
+    /**
+     * Function to retrieve the current value of a field from its handle, without looking up its name. Typically called
+     * by the loop algorithm of a uController of a master node with handles found once by getFieldHandle
+     * @param fieldHandle Handle of the field
+     * @return The value of the field, or null if it has no value yet
+     */
+    public String getCurrentValue(int fieldHandle){
+        // Function only works if this uController is in a master node
+        if(parentMasterNode != null) return parentMasterNode.getCurrentValue(fieldHandle);
+        else return null;
+    }
+
+    /**
+     * Function to check whether a field in any node in the zone holds a number or a boolean, as opposed to text such
+     * as "Uninitialized". Typically called by the loop algorithm of a uController of a master node before reading
+     * the field with getCurrentDouble or getCurrentBoolean
+     * @param fieldHandle Handle of the field
+     * @return true if the field holds a number or a boolean, false otherwise or if this uController is not in a master node
+     */
+    public boolean hasValue(int fieldHandle){
+        if(parentMasterNode != null) return parentMasterNode.hasValue(fieldHandle);
+        else return false;
+    }
+
+    /**
+     * Function to retrieve the current value of a field in any node in the zone as a number, without parsing text
+     * @param fieldHandle Handle of the field
+     * @return value of the field, 1 or 0 for a boolean, or NaN if the field holds no number
+     */
+    public double getCurrentDouble(int fieldHandle){
+        if(parentMasterNode != null) return parentMasterNode.getCurrentDouble(fieldHandle);
+        else return Double.NaN;
+    }
+
+    /**
+     * Function to retrieve the current value of a field in any node in the zone as a boolean, without parsing text
+     * @param fieldHandle Handle of the field
+     * @return true if the field holds true or a non-zero number, false otherwise
+     */
+    public boolean getCurrentBoolean(int fieldHandle){
+        if(parentMasterNode != null) return parentMasterNode.getCurrentBoolean(fieldHandle);
+        else return false;
+    }
+
+    /**
+     * Function to find the handle of a field in any node in the zone, to read its value with getCurrentValue(int)
+     * @param deviceName Name of the device containing the field
+     * @param fieldName Name of the field in the device
+     * @return handle of the field, or -1 if this uController is not in a master node
+     */
+    public int getFieldHandle(String deviceName, String fieldName){
+        if(parentMasterNode != null) return parentMasterNode.getFieldHandle(deviceName, fieldName);
+        else return -1;
+    }
+
+    /**
+     * Function to set the database the loop algorithm stores data packets in
+     * @param database Sink of the database file
+     */
+    public void setDatabase(LogSink database) {
+        this.database = database;
+    }
+
+    /**
+     * Function to append a record to the database. The record is only enqueued; the time of arrival is formatted
+     * and the record written by the AsyncLogWriter's writer thread. Has no effect if this uController has no database
+     * @param row Record without the time of arrival, e.g. a data packet
+     */
+    public void writeDatabaseRecord(CharSequence row){
+        if(database != null) AsyncLogWriter.getInstance().submit(database, getCurrentTimeNanos(), row);
+    }
+
     /**
      * Function to terminate the uController. uController is responsible for terminating its connected devices and gateway
      */
@@ -566,6 +738,9 @@ public class uController extends SimulationObject{
         for(Device dev : devices) dev.terminate();
         if(gateway != null) gateway.terminate();
         super.terminate();
+
+        // Close the database once the records stored so far have been written
+        if(database != null) AsyncLogWriter.getInstance().close(database);
     }
 
     /**